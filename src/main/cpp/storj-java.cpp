@@ -16,17 +16,21 @@
  ***************************************************************************/
 #include <jni.h>
 #include <string>
+#include <atomic>
 #include <cerrno>
 #include <storj.h>
 #include <nettle/version.h>
 
 #ifdef _WIN32
 #include <direct.h>
+#else
+#include <fcntl.h>
 #endif
 
-#define HANDLE_ERROR();         if (req->error_code) {                                              \
+#define HANDLE_ERROR(onError)   if (req->error_code) {                                              \
                                     error_callback(env,                                             \
                                                    callbackObject,                                  \
+                                                   onError,                                         \
                                                    10000 + req->error_code,                         \
                                                    curl_easy_strerror((CURLcode) req->error_code)); \
                                 } else {                                                            \
@@ -34,13 +38,15 @@
                                     json_object_object_get_ex(req->response, "error", &error);      \
                                     error_callback(env,                                             \
                                                    callbackObject,                                  \
+                                                   onError,                                         \
                                                    req->status_code,                                \
                                                    json_object_get_string(error));                  \
                                 }
 
-#define HANDLE_ERROR_ARG();     if (req->error_code) {                                              \
+#define HANDLE_ERROR_ARG(onError) if (req->error_code) {                                            \
                                     error_callback(env,                                             \
                                                    callbackObject,                                  \
+                                                   onError,                                         \
                                                    arg,                                             \
                                                    10000 + req->error_code,                         \
                                                    curl_easy_strerror((CURLcode) req->error_code)); \
@@ -49,6 +55,7 @@
                                     json_object_object_get_ex(req->response, "error", &error);      \
                                     error_callback(env,                                             \
                                                    callbackObject,                                  \
+                                                   onError,                                         \
                                                    arg,                                             \
                                                    req->status_code,                                \
                                                    json_object_get_string(error));                  \
@@ -56,6 +63,157 @@
 
 JavaVM* jvm;
 
+// Classes and method ids used by the callbacks. They are resolved once in
+// JNI_OnLoad, so no symbol lookups happen on the event loop thread.
+static struct {
+    jclass bucketClass;
+    jmethodID bucketInit;
+    jclass fileClass;
+    jmethodID fileInit;
+    jclass keysClass;
+    jmethodID keysInit;
+    jclass fileCursorClass;
+    jmethodID fileCursorInit;
+    jmethodID fileTableAdd;
+    struct { jmethodID onInfoReceived, onError; } getInfoCallback;
+    struct { jmethodID onConfirmationPending, onError; } registerCallback;
+    struct { jmethodID onBucketsReceived, onError; } getBucketsCallback;
+    struct { jmethodID onBucketReceived, onError; } getBucketCallback;
+    struct { jmethodID onBucketIdReceived, onError; } getBucketIdCallback;
+    struct { jmethodID onBucketCreated, onError; } createBucketCallback;
+    struct { jmethodID onBucketDeleted, onError; } deleteBucketCallback;
+    struct { jmethodID onFilesReceived, onError; } listFilesCallback;
+    struct { jmethodID onCursorReady, onError; } fileCursorCallback;
+    struct { jmethodID onFileReceived, onError; } getFileCallback;
+    struct { jmethodID onFileIdReceived, onError; } getFileIdCallback;
+    struct { jmethodID onFileDeleted, onError; } deleteFileCallback;
+    struct { jmethodID onProgress, onComplete, onError; } downloadFileCallback;
+    struct { jmethodID onProgress, onComplete, onError; } uploadFileCallback;
+} cache;
+
+static jclass find_class(JNIEnv *env, const char *name)
+{
+    jclass localRef = env->FindClass(name);
+    if (localRef == NULL) {
+        return NULL;
+    }
+    jclass globalRef = (jclass) env->NewGlobalRef(localRef);
+    env->DeleteLocalRef(localRef);
+    return globalRef;
+}
+
+static jmethodID get_method(JNIEnv *env, const char *className, const char *name, const char *sig)
+{
+    jclass clazz = env->FindClass(className);
+    if (clazz == NULL) {
+        return NULL;
+    }
+    jmethodID method = env->GetMethodID(clazz, name, sig);
+    env->DeleteLocalRef(clazz);
+    return method;
+}
+
+#define STRING "Ljava/lang/String;"
+#define ON_ERROR_SIG "(" STRING "I" STRING ")V"
+#define ON_PROGRESS_SIG "(" STRING "DJJ)V"
+
+static bool init_cache(JNIEnv *env)
+{
+    cache.bucketClass = find_class(env, "io/storj/libstorj/Bucket");
+    cache.fileClass = find_class(env, "io/storj/libstorj/File");
+    cache.keysClass = find_class(env, "io/storj/libstorj/Keys");
+    cache.fileCursorClass = find_class(env, "io/storj/libstorj/FileCursor");
+    if (!cache.bucketClass || !cache.fileClass || !cache.keysClass || !cache.fileCursorClass) {
+        return false;
+    }
+
+    cache.bucketInit = env->GetMethodID(cache.bucketClass, "<init>", "(" STRING STRING STRING "Z)V");
+    cache.fileInit = env->GetMethodID(cache.fileClass, "<init>", "(" STRING STRING STRING STRING "ZJ" STRING STRING STRING STRING ")V");
+    cache.keysInit = env->GetMethodID(cache.keysClass, "<init>", "(" STRING STRING STRING ")V");
+    cache.fileCursorInit = env->GetMethodID(cache.fileCursorClass, "<init>", "(" STRING "JII)V");
+    cache.fileTableAdd = get_method(env, "io/storj/libstorj/FileTable", "add", "(" STRING STRING STRING STRING "ZJ" STRING STRING STRING STRING ")V");
+
+    const char *cls;
+
+    cls = "io/storj/libstorj/GetInfoCallback";
+    cache.getInfoCallback.onInfoReceived = get_method(env, cls, "onInfoReceived", "(" STRING STRING STRING STRING ")V");
+    cache.getInfoCallback.onError = get_method(env, cls, "onError", "(I" STRING ")V");
+
+    cls = "io/storj/libstorj/RegisterCallback";
+    cache.registerCallback.onConfirmationPending = get_method(env, cls, "onConfirmationPending", "(" STRING ")V");
+    cache.registerCallback.onError = get_method(env, cls, "onError", "(I" STRING ")V");
+
+    cls = "io/storj/libstorj/GetBucketsCallback";
+    cache.getBucketsCallback.onBucketsReceived = get_method(env, cls, "onBucketsReceived", "([Lio/storj/libstorj/Bucket;)V");
+    cache.getBucketsCallback.onError = get_method(env, cls, "onError", "(I" STRING ")V");
+
+    cls = "io/storj/libstorj/GetBucketCallback";
+    cache.getBucketCallback.onBucketReceived = get_method(env, cls, "onBucketReceived", "(Lio/storj/libstorj/Bucket;)V");
+    cache.getBucketCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/GetBucketIdCallback";
+    cache.getBucketIdCallback.onBucketIdReceived = get_method(env, cls, "onBucketIdReceived", "(" STRING STRING ")V");
+    cache.getBucketIdCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/CreateBucketCallback";
+    cache.createBucketCallback.onBucketCreated = get_method(env, cls, "onBucketCreated", "(Lio/storj/libstorj/Bucket;)V");
+    cache.createBucketCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/DeleteBucketCallback";
+    cache.deleteBucketCallback.onBucketDeleted = get_method(env, cls, "onBucketDeleted", "(" STRING ")V");
+    cache.deleteBucketCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/ListFilesCallback";
+    cache.listFilesCallback.onFilesReceived = get_method(env, cls, "onFilesReceived", "(" STRING "[Lio/storj/libstorj/File;)V");
+    cache.listFilesCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/FileCursorCallback";
+    cache.fileCursorCallback.onCursorReady = get_method(env, cls, "onCursorReady", "(Lio/storj/libstorj/FileCursor;)V");
+    cache.fileCursorCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/GetFileCallback";
+    cache.getFileCallback.onFileReceived = get_method(env, cls, "onFileReceived", "(Lio/storj/libstorj/File;)V");
+    cache.getFileCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/GetFileIdCallback";
+    cache.getFileIdCallback.onFileIdReceived = get_method(env, cls, "onFileIdReceived", "(" STRING STRING ")V");
+    cache.getFileIdCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/DeleteFileCallback";
+    cache.deleteFileCallback.onFileDeleted = get_method(env, cls, "onFileDeleted", "(" STRING ")V");
+    cache.deleteFileCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/DownloadFileCallback";
+    cache.downloadFileCallback.onProgress = get_method(env, cls, "onProgress", ON_PROGRESS_SIG);
+    cache.downloadFileCallback.onComplete = get_method(env, cls, "onComplete", "(" STRING STRING ")V");
+    cache.downloadFileCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    cls = "io/storj/libstorj/UploadFileCallback";
+    cache.uploadFileCallback.onProgress = get_method(env, cls, "onProgress", ON_PROGRESS_SIG);
+    cache.uploadFileCallback.onComplete = get_method(env, cls, "onComplete", "(" STRING "Lio/storj/libstorj/File;)V");
+    cache.uploadFileCallback.onError = get_method(env, cls, "onError", ON_ERROR_SIG);
+
+    // a failed lookup leaves a pending NoSuchMethodError or NoClassDefFoundError
+    return !env->ExceptionCheck();
+}
+
+static void release_cache(JNIEnv *env)
+{
+    if (cache.bucketClass) {
+        env->DeleteGlobalRef(cache.bucketClass);
+    }
+    if (cache.fileClass) {
+        env->DeleteGlobalRef(cache.fileClass);
+    }
+    if (cache.keysClass) {
+        env->DeleteGlobalRef(cache.keysClass);
+    }
+    if (cache.fileCursorClass) {
+        env->DeleteGlobalRef(cache.fileCursorClass);
+    }
+    memset(&cache, 0, sizeof(cache));
+}
+
 jint JNI_OnLoad(JavaVM* vm, void* reserved)
 {
     jvm = vm;
@@ -65,19 +223,25 @@ jint JNI_OnLoad(JavaVM* vm, void* reserved)
         return -1;
     }
 
-    // increase the number of threads in libuv from the default 4 to 64,
-    // so the event loop is more responsive while transferring large files
-#ifdef _WIN32
-    if (!getenv("UV_THREADPOOL_SIZE")) {
-        _putenv_s("UV_THREADPOOL_SIZE", "64");
+    if (!init_cache(env)) {
+        release_cache(env);
+        return -1;
     }
-#else
-    setenv("UV_THREADPOOL_SIZE", "64", 0);
-#endif
+
+    // the size of the libuv thread pool is set from Java before the first
+    // environment is created, see Storj.configureNativeRuntime()
 
     return JNI_VERSION_1_6;
 }
 
+void JNI_OnUnload(JavaVM* vm, void* reserved)
+{
+    JNIEnv* env;
+    if (vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_6) == JNI_OK) {
+        release_cache(env);
+    }
+}
+
 int getJNIEnv(JNIEnv **env)
 {
     int status = jvm->GetEnv(reinterpret_cast<void**>(env), JNI_VERSION_1_6);
@@ -98,11 +262,123 @@ int getJNIEnv(JNIEnv **env)
     return status;
 }
 
+typedef struct {
+    uv_async_t async;
+    volatile bool stopping;
+    // requests queued by the binding that have not completed yet
+    std::atomic<int> active_requests;
+} loop_wakeup_t;
+
+// Throttling state of the progress callbacks of a transfer. A tick is passed
+// to Java only if both the interval and the byte granularity (when not zero)
+// have been reached since the last passed tick.
+typedef struct {
+    uint64_t interval_ms;
+    uint64_t min_bytes;
+    uint64_t last_time_ms;
+    uint64_t last_bytes;
+    uint64_t total_bytes;
+    bool delivered;
+    bool final_delivered;
+    // the file id or path passed to onProgress, created once per transfer
+    jstring arg;
+} progress_throttle_t;
+
+// Layout of a slot of the progress table, see ProgressTable.java
+#define SLOT_BYTES_DONE 1
+#define SLOT_TOTAL_BYTES 2
+#define SLOT_STATE 3
+#define SLOT_ERROR_CODE 4
+#define SLOT_LONGS 8
+
+#define SLOT_STATE_COMPLETED 2
+#define SLOT_STATE_FAILED 3
+
+// Slots are polled by Java threads, so each value is written in one store.
+#ifdef _MSC_VER
+#include <intrin.h>
+#define STORE_SLOT(slot, field, value) _InterlockedExchange64((volatile __int64 *) &(slot)[field], (__int64) (value))
+#else
+#define STORE_SLOT(slot, field, value) __atomic_store_n(&(slot)[field], (int64_t) (value), __ATOMIC_RELEASE)
+#endif
+
+static int64_t *get_progress_slot(JNIEnv *env, jobject progressTable, jint slot)
+{
+    if (progressTable == NULL || slot < 0) {
+        return NULL;
+    }
+    int64_t *table = (int64_t *) env->GetDirectBufferAddress(progressTable);
+    return (table) ? table + (size_t) slot * SLOT_LONGS : NULL;
+}
+
+static void store_progress(int64_t *slot, uint64_t bytes, uint64_t total_bytes)
+{
+    STORE_SLOT(slot, SLOT_TOTAL_BYTES, total_bytes);
+    STORE_SLOT(slot, SLOT_BYTES_DONE, bytes);
+}
+
+// Indexes of the byte counters of a BandwidthLimiter, see BandwidthLimiter.java
+#define COUNTER_UPLOAD 0
+#define COUNTER_DOWNLOAD 1
+
+typedef struct {
+    // shared counter in the direct buffer of the limiter, NULL if not limited
+    int64_t *counter;
+    uint64_t counted_bytes;
+    uint64_t total_bytes;
+} byte_counter_t;
+
+static void init_byte_counter(JNIEnv *env, byte_counter_t *c, jobject byteCounters, int index)
+{
+    int64_t *counters = NULL;
+    if (byteCounters != NULL) {
+        counters = (int64_t *) env->GetDirectBufferAddress(byteCounters);
+    }
+    c->counter = (counters) ? counters + index : NULL;
+    c->counted_bytes = 0;
+    c->total_bytes = 0;
+}
+
+// Adds the bytes transferred since the last call to the shared counter.
+static void count_bytes(byte_counter_t *c, uint64_t bytes, uint64_t total_bytes)
+{
+    c->total_bytes = total_bytes;
+    if (c->counter && bytes > c->counted_bytes) {
+#ifdef _MSC_VER
+        _InterlockedExchangeAdd64((volatile __int64 *) c->counter, (__int64) (bytes - c->counted_bytes));
+#else
+        __atomic_add_fetch(c->counter, (int64_t) (bytes - c->counted_bytes), __ATOMIC_RELAXED);
+#endif
+        c->counted_bytes = bytes;
+    }
+}
+
+static void store_completed(int64_t *slot)
+{
+    if (slot) {
+        STORE_SLOT(slot, SLOT_BYTES_DONE, slot[SLOT_TOTAL_BYTES]);
+        STORE_SLOT(slot, SLOT_STATE, SLOT_STATE_COMPLETED);
+    }
+}
+
+static void store_failed(int64_t *slot, int code)
+{
+    if (slot) {
+        STORE_SLOT(slot, SLOT_ERROR_CODE, code);
+        STORE_SLOT(slot, SLOT_STATE, SLOT_STATE_FAILED);
+    }
+}
+
 typedef struct {
     jobject callbackObject;
     char *bucket_id;
     char *file_id;
     char *path;
+    progress_throttle_t progress;
+    // slot in the progress table, replaces the onProgress callbacks if set
+    int64_t *slot;
+    byte_counter_t bytes;
+    uv_loop_t *loop;
 } download_handle_t;
 
 typedef struct {
@@ -110,28 +386,149 @@ typedef struct {
     char *bucket_id;
     char *file_name;
     char *path;
+    // encryption index passed to libstorj, NULL to generate a random one
+    char *index;
+    progress_throttle_t progress;
+    // slot in the progress table, replaces the onProgress callbacks if set
+    int64_t *slot;
+    byte_counter_t bytes;
+    uv_loop_t *loop;
 } upload_handle_t;
 
-static void error_callback(JNIEnv *env, jobject callbackObject, int code, const char *message)
+static void init_progress_throttle(progress_throttle_t *throttle, jlong intervalMs, jlong minBytes)
+{
+    memset(throttle, 0, sizeof(progress_throttle_t));
+    throttle->interval_ms = (intervalMs > 0) ? (uint64_t) intervalMs : 0;
+    throttle->min_bytes = (minBytes > 0) ? (uint64_t) minBytes : 0;
+}
+
+// Returns true if the tick should be passed to Java and records it as passed.
+static bool accept_progress(progress_throttle_t *throttle, double progress, uint64_t bytes, uint64_t total_bytes)
+{
+    throttle->total_bytes = total_bytes;
+
+    if (throttle->final_delivered) {
+        return false;
+    }
+
+    bool final = progress >= 1.0;
+    uint64_t now_ms = 0;
+
+    if (!final && throttle->delivered) {
+        if (throttle->min_bytes && bytes - throttle->last_bytes < throttle->min_bytes) {
+            return false;
+        }
+        if (throttle->interval_ms) {
+            now_ms = uv_hrtime() / 1000000;
+            if (now_ms - throttle->last_time_ms < throttle->interval_ms) {
+                return false;
+            }
+        }
+    }
+
+    if (throttle->interval_ms && !now_ms) {
+        now_ms = uv_hrtime() / 1000000;
+    }
+    throttle->delivered = true;
+    throttle->final_delivered = final;
+    throttle->last_time_ms = now_ms;
+    throttle->last_bytes = bytes;
+    return true;
+}
+
+static void call_progress(JNIEnv *env,
+                          jobject callbackObject,
+                          jmethodID onProgress,
+                          progress_throttle_t *throttle,
+                          const char *arg,
+                          double progress,
+                          uint64_t bytes,
+                          uint64_t total_bytes)
+{
+    if (throttle->arg == NULL) {
+        jstring localArg = env->NewStringUTF(arg);
+        throttle->arg = (jstring) env->NewGlobalRef(localArg);
+        env->DeleteLocalRef(localArg);
+    }
+
+    env->CallVoidMethod(callbackObject, onProgress, throttle->arg, progress, bytes, total_bytes);
+}
+
+// Called before onComplete, so the last tick seen by Java is always 100%
+// even if it was throttled or libstorj did not report it.
+static void call_final_progress(JNIEnv *env,
+                                jobject callbackObject,
+                                jmethodID onProgress,
+                                progress_throttle_t *throttle,
+                                const char *arg)
+{
+    if (!throttle->final_delivered) {
+        throttle->final_delivered = true;
+        call_progress(env, callbackObject, onProgress, throttle, arg, 1.0, throttle->total_bytes, throttle->total_bytes);
+    }
+}
+
+static void free_download_handle(JNIEnv *env, download_handle_t *h)
+{
+    env->DeleteGlobalRef(h->callbackObject);
+    if (h->progress.arg) {
+        env->DeleteGlobalRef(h->progress.arg);
+    }
+    free(h->bucket_id);
+    free(h->file_id);
+    free(h->path);
+    delete h;
+}
+
+static void free_upload_handle(JNIEnv *env, upload_handle_t *h)
+{
+    env->DeleteGlobalRef(h->callbackObject);
+    if (h->progress.arg) {
+        env->DeleteGlobalRef(h->progress.arg);
+    }
+    free(h->bucket_id);
+    free(h->file_name);
+    free(h->path);
+    free(h->index);
+    delete h;
+}
+
+static void wakeup_callback(uv_async_t *handle)
+{
+    loop_wakeup_t *wakeup = (loop_wakeup_t *) handle;
+    if (wakeup->stopping) {
+        uv_stop((uv_loop_t *) wakeup->async.data);
+    }
+}
+
+// libuv does not expose the number of its active requests in all supported
+// versions, so the binding counts the requests it queues itself
+static void add_active_requests(uv_loop_t *loop, int delta)
+{
+    loop_wakeup_t *wakeup = (loop_wakeup_t *) loop->data;
+    wakeup->active_requests += delta;
+}
+
+// uv_async_send() is the only libuv call that is safe from any thread,
+// so use it to make the event loop thread pick up new requests immediately
+static void wake_event_loop(storj_env_t *storj_env)
+{
+    loop_wakeup_t *wakeup = (loop_wakeup_t *) storj_env->loop->data;
+    uv_async_send(&wakeup->async);
+}
+
+static void error_callback(JNIEnv *env, jobject callbackObject, jmethodID onError, int code, const char *message)
 {
-    jclass callbackClass = env->GetObjectClass(callbackObject);
-    jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                "onError",
-                                                "(ILjava/lang/String;)V");
     env->CallVoidMethod(callbackObject,
-                        callbackMethod,
+                        onError,
                         code,
                         env->NewStringUTF(message));
 }
 
-static void error_callback(JNIEnv *env, jobject callbackObject, jstring arg, int code, const char *message)
+static void error_callback(JNIEnv *env, jobject callbackObject, jmethodID onError, jstring arg, int code, const char *message)
 {
-    jclass callbackClass = env->GetObjectClass(callbackObject);
-    jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                "onError",
-                                                "(Ljava/lang/String;ILjava/lang/String;)V");
     env->CallVoidMethod(callbackObject,
-                        callbackMethod,
+                        onError,
                         arg,
                         code,
                         env->NewStringUTF(message));
@@ -141,26 +538,49 @@ static void error_callback_download(JNIEnv *env, download_handle_t *h, int code,
 {
     jstring fileId = env->NewStringUTF(h->file_id);
 
-    error_callback(env, h->callbackObject, fileId, code, message);
+    store_failed(h->slot, code);
+    error_callback(env, h->callbackObject, cache.downloadFileCallback.onError, fileId, code, message);
 
-    env->DeleteGlobalRef(h->callbackObject);
-    free(h->bucket_id);
-    free(h->file_id);
-    free(h->path);
-    delete h;
+    free_download_handle(env, h);
 }
 
 static void error_callback_upload(JNIEnv *env, upload_handle_t *h, int code, const char *message)
 {
     jstring localPath = env->NewStringUTF(h->path);
 
-    error_callback(env, h->callbackObject, localPath, code, message);
+    store_failed(h->slot, code);
+    error_callback(env, h->callbackObject, cache.uploadFileCallback.onError, localPath, code, message);
 
-    env->DeleteGlobalRef(h->callbackObject);
-    free(h->bucket_id);
-    free(h->file_name);
-    free(h->path);
-    delete h;
+    free_upload_handle(env, h);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_io_storj_libstorj_Storj__1setThreadPoolSize(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jint size)
+{
+    // libuv reads the variable when the thread pool is first used
+    char value[16];
+    snprintf(value, sizeof(value), "%d", (int) size);
+#ifdef _WIN32
+    _putenv_s("UV_THREADPOOL_SIZE", value);
+#else
+    setenv("UV_THREADPOOL_SIZE", value, 1);
+#endif
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_io_storj_libstorj_Storj__1getActiveRequests(
+        JNIEnv *env,
+        jobject /* instance */,
+        jlong storjEnv)
+{
+    storj_env_t *storj_env = (storj_env_t *) storjEnv;
+    loop_wakeup_t *wakeup = (loop_wakeup_t *) storj_env->loop->data;
+    return (jint) wakeup->active_requests;
 }
 
 extern "C"
@@ -210,6 +630,16 @@ Java_io_storj_libstorj_Storj__1initEnv(
     storj_env->loop = (uv_loop_t *) malloc(sizeof(uv_loop_t));
     uv_loop_init(storj_env->loop);
 
+    // the wakeup handle does not keep the loop alive unless it is run
+    // with _runEventLoopUntilStopped()
+    loop_wakeup_t *wakeup = new loop_wakeup_t;
+    wakeup->stopping = false;
+    wakeup->active_requests = 0;
+    uv_async_init(storj_env->loop, &wakeup->async, wakeup_callback);
+    wakeup->async.data = storj_env->loop;
+    uv_unref((uv_handle_t *) &wakeup->async);
+    storj_env->loop->data = wakeup;
+
     if (http_options.user_agent)
         env->ReleaseStringUTFChars(userAgent, http_options.user_agent);
 
@@ -246,6 +676,12 @@ Java_io_storj_libstorj_Storj__1destroyEnv(
 {
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
 
+    // close the wakeup handle and let the loop process the close request
+    loop_wakeup_t *wakeup = (loop_wakeup_t *) storj_env->loop->data;
+    uv_close((uv_handle_t *) &wakeup->async, NULL);
+    uv_run(storj_env->loop, UV_RUN_NOWAIT);
+    delete wakeup;
+
     // destroy the event loop
     uv_loop_close(storj_env->loop);
     free(storj_env->loop);
@@ -265,6 +701,36 @@ Java_io_storj_libstorj_Storj__1runEventLoop(
     while (uv_run(storj_env->loop, UV_RUN_ONCE));
 }
 
+extern "C"
+JNIEXPORT void JNICALL
+Java_io_storj_libstorj_Storj__1runEventLoopUntilStopped(
+        JNIEnv *env,
+        jobject /* instance */,
+        jlong storjEnv)
+{
+    storj_env_t *storj_env = (storj_env_t *) storjEnv;
+    loop_wakeup_t *wakeup = (loop_wakeup_t *) storj_env->loop->data;
+
+    // block while idle instead of returning, until stopped
+    uv_ref((uv_handle_t *) &wakeup->async);
+    uv_run(storj_env->loop, UV_RUN_DEFAULT);
+    uv_unref((uv_handle_t *) &wakeup->async);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_io_storj_libstorj_Storj__1stopEventLoop(
+        JNIEnv *env,
+        jobject /* instance */,
+        jlong storjEnv)
+{
+    storj_env_t *storj_env = (storj_env_t *) storjEnv;
+    loop_wakeup_t *wakeup = (loop_wakeup_t *) storj_env->loop->data;
+
+    wakeup->stopping = true;
+    uv_async_send(&wakeup->async);
+}
+
 static void get_buckets_callback(uv_work_t *work_req, int status)
 {
     assert(status == 0);
@@ -277,13 +743,9 @@ static void get_buckets_callback(uv_work_t *work_req, int status)
         jobject callbackObject = (jobject) req->handle;
 
         if (req->status_code != 200 && req->status_code != 304) {
-            HANDLE_ERROR();
+            HANDLE_ERROR(cache.getBucketsCallback.onError);
         } else {
-            jclass bucketClass = env->FindClass("io/storj/libstorj/Bucket");
-            jobjectArray bucketArray = env->NewObjectArray(req->total_buckets, bucketClass, NULL);
-            jmethodID bucketInit = env->GetMethodID(bucketClass,
-                                                    "<init>",
-                                                    "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Z)V");
+            jobjectArray bucketArray = env->NewObjectArray(req->total_buckets, cache.bucketClass, NULL);
 
             for (uint32_t i = 0; i < req->total_buckets; i++) {
                 storj_bucket_meta_t *bucket = &req->buckets[i];
@@ -292,8 +754,8 @@ static void get_buckets_callback(uv_work_t *work_req, int status)
                 jstring name = env->NewStringUTF(bucket->name);
                 jstring created = env->NewStringUTF(bucket->created);
 
-                jobject bucketObject = env->NewObject(bucketClass,
-                                                      bucketInit,
+                jobject bucketObject = env->NewObject(cache.bucketClass,
+                                                      cache.bucketInit,
                                                       id,
                                                       name,
                                                       created,
@@ -306,17 +768,14 @@ static void get_buckets_callback(uv_work_t *work_req, int status)
                 env->DeleteLocalRef(created);
             }
 
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onBucketsReceived",
-                                                        "([Lio/storj/libstorj/Bucket;)V");
-            env->CallVoidMethod(callbackObject, callbackMethod, bucketArray);
+            env->CallVoidMethod(callbackObject, cache.getBucketsCallback.onBucketsReceived, bucketArray);
         }
 
         env->DeleteGlobalRef(callbackObject);
     }
 
     storj_free_get_buckets_request(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -330,9 +789,11 @@ Java_io_storj_libstorj_Storj__1getBuckets(
 {
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_get_buckets(storj_env,
                              env->NewGlobalRef(callbackObject),
                              get_buckets_callback);
+    wake_event_loop(storj_env);
 }
 
 static void get_bucket_callback(uv_work_t *work_req, int status)
@@ -348,34 +809,26 @@ static void get_bucket_callback(uv_work_t *work_req, int status)
 
         if (req->status_code != 200) {
             jstring arg = env->NewStringUTF(strrchr(req->path, '/') + 1);
-            HANDLE_ERROR_ARG();
+            HANDLE_ERROR_ARG(cache.getBucketCallback.onError);
         } else {
-            jclass bucketClass = env->FindClass("io/storj/libstorj/Bucket");
-            jmethodID bucketInit = env->GetMethodID(bucketClass,
-                                                    "<init>",
-                                                    "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Z)V");
-
             jstring id = env->NewStringUTF(req->bucket->id);
             jstring name = env->NewStringUTF(req->bucket->name);
             jstring created = env->NewStringUTF(req->bucket->created);
-            jobject bucketObject = env->NewObject(bucketClass,
-                                                  bucketInit,
+            jobject bucketObject = env->NewObject(cache.bucketClass,
+                                                  cache.bucketInit,
                                                   id,
                                                   name,
                                                   created,
                                                   req->bucket->decrypted);
 
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onBucketReceived",
-                                                        "(Lio/storj/libstorj/Bucket;)V");
-            env->CallVoidMethod(callbackObject, callbackMethod, bucketObject);
+            env->CallVoidMethod(callbackObject, cache.getBucketCallback.onBucketReceived, bucketObject);
         }
 
         env->DeleteGlobalRef(callbackObject);
     }
 
     storj_free_get_bucket_request(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -391,10 +844,12 @@ Java_io_storj_libstorj_Storj__1getBucket(
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
     const char *bucket_id = env->GetStringUTFChars(bucketId, NULL);
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_get_bucket(storj_env,
                             bucket_id,
                             env->NewGlobalRef(callbackObject),
                             get_bucket_callback);
+    wake_event_loop(storj_env);
 
     env->ReleaseStringUTFChars(bucketId, bucket_id);
 }
@@ -413,17 +868,13 @@ static void get_bucket_id_callback(uv_work_t *work_req, int status)
 
         if (req->status_code != 200) {
             jstring arg = bucketName;
-            HANDLE_ERROR_ARG();
+            HANDLE_ERROR_ARG(cache.getBucketIdCallback.onError);
         } else if (req->bucket_id == NULL) {
-            error_callback(env, callbackObject, bucketName, STORJ_BRIDGE_JSON_ERROR, "No bucket id in the response");
+            error_callback(env, callbackObject, cache.getBucketIdCallback.onError, bucketName, STORJ_BRIDGE_JSON_ERROR, "No bucket id in the response");
         } else {
             jstring bucketId = env->NewStringUTF(req->bucket_id);
 
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onBucketIdReceived",
-                                                        "(Ljava/lang/String;Ljava/lang/String;)V");
-            env->CallVoidMethod(callbackObject, callbackMethod, bucketName, bucketId);
+            env->CallVoidMethod(callbackObject, cache.getBucketIdCallback.onBucketIdReceived, bucketName, bucketId);
         }
 
         env->DeleteGlobalRef(callbackObject);
@@ -432,6 +883,7 @@ static void get_bucket_id_callback(uv_work_t *work_req, int status)
     json_object_put(req->response);
     free((char *)req->bucket_name);
     free(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -447,10 +899,12 @@ Java_io_storj_libstorj_Storj__1getBucketId(
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
     const char *bucket_name = env->GetStringUTFChars(bucketName, NULL);
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_get_bucket_id(storj_env,
                                strdup(bucket_name),
                                env->NewGlobalRef(callbackObject),
                                get_bucket_id_callback);
+    wake_event_loop(storj_env);
 
     env->ReleaseStringUTFChars(bucketName, bucket_name);
 }
@@ -468,28 +922,19 @@ static void create_bucket_callback(uv_work_t *work_req, int status)
 
         if (req->status_code != 201) {
             jstring arg = env->NewStringUTF(req->bucket_name);
-            HANDLE_ERROR_ARG();
+            HANDLE_ERROR_ARG(cache.createBucketCallback.onError);
         } else {
-            jclass bucketClass = env->FindClass("io/storj/libstorj/Bucket");
-            jmethodID bucketInit = env->GetMethodID(bucketClass,
-                                                    "<init>",
-                                                    "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Z)V");
-
             jstring id = env->NewStringUTF(req->bucket->id);
             jstring name = env->NewStringUTF(req->bucket->name);
             jstring created = env->NewStringUTF(req->bucket->created);
-            jobject bucketObject = env->NewObject(bucketClass,
-                                                  bucketInit,
+            jobject bucketObject = env->NewObject(cache.bucketClass,
+                                                  cache.bucketInit,
                                                   id,
                                                   name,
                                                   created,
                                                   req->bucket->decrypted);
 
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onBucketCreated",
-                                                        "(Lio/storj/libstorj/Bucket;)V");
-            env->CallVoidMethod(callbackObject, callbackMethod, bucketObject);
+            env->CallVoidMethod(callbackObject, cache.createBucketCallback.onBucketCreated, bucketObject);
         }
 
         env->DeleteGlobalRef(callbackObject);
@@ -500,6 +945,7 @@ static void create_bucket_callback(uv_work_t *work_req, int status)
     free((char *)req->encrypted_bucket_name);
     free(req->bucket);
     free(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -515,14 +961,83 @@ Java_io_storj_libstorj_Storj__1createBucket(
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
     const char *bucket_name = env->GetStringUTFChars(bucketName, NULL);
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_create_bucket(storj_env,
                                strdup(bucket_name),
                                env->NewGlobalRef(callbackObject),
                                create_bucket_callback);
+    wake_event_loop(storj_env);
 
     env->ReleaseStringUTFChars(bucketName, bucket_name);
 }
 
+// Creates a File object and releases the local references to its fields, so
+// it can be called in a loop without exhausting the local reference table.
+static jobject new_file_object(JNIEnv *env, storj_file_meta_t *file)
+{
+    jstring id = (file->id) ? env->NewStringUTF(file->id) : NULL;
+    jstring bucketId = (file->bucket_id) ? env->NewStringUTF(file->bucket_id) : NULL;
+    jstring filename = (file->filename) ? env->NewStringUTF(file->filename) : NULL;
+    jstring created = (file->created) ? env->NewStringUTF(file->created) : NULL;
+    jstring mimetype = (file->mimetype) ? env->NewStringUTF(file->mimetype) : NULL;
+    jstring erasure = (file->erasure) ? env->NewStringUTF(file->erasure) : NULL;
+    jstring index = (file->index) ? env->NewStringUTF(file->index) : NULL;
+    jstring hmac = (file->hmac) ? env->NewStringUTF(file->hmac) : NULL;
+
+    jobject fileObject = env->NewObject(cache.fileClass,
+                                        cache.fileInit,
+                                        id,
+                                        bucketId,
+                                        filename,
+                                        created,
+                                        file->decrypted,
+                                        file->size,
+                                        mimetype,
+                                        erasure,
+                                        index,
+                                        hmac);
+
+    if (id) {
+        env->DeleteLocalRef(id);
+    }
+    if (bucketId) {
+        env->DeleteLocalRef(bucketId);
+    }
+    if (filename) {
+        env->DeleteLocalRef(filename);
+    }
+    if (created) {
+        env->DeleteLocalRef(created);
+    }
+    if (mimetype) {
+        env->DeleteLocalRef(mimetype);
+    }
+    if (erasure) {
+        env->DeleteLocalRef(erasure);
+    }
+    if (index) {
+        env->DeleteLocalRef(index);
+    }
+    if (hmac) {
+        env->DeleteLocalRef(hmac);
+    }
+
+    return fileObject;
+}
+
+static jobjectArray new_file_array(JNIEnv *env, storj_file_meta_t *files, uint32_t count)
+{
+    jobjectArray fileArray = env->NewObjectArray(count, cache.fileClass, NULL);
+
+    for (uint32_t i = 0; i < count; i++) {
+        jobject fileObject = new_file_object(env, &files[i]);
+        env->SetObjectArrayElement(fileArray, i, fileObject);
+        env->DeleteLocalRef(fileObject);
+    }
+
+    return fileArray;
+}
+
 static void list_files_callback(uv_work_t *work_req, int status)
 {
     assert(status == 0);
@@ -537,72 +1052,10 @@ static void list_files_callback(uv_work_t *work_req, int status)
 
         if (req->status_code != 200) {
             jstring arg = bucketId;
-            HANDLE_ERROR_ARG();
+            HANDLE_ERROR_ARG(cache.listFilesCallback.onError);
         } else {
-            jclass fileClass = env->FindClass("io/storj/libstorj/File");
-            jobjectArray fileArray = env->NewObjectArray(req->total_files, fileClass, NULL);
-            jmethodID fileInit = env->GetMethodID(fileClass,
-                                                  "<init>",
-                                                  "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;ZJLjava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
-
-            for (uint32_t i = 0; i < req->total_files; i++) {
-                storj_file_meta_t *file = &req->files[i];
-
-                jstring id = (file->id) ? env->NewStringUTF(file->id) : NULL;
-                jstring bucketId = (file->bucket_id) ? env->NewStringUTF(file->bucket_id) : NULL;
-                jstring filename = (file->filename) ? env->NewStringUTF(file->filename) : NULL;
-                jstring created = (file->created) ? env->NewStringUTF(file->created) : NULL;
-                jstring mimetype = (file->mimetype) ? env->NewStringUTF(file->mimetype) : NULL;
-                jstring erasure = (file->erasure) ? env->NewStringUTF(file->erasure) : NULL;
-                jstring index = (file->index) ? env->NewStringUTF(file->index) : NULL;
-                jstring hmac = (file->hmac) ? env->NewStringUTF(file->hmac) : NULL;
-
-                jobject fileObject = env->NewObject(fileClass,
-                                                    fileInit,
-                                                    id,
-                                                    bucketId,
-                                                    filename,
-                                                    created,
-                                                    file->decrypted,
-                                                    file->size,
-                                                    mimetype,
-                                                    erasure,
-                                                    index,
-                                                    hmac);
-                env->SetObjectArrayElement(fileArray, i, fileObject);
-
-                env->DeleteLocalRef(fileObject);
-                if (id) {
-                    env->DeleteLocalRef(id);
-                }
-                if (bucketId) {
-                    env->DeleteLocalRef(bucketId);
-                }
-                if (filename) {
-                    env->DeleteLocalRef(filename);
-                }
-                if (created) {
-                    env->DeleteLocalRef(created);
-                }
-                if (mimetype) {
-                    env->DeleteLocalRef(mimetype);
-                }
-                if (erasure) {
-                    env->DeleteLocalRef(erasure);
-                }
-                if (index) {
-                    env->DeleteLocalRef(index);
-                }
-                if (hmac) {
-                    env->DeleteLocalRef(hmac);
-                }
-            }
-
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onFilesReceived",
-                                                        "(Ljava/lang/String;[Lio/storj/libstorj/File;)V");
-            env->CallVoidMethod(callbackObject, callbackMethod, bucketId, fileArray);
+            jobjectArray fileArray = new_file_array(env, req->files, req->total_files);
+            env->CallVoidMethod(callbackObject, cache.listFilesCallback.onFilesReceived, bucketId, fileArray);
         }
 
         env->DeleteGlobalRef(callbackObject);
@@ -610,6 +1063,7 @@ static void list_files_callback(uv_work_t *work_req, int status)
 
     free((char *) req->bucket_id);
     storj_free_list_files_request(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -625,14 +1079,228 @@ Java_io_storj_libstorj_Storj__1listFiles(
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
     const char *bucket_id = env->GetStringUTFChars(bucketId, NULL);
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_list_files(storj_env,
                             strdup(bucket_id),
                             env->NewGlobalRef(callbackObject),
                             list_files_callback);
+    wake_event_loop(storj_env);
+
+    env->ReleaseStringUTFChars(bucketId, bucket_id);
+}
+
+typedef struct {
+    jobject callback;
+    jint page_size;
+} list_files_cursor_handle_t;
+
+static void free_list_files_request(list_files_request_t *req)
+{
+    free((char *) req->bucket_id);
+    storj_free_list_files_request(req);
+}
+
+// Unlike list_files_callback, no File objects are created here. On success the
+// request is handed over to a FileCursor, which creates the File objects page
+// by page on the consumer's thread and frees the request when done.
+static void list_files_cursor_callback(uv_work_t *work_req, int status)
+{
+    assert(status == 0);
+    list_files_request_t *req = (list_files_request_t *) work_req->data;
+    list_files_cursor_handle_t *handle = (list_files_cursor_handle_t *) req->handle;
+    bool handed_over = false;
+
+    JNIEnv *env;
+    getJNIEnv(&env);
+
+    if (env != NULL) {
+        jobject callbackObject = handle->callback;
+        jstring bucketId = env->NewStringUTF(req->bucket_id);
+
+        if (req->status_code != 200) {
+            jstring arg = bucketId;
+            HANDLE_ERROR_ARG(cache.fileCursorCallback.onError);
+        } else {
+            jobject cursor = env->NewObject(cache.fileCursorClass,
+                                            cache.fileCursorInit,
+                                            bucketId,
+                                            (jlong) req,
+                                            (jint) req->total_files,
+                                            handle->page_size);
+            if (cursor != NULL) {
+                handed_over = true;
+                env->CallVoidMethod(callbackObject, cache.fileCursorCallback.onCursorReady, cursor);
+            } else {
+                // the consumer would wait forever without a callback
+                env->ExceptionClear();
+                error_callback(env,
+                               callbackObject,
+                               cache.fileCursorCallback.onError,
+                               bucketId,
+                               STORJ_MEMORY_ERROR,
+                               storj_strerror(STORJ_MEMORY_ERROR));
+            }
+        }
+
+        env->DeleteGlobalRef(callbackObject);
+    }
+
+    if (!handed_over) {
+        free_list_files_request(req);
+    }
+    free(handle);
+    add_active_requests(work_req->loop, -1);
+    free(work_req);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_io_storj_libstorj_Storj__1listFilesCursor(
+        JNIEnv *env,
+        jobject /* instance */,
+        jlong storjEnv,
+        jstring bucketId,
+        jint pageSize,
+        jobject callbackObject)
+{
+    storj_env_t *storj_env = (storj_env_t *) storjEnv;
+    const char *bucket_id = env->GetStringUTFChars(bucketId, NULL);
+
+    list_files_cursor_handle_t *handle = (list_files_cursor_handle_t *) malloc(sizeof(list_files_cursor_handle_t));
+    handle->callback = env->NewGlobalRef(callbackObject);
+    handle->page_size = pageSize;
+
+    add_active_requests(storj_env->loop, 1);
+    storj_bridge_list_files(storj_env,
+                            strdup(bucket_id),
+                            handle,
+                            list_files_cursor_callback);
+    wake_event_loop(storj_env);
 
     env->ReleaseStringUTFChars(bucketId, bucket_id);
 }
 
+extern "C"
+JNIEXPORT jobjectArray JNICALL
+Java_io_storj_libstorj_FileCursor__1getFiles(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle,
+        jint offset,
+        jint count)
+{
+    list_files_request_t *req = (list_files_request_t *) handle;
+
+    if (offset < 0 || count < 0 || (uint32_t) offset + (uint32_t) count > req->total_files) {
+        env->ThrowNew(env->FindClass("java/lang/IndexOutOfBoundsException"), "page out of range");
+        return NULL;
+    }
+
+    return new_file_array(env, &req->files[offset], (uint32_t) count);
+}
+
+// Returns a string for value, reusing previous if it has the same content.
+// Used for the columns that repeat across the rows of a file list.
+static jstring reuse_string(JNIEnv *env, jstring previous, const char **previous_value, const char *value)
+{
+    if (previous != NULL && *previous_value != NULL && value != NULL && strcmp(*previous_value, value) == 0) {
+        return previous;
+    }
+    if (previous != NULL) {
+        env->DeleteLocalRef(previous);
+    }
+    *previous_value = value;
+    return (value) ? env->NewStringUTF(value) : NULL;
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_io_storj_libstorj_FileCursor__1fillTable(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle,
+        jint offset,
+        jint count,
+        jobject table)
+{
+    list_files_request_t *req = (list_files_request_t *) handle;
+
+    if (offset < 0 || count < 0 || (uint32_t) offset + (uint32_t) count > req->total_files) {
+        env->ThrowNew(env->FindClass("java/lang/IndexOutOfBoundsException"), "page out of range");
+        return;
+    }
+
+    jstring bucketId = NULL;
+    jstring mimetype = NULL;
+    jstring erasure = NULL;
+    const char *bucket_id_value = NULL;
+    const char *mimetype_value = NULL;
+    const char *erasure_value = NULL;
+
+    for (jint i = offset; i < offset + count && !env->ExceptionCheck(); i++) {
+        storj_file_meta_t *file = &req->files[i];
+
+        bucketId = reuse_string(env, bucketId, &bucket_id_value, file->bucket_id);
+        mimetype = reuse_string(env, mimetype, &mimetype_value, file->mimetype);
+        erasure = reuse_string(env, erasure, &erasure_value, file->erasure);
+
+        jstring id = (file->id) ? env->NewStringUTF(file->id) : NULL;
+        jstring filename = (file->filename) ? env->NewStringUTF(file->filename) : NULL;
+        jstring created = (file->created) ? env->NewStringUTF(file->created) : NULL;
+        jstring index = (file->index) ? env->NewStringUTF(file->index) : NULL;
+        jstring hmac = (file->hmac) ? env->NewStringUTF(file->hmac) : NULL;
+
+        env->CallVoidMethod(table,
+                            cache.fileTableAdd,
+                            id,
+                            bucketId,
+                            filename,
+                            created,
+                            file->decrypted,
+                            file->size,
+                            mimetype,
+                            erasure,
+                            index,
+                            hmac);
+
+        if (id) {
+            env->DeleteLocalRef(id);
+        }
+        if (filename) {
+            env->DeleteLocalRef(filename);
+        }
+        if (created) {
+            env->DeleteLocalRef(created);
+        }
+        if (index) {
+            env->DeleteLocalRef(index);
+        }
+        if (hmac) {
+            env->DeleteLocalRef(hmac);
+        }
+    }
+
+    if (bucketId) {
+        env->DeleteLocalRef(bucketId);
+    }
+    if (mimetype) {
+        env->DeleteLocalRef(mimetype);
+    }
+    if (erasure) {
+        env->DeleteLocalRef(erasure);
+    }
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_io_storj_libstorj_FileCursor__1free(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle)
+{
+    free_list_files_request((list_files_request_t *) handle);
+}
+
 static void get_file_callback(uv_work_t *work_req, int status)
 {
     assert(status == 0);
@@ -649,43 +1317,11 @@ static void get_file_callback(uv_work_t *work_req, int status)
             char *p = strrchr(req->path, '/');
             p[0] = '\0';
             jstring arg = env->NewStringUTF(strrchr(req->path, '/') + 1);
-            HANDLE_ERROR_ARG();
+            HANDLE_ERROR_ARG(cache.getFileCallback.onError);
         } else {
-            jclass fileClass = env->FindClass("io/storj/libstorj/File");
-            jmethodID fileInit = env->GetMethodID(fileClass,
-                                                  "<init>",
-                                                  "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;ZJLjava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
-
-            jstring id = (req->file->id) ? env->NewStringUTF(req->file->id) : NULL;
-            jstring bucketId = (req->file->bucket_id) ? env->NewStringUTF(req->file->bucket_id)
-                                                      : NULL;
-            jstring filename = (req->file->filename) ? env->NewStringUTF(req->file->filename)
-                                                     : NULL;
-            jstring created = (req->file->created) ? env->NewStringUTF(req->file->created) : NULL;
-            jstring mimetype = (req->file->mimetype) ? env->NewStringUTF(req->file->mimetype)
-                                                     : NULL;
-            jstring erasure = (req->file->erasure) ? env->NewStringUTF(req->file->erasure) : NULL;
-            jstring index = (req->file->index) ? env->NewStringUTF(req->file->index) : NULL;
-            jstring hmac = (req->file->hmac) ? env->NewStringUTF(req->file->hmac) : NULL;
-
-            jobject fileObject = env->NewObject(fileClass,
-                                                fileInit,
-                                                id,
-                                                bucketId,
-                                                filename,
-                                                created,
-                                                req->file->decrypted,
-                                                req->file->size,
-                                                mimetype,
-                                                erasure,
-                                                index,
-                                                hmac);
-
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onFileReceived",
-                                                        "(Lio/storj/libstorj/File;)V");
-            env->CallVoidMethod(callbackObject, callbackMethod, fileObject);
+            jobject fileObject = new_file_object(env, req->file);
+
+            env->CallVoidMethod(callbackObject, cache.getFileCallback.onFileReceived, fileObject);
         }
 
         env->DeleteGlobalRef(callbackObject);
@@ -693,6 +1329,7 @@ static void get_file_callback(uv_work_t *work_req, int status)
 
     free((char *)req->bucket_id);
     storj_free_get_file_info_request(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -710,11 +1347,13 @@ Java_io_storj_libstorj_Storj__1getFile(
     const char *bucket_id = env->GetStringUTFChars(bucketId, NULL);
     const char *file_id = env->GetStringUTFChars(fileId, NULL);
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_get_file_info(storj_env,
                                strdup(bucket_id),
                                file_id,
                                env->NewGlobalRef(callbackObject),
                                get_file_callback);
+    wake_event_loop(storj_env);
 
     env->ReleaseStringUTFChars(bucketId, bucket_id);
     env->ReleaseStringUTFChars(fileId, file_id);
@@ -734,17 +1373,13 @@ static void get_file_id_callback(uv_work_t *work_req, int status)
 
         if (req->status_code != 200) {
             jstring arg = fileName;
-            HANDLE_ERROR_ARG();
+            HANDLE_ERROR_ARG(cache.getFileIdCallback.onError);
         } else if (req->file_id == NULL) {
-            error_callback(env, callbackObject, fileName, STORJ_BRIDGE_JSON_ERROR, "No file id in the response");
+            error_callback(env, callbackObject, cache.getFileIdCallback.onError, fileName, STORJ_BRIDGE_JSON_ERROR, "No file id in the response");
         } else {
             jstring fileId = env->NewStringUTF(req->file_id);
 
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onFileIdReceived",
-                                                        "(Ljava/lang/String;Ljava/lang/String;)V");
-            env->CallVoidMethod(callbackObject, callbackMethod, fileName, fileId);
+            env->CallVoidMethod(callbackObject, cache.getFileIdCallback.onFileIdReceived, fileName, fileId);
         }
 
         env->DeleteGlobalRef(callbackObject);
@@ -754,6 +1389,7 @@ static void get_file_id_callback(uv_work_t *work_req, int status)
     free((char *)req->bucket_id);
     free((char *)req->file_name);
     free(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -771,11 +1407,13 @@ Java_io_storj_libstorj_Storj__1getFileId(
     const char *bucket_id = env->GetStringUTFChars(bucketId, NULL);
     const char *file_name = env->GetStringUTFChars(fileName, NULL);
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_get_file_id(storj_env,
                              strdup(bucket_id),
                              strdup(file_name),
                              env->NewGlobalRef(callbackObject),
                              get_file_id_callback);
+    wake_event_loop(storj_env);
 
     env->ReleaseStringUTFChars(bucketId, bucket_id);
     env->ReleaseStringUTFChars(fileName, file_name);
@@ -783,35 +1421,39 @@ Java_io_storj_libstorj_Storj__1getFileId(
 
 static void download_file_progress_callback(double progress, uint64_t bytes, uint64_t total_bytes, void *handle)
 {
-    JNIEnv *env;
-    getJNIEnv(&env);
+    download_handle_t *h = (download_handle_t *) handle;
 
-    if (env != NULL) {
-        download_handle_t *h = (download_handle_t *) handle;
+    count_bytes(&h->bytes, bytes, total_bytes);
 
-        jclass callbackClass = env->GetObjectClass(h->callbackObject);
-        jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                    "onProgress",
-                                                    "(Ljava/lang/String;DJJ)V");
-        jstring fileId = env->NewStringUTF(h->file_id);
+    if (h->slot) {
+        store_progress(h->slot, bytes, total_bytes);
+        return;
+    }
 
-        env->CallVoidMethod(h->callbackObject,
-                            callbackMethod,
-                            fileId,
-                            progress,
-                            bytes,
-                            total_bytes);
+    // throttled ticks do not cross JNI at all
+    if (!accept_progress(&h->progress, progress, bytes, total_bytes)) {
+        return;
+    }
+
+    JNIEnv *env;
+    getJNIEnv(&env);
 
-        // this function is called multiple times during file download
-        // cleanup is necessary to avoid local reference table overflow
-        env->DeleteLocalRef(callbackClass);
-        env->DeleteLocalRef(fileId);
+    if (env != NULL) {
+        call_progress(env,
+                      h->callbackObject,
+                      cache.downloadFileCallback.onProgress,
+                      &h->progress,
+                      h->file_id,
+                      progress,
+                      bytes,
+                      total_bytes);
     }
 }
 
 static void download_file_complete_callback(int status, FILE *fd, void *handle)
 {
     fclose(fd);
+    add_active_requests(((download_handle_t *) handle)->loop, -1);
 
     JNIEnv *env;
     getJNIEnv(&env);
@@ -822,27 +1464,51 @@ static void download_file_complete_callback(int status, FILE *fd, void *handle)
         if (status) {
             error_callback_download(env, h, status, storj_strerror(status));
         } else {
-            jclass callbackClass = env->GetObjectClass(h->callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onComplete",
-                                                        "(Ljava/lang/String;Ljava/lang/String;)V");
+            count_bytes(&h->bytes, h->bytes.total_bytes, h->bytes.total_bytes);
+
+            if (h->slot) {
+                store_completed(h->slot);
+            } else {
+                call_final_progress(env,
+                                    h->callbackObject,
+                                    cache.downloadFileCallback.onProgress,
+                                    &h->progress,
+                                    h->file_id);
+            }
+
             jstring fileId = env->NewStringUTF(h->file_id);
             jstring localPath = env->NewStringUTF(h->path);
 
             env->CallVoidMethod(h->callbackObject,
-                                callbackMethod,
+                                cache.downloadFileCallback.onComplete,
                                 fileId,
                                 localPath);
 
-            env->DeleteGlobalRef(h->callbackObject);
-            free(h->bucket_id);
-            free(h->file_id);
-            free(h->path);
-            delete h;
+            free_download_handle(env, h);
         }
     }
 }
 
+// Allocates the disk space of the whole file before libstorj writes the shards
+// at their offsets. Returns 0 or an errno value.
+static int preallocate_file(FILE *fd, jlong size)
+{
+#ifdef __linux__
+    // not posix_fallocate(), glibc emulates it by writing every block on the
+    // calling thread when the file system has no native support
+    if (fallocate(fileno(fd), 0, 0, (off_t) size) != 0) {
+        // no native support, the file is written without preallocation
+        if (errno == EOPNOTSUPP || errno == ENOSYS) {
+            return 0;
+        }
+        return errno;
+    }
+    return 0;
+#else
+    return 0;
+#endif
+}
+
 extern "C"
 JNIEXPORT jlong JNICALL
 Java_io_storj_libstorj_Storj__1downloadFile(
@@ -852,6 +1518,12 @@ Java_io_storj_libstorj_Storj__1downloadFile(
         jstring bucketId,
         jstring fileId,
         jstring localPath,
+        jlong preallocateSize,
+        jlong progressIntervalMs,
+        jlong progressBytes,
+        jobject progressTable,
+        jint progressSlot,
+        jobject byteCounters,
         jobject callbackObject)
 {
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
@@ -864,6 +1536,10 @@ Java_io_storj_libstorj_Storj__1downloadFile(
     h->bucket_id = strdup(bucket_id);
     h->file_id = strdup(file_id);
     h->path = strdup(path);
+    init_progress_throttle(&h->progress, progressIntervalMs, progressBytes);
+    h->slot = get_progress_slot(env, progressTable, progressSlot);
+    init_byte_counter(env, &h->bytes, byteCounters, COUNTER_DOWNLOAD);
+    h->loop = storj_env->loop;
 
     FILE *fd = NULL;
 
@@ -872,10 +1548,16 @@ Java_io_storj_libstorj_Storj__1downloadFile(
     }
 
     storj_download_state_t *state = NULL;
+    int error = 0;
 
     if (fd == NULL) {
         error_callback_download(env, h, 20000 + errno, strerror(errno));
+    } else if (preallocateSize > 0 && (error = preallocate_file(fd, preallocateSize)) != 0) {
+        // e.g. not enough space left on the disk
+        fclose(fd);
+        error_callback_download(env, h, 20000 + error, strerror(error));
     } else {
+        add_active_requests(storj_env->loop, 1);
         state = storj_bridge_resolve_file(storj_env,
                                           h->bucket_id,
                                           h->file_id,
@@ -883,7 +1565,9 @@ Java_io_storj_libstorj_Storj__1downloadFile(
                                           h,
                                           download_file_progress_callback,
                                           download_file_complete_callback);
+        wake_event_loop(storj_env);
         if (!state) {
+            add_active_requests(storj_env->loop, -1);
             error_callback_download(env, h, STORJ_MEMORY_ERROR, storj_strerror(STORJ_MEMORY_ERROR));
         } else if (state->error_status) {
             // The error will be reported in the complete callback.
@@ -908,41 +1592,45 @@ Java_io_storj_libstorj_Storj__1cancelDownload(
     storj_download_state_t *state = (storj_download_state_t *) downloadState;
 
     int result = storj_bridge_resolve_file_cancel(state);
+    wake_event_loop(state->env);
 
     return (jboolean) (result == 0);
 }
 
 static void upload_file_progress_callback(double progress, uint64_t bytes, uint64_t total_bytes, void *handle)
 {
+    upload_handle_t *h = (upload_handle_t *) handle;
 
-    JNIEnv *env;
-    getJNIEnv(&env);
+    count_bytes(&h->bytes, bytes, total_bytes);
 
-    if (env != NULL) {
-        upload_handle_t *h = (upload_handle_t *) handle;
+    if (h->slot) {
+        store_progress(h->slot, bytes, total_bytes);
+        return;
+    }
 
-        jclass callbackClass = env->GetObjectClass(h->callbackObject);
-        jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                    "onProgress",
-                                                    "(Ljava/lang/String;DJJ)V");
-        jstring localPath = env->NewStringUTF(h->path);
+    // throttled ticks do not cross JNI at all
+    if (!accept_progress(&h->progress, progress, bytes, total_bytes)) {
+        return;
+    }
 
-        env->CallVoidMethod(h->callbackObject,
-                            callbackMethod,
-                            localPath,
-                            progress,
-                            bytes,
-                            total_bytes);
+    JNIEnv *env;
+    getJNIEnv(&env);
 
-        // this function is called multiple times during file download
-        // cleanup is necessary to avoid local reference table overflow
-        env->DeleteLocalRef(callbackClass);
-        env->DeleteLocalRef(localPath);
+    if (env != NULL) {
+        call_progress(env,
+                      h->callbackObject,
+                      cache.uploadFileCallback.onProgress,
+                      &h->progress,
+                      h->path,
+                      progress,
+                      bytes,
+                      total_bytes);
     }
 }
 
 static void upload_file_complete_callback(int status, storj_file_meta_t *file, void *handle)
 {
+    add_active_requests(((upload_handle_t *) handle)->loop, -1);
 
     JNIEnv *env;
     getJNIEnv(&env);
@@ -953,49 +1641,28 @@ static void upload_file_complete_callback(int status, storj_file_meta_t *file, v
         if (status) {
             error_callback_upload(env, h, status, storj_strerror(status));
         } else {
-            jclass fileClass = env->FindClass("io/storj/libstorj/File");
-            jmethodID fileInit = env->GetMethodID(fileClass,
-                                                  "<init>",
-                                                  "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;ZJLjava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
-
-            jstring id = (file->id) ? env->NewStringUTF(file->id) : NULL;
-            jstring bucketId = (file->bucket_id) ? env->NewStringUTF(file->bucket_id) : NULL;
-            jstring filename = (file->filename) ? env->NewStringUTF(file->filename) : NULL;
-            jstring created = (file->created) ? env->NewStringUTF(file->created) : NULL;
-            jstring mimetype = (file->mimetype) ? env->NewStringUTF(file->mimetype) : NULL;
-            jstring erasure = (file->erasure) ? env->NewStringUTF(file->erasure) : NULL;
-            jstring index = (file->index) ? env->NewStringUTF(file->index) : NULL;
-            jstring hmac = (file->hmac) ? env->NewStringUTF(file->hmac) : NULL;
-
-            jobject fileObject = env->NewObject(fileClass,
-                                                fileInit,
-                                                id,
-                                                bucketId,
-                                                filename,
-                                                created,
-                                                file->decrypted,
-                                                file->size,
-                                                mimetype,
-                                                erasure,
-                                                index,
-                                                hmac);
-
-            jclass callbackClass = env->GetObjectClass(h->callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onComplete",
-                                                        "(Ljava/lang/String;Lio/storj/libstorj/File;)V");
+            jobject fileObject = new_file_object(env, file);
+
+            count_bytes(&h->bytes, h->bytes.total_bytes, h->bytes.total_bytes);
+
+            if (h->slot) {
+                store_completed(h->slot);
+            } else {
+                call_final_progress(env,
+                                    h->callbackObject,
+                                    cache.uploadFileCallback.onProgress,
+                                    &h->progress,
+                                    h->path);
+            }
+
             jstring localPath = env->NewStringUTF(h->path);
 
             env->CallVoidMethod(h->callbackObject,
-                                callbackMethod,
+                                cache.uploadFileCallback.onComplete,
                                 localPath,
                                 fileObject);
 
-            env->DeleteGlobalRef(h->callbackObject);
-            free(h->bucket_id);
-            free(h->file_name);
-            free(h->path);
-            delete h;
+            free_upload_handle(env, h);
         }
     }
 
@@ -1011,6 +1678,16 @@ Java_io_storj_libstorj_Storj__1uploadFile(
         jstring bucketId,
         jstring fileName,
         jstring localPath,
+        jint prepareFrameLimit,
+        jint pushFrameLimit,
+        jint pushShardLimit,
+        jboolean rs,
+        jstring index,
+        jlong progressIntervalMs,
+        jlong progressBytes,
+        jobject progressTable,
+        jint progressSlot,
+        jobject byteCounters,
         jobject callbackObject)
 {
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
@@ -1023,6 +1700,16 @@ Java_io_storj_libstorj_Storj__1uploadFile(
     h->bucket_id = strdup(bucket_id);
     h->file_name = strdup(file_name);
     h->path = strdup(local_path);
+    h->index = NULL;
+    if (index != NULL) {
+        const char *index_hex = env->GetStringUTFChars(index, NULL);
+        h->index = strdup(index_hex);
+        env->ReleaseStringUTFChars(index, index_hex);
+    }
+    init_progress_throttle(&h->progress, progressIntervalMs, progressBytes);
+    h->slot = get_progress_slot(env, progressTable, progressSlot);
+    init_byte_counter(env, &h->bytes, byteCounters, COUNTER_UPLOAD);
+    h->loop = storj_env->loop;
 
     FILE *fd = fopen(local_path, "r");
 
@@ -1032,21 +1719,24 @@ Java_io_storj_libstorj_Storj__1uploadFile(
         error_callback_upload(env, h, 20000 + errno, strerror(errno));
     } else {
         storj_upload_opts_t upload_opts = {
-                .prepare_frame_limit = 1,
-                .push_frame_limit = 64,
-                .push_shard_limit = 64,
-                .rs = true,
-                .index = NULL,
+                .prepare_frame_limit = prepareFrameLimit,
+                .push_frame_limit = pushFrameLimit,
+                .push_shard_limit = pushShardLimit,
+                .rs = (rs == JNI_TRUE),
+                .index = h->index,
                 .bucket_id = h->bucket_id,
                 .file_name = h->file_name,
                 .fd = fd
         };
+        add_active_requests(storj_env->loop, 1);
         state = storj_bridge_store_file(storj_env,
                                         &upload_opts,
                                         h,
                                         upload_file_progress_callback,
                                         upload_file_complete_callback);
+        wake_event_loop(storj_env);
         if (!state) {
+            add_active_requests(storj_env->loop, -1);
             error_callback_upload(env, h, STORJ_MEMORY_ERROR, storj_strerror(STORJ_MEMORY_ERROR));
         } else if (state->error_status) {
             // The error will be reported in the complete callback.
@@ -1071,6 +1761,7 @@ Java_io_storj_libstorj_Storj__1cancelUpload(
     storj_upload_state_t *state = (storj_upload_state_t *) uploadState;
 
     int result = storj_bridge_store_file_cancel(state);
+    wake_event_loop(state->env);
 
     return (jboolean) (result == 0);
 }
@@ -1089,12 +1780,9 @@ static void delete_bucket_callback(uv_work_t *work_req, int status)
 
         if (req->status_code != 200 && req->status_code != 204) {
             jstring arg = bucketId;
-            HANDLE_ERROR_ARG();
+            HANDLE_ERROR_ARG(cache.deleteBucketCallback.onError);
         } else {
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass, "onBucketDeleted", "(Ljava/lang/String;)V");
-
-            env->CallVoidMethod(callbackObject, callbackMethod, bucketId);
+            env->CallVoidMethod(callbackObject, cache.deleteBucketCallback.onBucketDeleted, bucketId);
         }
 
         env->DeleteGlobalRef(callbackObject);
@@ -1103,6 +1791,7 @@ static void delete_bucket_callback(uv_work_t *work_req, int status)
     json_object_put(req->response);
     free(req->path);
     free(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -1118,10 +1807,12 @@ Java_io_storj_libstorj_Storj__1deleteBucket(
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
     const char *bucket_id = env->GetStringUTFChars(bucketId, NULL);
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_delete_bucket(storj_env,
                                bucket_id,
                                env->NewGlobalRef(callbackObject),
                                delete_bucket_callback);
+    wake_event_loop(storj_env);
 
     env->ReleaseStringUTFChars(bucketId, bucket_id);
 }
@@ -1140,12 +1831,9 @@ static void delete_file_callback(uv_work_t *work_req, int status)
 
         if (req->status_code != 200 && req->status_code != 204) {
             jstring arg = fileId;
-            HANDLE_ERROR_ARG();
+            HANDLE_ERROR_ARG(cache.deleteFileCallback.onError);
         } else {
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass, "onFileDeleted", "(Ljava/lang/String;)V");
-
-            env->CallVoidMethod(callbackObject, callbackMethod, fileId);
+            env->CallVoidMethod(callbackObject, cache.deleteFileCallback.onFileDeleted, fileId);
         }
 
         env->DeleteGlobalRef(callbackObject);
@@ -1154,6 +1842,7 @@ static void delete_file_callback(uv_work_t *work_req, int status)
     json_object_put(req->response);
     free(req->path);
     free(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -1171,11 +1860,13 @@ Java_io_storj_libstorj_Storj__1deleteFile(
     const char *bucket_id = env->GetStringUTFChars(bucketId, NULL);
     const char *file_id = env->GetStringUTFChars(fileId, NULL);
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_delete_file(storj_env,
                              bucket_id,
                              file_id,
                              env->NewGlobalRef(callbackObject),
                              delete_file_callback);
+    wake_event_loop(storj_env);
 
     env->ReleaseStringUTFChars(bucketId, bucket_id);
     env->ReleaseStringUTFChars(fileId, file_id);
@@ -1193,17 +1884,13 @@ static void register_callback(uv_work_t *work_req, int status)
         jobject callbackObject = (jobject) req->handle;
 
         if (req->status_code != 201) {
-            HANDLE_ERROR();
+            HANDLE_ERROR(cache.registerCallback.onError);
         } else {
             struct json_object *email;
             json_object_object_get_ex(req->response, "email", &email);
 
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onConfirmationPending",
-                                                        "(Ljava/lang/String;)V");
             env->CallVoidMethod(callbackObject,
-                                callbackMethod,
+                                cache.registerCallback.onConfirmationPending,
                                 env->NewStringUTF(json_object_get_string(email)));
         }
 
@@ -1213,6 +1900,7 @@ static void register_callback(uv_work_t *work_req, int status)
     json_object_put(req->response);
     json_object_put(req->body);
     free(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -1226,11 +1914,13 @@ Java_io_storj_libstorj_Storj__1register(
 {
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_register(storj_env,
                           storj_env->bridge_options->user,
                           storj_env->bridge_options->pass,
                           env->NewGlobalRef(callbackObject),
                           register_callback);
+    wake_event_loop(storj_env);
 }
 
 static void get_info_callback(uv_work_t *work_req, int status)
@@ -1245,7 +1935,7 @@ static void get_info_callback(uv_work_t *work_req, int status)
         jobject callbackObject = (jobject) req->handle;
 
         if (req->status_code != 200) {
-            HANDLE_ERROR();
+            HANDLE_ERROR(cache.getInfoCallback.onError);
         } else {
             struct json_object *info;
             json_object_object_get_ex(req->response, "info", &info);
@@ -1258,12 +1948,8 @@ static void get_info_callback(uv_work_t *work_req, int status)
             struct json_object *host;
             json_object_object_get_ex(req->response, "host", &host);
 
-            jclass callbackClass = env->GetObjectClass(callbackObject);
-            jmethodID callbackMethod = env->GetMethodID(callbackClass,
-                                                        "onInfoReceived",
-                                                        "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
             env->CallVoidMethod(callbackObject,
-                                callbackMethod,
+                                cache.getInfoCallback.onInfoReceived,
                                 env->NewStringUTF(json_object_get_string(title)),
                                 env->NewStringUTF(json_object_get_string(description)),
                                 env->NewStringUTF(json_object_get_string(version)),
@@ -1275,6 +1961,7 @@ static void get_info_callback(uv_work_t *work_req, int status)
 
     json_object_put(req->response);
     free(req);
+    add_active_requests(work_req->loop, -1);
     free(work_req);
 }
 
@@ -1288,9 +1975,11 @@ Java_io_storj_libstorj_Storj__1getInfo(
 {
     storj_env_t *storj_env = (storj_env_t *) storjEnv;
 
+    add_active_requests(storj_env->loop, 1);
     storj_bridge_get_info(storj_env,
                           env->NewGlobalRef(callbackObject),
                           get_info_callback);
+    wake_event_loop(storj_env);
 }
 
 extern "C"
@@ -1309,12 +1998,8 @@ Java_io_storj_libstorj_Storj__1exportKeys(
 
     jobject keysObject = NULL;
     if (!storj_decrypt_read_auth(location, passphrase, &user, &pass, &mnemonic)) {
-        jclass keysClass = env->FindClass("io/storj/libstorj/Keys");
-        jmethodID keysInit = env->GetMethodID(keysClass,
-                                              "<init>",
-                                              "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
-        keysObject = env->NewObject(keysClass,
-                                    keysInit,
+        keysObject = env->NewObject(cache.keysClass,
+                                    cache.keysInit,
                                     env->NewStringUTF(user),
                                     env->NewStringUTF(pass),
                                     env->NewStringUTF(mnemonic));
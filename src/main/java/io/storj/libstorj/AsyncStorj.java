@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Facade over {@link Storj} returning {@link CompletableFuture}s instead of
+ * taking callbacks.
+ * 
+ * <p>
+ * The futures complete on the thread invoking the callbacks, i.e. on the event
+ * loop thread unless a callback executor is set with
+ * {@link Storj#setCallbackExecutor(java.util.concurrent.Executor, int, OverflowPolicy)}.
+ * Dependent actions that are not trivial should therefore be registered with
+ * the <code>*Async</code> methods of {@link CompletableFuture}.
+ * </p>
+ * 
+ * <p>
+ * Failed requests complete the future exceptionally with a
+ * {@link StorjException}, or with the {@link RuntimeException} thrown by the
+ * {@link Storj} method, e.g. {@link KeysNotFoundException}.
+ * </p>
+ */
+public class AsyncStorj {
+
+    private final Storj storj;
+
+    /**
+     * Constructs a new facade over the provided {@link Storj} instance.
+     * 
+     * @param storj
+     *            the {@link Storj} instance to send the requests with
+     */
+    public AsyncStorj(Storj storj) {
+        if (storj == null) {
+            throw new NullPointerException("storj");
+        }
+        this.storj = storj;
+    }
+
+    /**
+     * Returns the {@link Storj} instance the requests are sent with.
+     * 
+     * @return the {@link Storj} instance
+     */
+    public Storj getStorj() {
+        return storj;
+    }
+
+    /**
+     * Lists the available buckets for the user.
+     * 
+     * @return a future completed with the buckets
+     * @see Storj#getBuckets(GetBucketsCallback)
+     */
+    public CompletableFuture<Bucket[]> getBuckets() {
+        final CompletableFuture<Bucket[]> future = new CompletableFuture<>();
+        try {
+            storj.getBuckets(new GetBucketsCallback() {
+                @Override
+                public void onBucketsReceived(Bucket[] buckets) {
+                    future.complete(buckets);
+                }
+
+                @Override
+                public void onError(int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Gets info about a bucket.
+     * 
+     * @param bucketId
+     *            the bucket id
+     * @return a future completed with the bucket
+     * @see Storj#getBucket(String, GetBucketCallback)
+     */
+    public CompletableFuture<Bucket> getBucket(String bucketId) {
+        final CompletableFuture<Bucket> future = new CompletableFuture<>();
+        try {
+            storj.getBucket(bucketId, new GetBucketCallback() {
+                @Override
+                public void onBucketReceived(Bucket bucket) {
+                    future.complete(bucket);
+                }
+
+                @Override
+                public void onError(String bucketId, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Gets the id of a bucket.
+     * 
+     * @param bucketName
+     *            the bucket name
+     * @return a future completed with the bucket id
+     * @see Storj#getBucketId(String, GetBucketIdCallback)
+     */
+    public CompletableFuture<String> getBucketId(String bucketName) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            storj.getBucketId(bucketName, new GetBucketIdCallback() {
+                @Override
+                public void onBucketIdReceived(String bucketName, String bucketId) {
+                    future.complete(bucketId);
+                }
+
+                @Override
+                public void onError(String bucketName, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Creates a new bucket.
+     * 
+     * @param bucketName
+     *            the name of the new bucket
+     * @return a future completed with the created bucket
+     * @see Storj#createBucket(String, CreateBucketCallback)
+     */
+    public CompletableFuture<Bucket> createBucket(String bucketName) {
+        final CompletableFuture<Bucket> future = new CompletableFuture<>();
+        try {
+            storj.createBucket(bucketName, new CreateBucketCallback() {
+                @Override
+                public void onBucketCreated(Bucket bucket) {
+                    future.complete(bucket);
+                }
+
+                @Override
+                public void onError(String bucketName, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Deletes a bucket.
+     * 
+     * @param bucketId
+     *            the id of the bucket
+     * @return a future completed when the bucket is deleted
+     * @see Storj#deleteBucket(String, DeleteBucketCallback)
+     */
+    public CompletableFuture<Void> deleteBucket(String bucketId) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            storj.deleteBucket(bucketId, new DeleteBucketCallback() {
+                @Override
+                public void onBucketDeleted(String bucketId) {
+                    future.complete(null);
+                }
+
+                @Override
+                public void onError(String bucketId, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Lists the files in a bucket.
+     * 
+     * @param bucketId
+     *            the id of the bucket
+     * @return a future completed with the files
+     * @see Storj#listFiles(String, ListFilesCallback)
+     */
+    public CompletableFuture<File[]> listFiles(String bucketId) {
+        final CompletableFuture<File[]> future = new CompletableFuture<>();
+        try {
+            storj.listFiles(bucketId, new ListFilesCallback() {
+                @Override
+                public void onFilesReceived(String bucketId, File[] files) {
+                    future.complete(files);
+                }
+
+                @Override
+                public void onError(String bucketId, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Gets a cursor over the files in a bucket that returns them in pages.
+     * 
+     * @param bucketId
+     *            the id of the bucket
+     * @param pageSize
+     *            the maximum number of files in a page
+     * @return a future completed with the cursor, which must be read to the end
+     *         or closed
+     * @see Storj#listFiles(String, int, FileCursorCallback)
+     */
+    public CompletableFuture<FileCursor> listFiles(String bucketId, int pageSize) {
+        final CompletableFuture<FileCursor> future = new CompletableFuture<>();
+        try {
+            storj.listFiles(bucketId, pageSize, new FileCursorCallback() {
+                @Override
+                public void onCursorReady(FileCursor cursor) {
+                    if (!future.complete(cursor)) {
+                        cursor.close();
+                    }
+                }
+
+                @Override
+                public void onError(String bucketId, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Gets info about a file.
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileId
+     *            the id of the file
+     * @return a future completed with the file
+     * @see Storj#getFile(String, String, GetFileCallback)
+     */
+    public CompletableFuture<File> getFile(String bucketId, String fileId) {
+        final CompletableFuture<File> future = new CompletableFuture<>();
+        try {
+            storj.getFile(bucketId, fileId, new GetFileCallback() {
+                @Override
+                public void onFileReceived(File file) {
+                    future.complete(file);
+                }
+
+                @Override
+                public void onError(String fileId, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Gets the id of a file.
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileName
+     *            the name of the file
+     * @return a future completed with the file id
+     * @see Storj#getFileId(String, String, GetFileIdCallback)
+     */
+    public CompletableFuture<String> getFileId(String bucketId, String fileName) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            storj.getFileId(bucketId, fileName, new GetFileIdCallback() {
+                @Override
+                public void onFileIdReceived(String fileName, String fileId) {
+                    future.complete(fileId);
+                }
+
+                @Override
+                public void onError(String fileName, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Deletes a file.
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileId
+     *            the id of the file
+     * @return a future completed when the file is deleted
+     * @see Storj#deleteFile(String, String, DeleteFileCallback)
+     */
+    public CompletableFuture<Void> deleteFile(String bucketId, String fileId) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            storj.deleteFile(bucketId, fileId, new DeleteFileCallback() {
+                @Override
+                public void onFileDeleted(String fileId) {
+                    future.complete(null);
+                }
+
+                @Override
+                public void onError(String fileId, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Downloads a file to the provided local path.
+     * 
+     * <p>
+     * Cancelling the returned future cancels the download.
+     * </p>
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileId
+     *            the id of the file to download
+     * @param localPath
+     *            the local path (including file name) to download the file to
+     * @return a future completed with the local path when the download finishes
+     * @see Storj#downloadFile(String, String, String, DownloadFileCallback)
+     */
+    public CompletableFuture<String> downloadFile(String bucketId, String fileId, String localPath) {
+        final TransferFuture<String> future = new TransferFuture<>(true);
+        try {
+            future.state = storj.downloadFile(bucketId, fileId, localPath, new DownloadFileCallback() {
+                @Override
+                public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+                }
+
+                @Override
+                public void onComplete(String fileId, String localPath) {
+                    future.complete(localPath);
+                }
+
+                @Override
+                public void onError(String fileId, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Uploads a file using the name of the local file.
+     * 
+     * <p>
+     * Cancelling the returned future cancels the upload.
+     * </p>
+     * 
+     * @param bucketId
+     *            the id of the bucket to upload the file to
+     * @param localPath
+     *            the local path of the file to upload
+     * @return a future completed with the uploaded file
+     * @see Storj#uploadFile(String, String, UploadFileCallback)
+     */
+    public CompletableFuture<File> uploadFile(String bucketId, String localPath) {
+        return uploadFile(bucketId, new java.io.File(localPath).getName(), localPath);
+    }
+
+    /**
+     * Uploads a file with the provided name.
+     * 
+     * <p>
+     * Cancelling the returned future cancels the upload.
+     * </p>
+     * 
+     * @param bucketId
+     *            the id of the bucket to upload the file to
+     * @param fileName
+     *            the name of the file in the bucket
+     * @param localPath
+     *            the local path of the file to upload
+     * @return a future completed with the uploaded file
+     * @see Storj#uploadFile(String, String, String, UploadFileCallback)
+     */
+    public CompletableFuture<File> uploadFile(String bucketId, String fileName, String localPath) {
+        final TransferFuture<File> future = new TransferFuture<>(false);
+        try {
+            future.state = storj.uploadFile(bucketId, fileName, localPath, new UploadFileCallback() {
+                @Override
+                public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+                }
+
+                @Override
+                public void onComplete(String filePath, File file) {
+                    future.complete(file);
+                }
+
+                @Override
+                public void onError(String filePath, int code, String message) {
+                    future.completeExceptionally(new StorjException(code, message));
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Future of a file transfer that cancels the transfer when cancelled.
+     * 
+     * <p>
+     * Only cancelling this future cancels the transfer. Cancelling a dependent
+     * future does not propagate back to it.
+     * </p>
+     */
+    private class TransferFuture<T> extends CompletableFuture<T> {
+
+        private final boolean download;
+
+        volatile long state;
+
+        TransferFuture(boolean download) {
+            this.download = download;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean canceled = super.cancel(mayInterruptIfRunning);
+            // the state is ignored by Storj if the transfer has already finished
+            if (canceled && state != 0) {
+                if (download) {
+                    storj.cancelDownload(state);
+                } else {
+                    storj.cancelUpload(state);
+                }
+            }
+            return canceled;
+        }
+
+    }
+
+}
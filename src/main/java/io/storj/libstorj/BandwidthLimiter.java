@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Token buckets limiting the upload and download bandwidth of file transfers.
+ *
+ * <p>
+ * A limiter is applied to all transfers of a {@link Storj} instance with
+ * {@link Storj#setBandwidthLimiter(BandwidthLimiter)}, or to single transfers
+ * with {@link DownloadOptions.Builder#setBandwidthLimiter(BandwidthLimiter)}
+ * and {@link UploadOptions.Builder#setBandwidthLimiter(BandwidthLimiter)}. The
+ * same limiter can be shared by any number of transfers and instances.
+ * </p>
+ *
+ * <p>
+ * The native library adds the bytes of each transfer to counters in direct
+ * memory as the shards are transferred, and each bucket is drained by these
+ * counts and refilled at the configured rate, up to one second worth of bytes.
+ * The shard transfers themselves run inside libstorj and cannot be paused, so
+ * the limit is enforced only when transfers start: while a bucket is in debt,
+ * queued transfers of that direction are held back by the
+ * {@link TransferScheduler} until the debt is paid off. Transfers with a
+ * limiter are always queued, in an unlimited scheduler if the {@link Storj}
+ * instance has none. Running transfers are not throttled at all, so a single
+ * large transfer runs at full speed until it finishes, and only the average
+ * rate over many transfers stays within the limit.
+ * </p>
+ *
+ * <p>
+ * The rates can be changed at any time and take effect for the transfers
+ * queued afterwards.
+ * </p>
+ */
+public class BandwidthLimiter {
+
+    /**
+     * Index of the upload counter in the direct buffer.
+     */
+    static final int UPLOAD = 0;
+
+    /**
+     * Index of the download counter in the direct buffer.
+     */
+    static final int DOWNLOAD = 1;
+
+    /**
+     * Minimum time over which the throughput is measured.
+     */
+    private static final long THROUGHPUT_WINDOW = 1000000000L;
+
+    private final ByteBuffer counters = ByteBuffer.allocateDirect(2 * 8).order(ByteOrder.nativeOrder());
+
+    // guarded by this
+    private final Bucket[] buckets = new Bucket[2];
+
+    /**
+     * Constructs new limiter with the provided rates.
+     *
+     * @param uploadBytesPerSecond
+     *            the upload rate, or <code>0</code> for no limit
+     * @param downloadBytesPerSecond
+     *            the download rate, or <code>0</code> for no limit
+     * @throws IllegalArgumentException
+     *             if any of the rates is negative
+     */
+    public BandwidthLimiter(long uploadBytesPerSecond, long downloadBytesPerSecond) {
+        checkRate(uploadBytesPerSecond);
+        checkRate(downloadBytesPerSecond);
+        long now = now();
+        buckets[UPLOAD] = new Bucket(uploadBytesPerSecond, now);
+        buckets[DOWNLOAD] = new Bucket(downloadBytesPerSecond, now);
+    }
+
+    /**
+     * Sets the upload rate.
+     *
+     * @param bytesPerSecond
+     *            the rate, or <code>0</code> for no limit
+     * @return a reference to this limiter
+     * @throws IllegalArgumentException
+     *             if the rate is negative
+     */
+    public BandwidthLimiter setUploadRate(long bytesPerSecond) {
+        return setRate(UPLOAD, bytesPerSecond);
+    }
+
+    /**
+     * Returns the upload rate.
+     *
+     * @return the rate in bytes per second, or <code>0</code> if not limited
+     */
+    public synchronized long getUploadRate() {
+        return buckets[UPLOAD].rate;
+    }
+
+    /**
+     * Sets the download rate.
+     *
+     * @param bytesPerSecond
+     *            the rate, or <code>0</code> for no limit
+     * @return a reference to this limiter
+     * @throws IllegalArgumentException
+     *             if the rate is negative
+     */
+    public BandwidthLimiter setDownloadRate(long bytesPerSecond) {
+        return setRate(DOWNLOAD, bytesPerSecond);
+    }
+
+    /**
+     * Returns the download rate.
+     *
+     * @return the rate in bytes per second, or <code>0</code> if not limited
+     */
+    public synchronized long getDownloadRate() {
+        return buckets[DOWNLOAD].rate;
+    }
+
+    /**
+     * Returns the number of bytes uploaded by the transfers using this limiter.
+     *
+     * @return the number of bytes
+     */
+    public long getUploadedBytes() {
+        return getCount(UPLOAD);
+    }
+
+    /**
+     * Returns the number of bytes downloaded by the transfers using this
+     * limiter.
+     *
+     * @return the number of bytes
+     */
+    public long getDownloadedBytes() {
+        return getCount(DOWNLOAD);
+    }
+
+    /**
+     * Returns the measured upload throughput. It is the average over the time
+     * since the previous measurement, which is taken at most once per second.
+     *
+     * @return the throughput in bytes per second
+     */
+    public synchronized double getUploadThroughput() {
+        return update(UPLOAD).throughput;
+    }
+
+    /**
+     * Returns the measured download throughput. It is the average over the
+     * time since the previous measurement, which is taken at most once per
+     * second.
+     *
+     * @return the throughput in bytes per second
+     */
+    public synchronized double getDownloadThroughput() {
+        return update(DOWNLOAD).throughput;
+    }
+
+    @Override
+    public String toString() {
+        return "BandwidthLimiter [uploadRate=" + getUploadRate() + ", downloadRate=" + getDownloadRate() + "]";
+    }
+
+    /**
+     * Returns the direct buffer with the byte counters updated by the native
+     * library.
+     */
+    ByteBuffer getCounters() {
+        return counters;
+    }
+
+    /**
+     * Returns how long a new transfer in the provided direction must wait for
+     * the bucket to get out of debt.
+     *
+     * @param direction
+     *            {@link #UPLOAD} or {@link #DOWNLOAD}
+     * @return the delay in nanoseconds, or <code>0</code> if the transfer may
+     *         start now
+     */
+    synchronized long getStartDelay(int direction) {
+        Bucket bucket = update(direction);
+        if (bucket.rate == 0 || bucket.tokens > 0) {
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil(-bucket.tokens * 1e9 / bucket.rate));
+    }
+
+    /**
+     * Returns the current time in nanoseconds. Tests override it to control
+     * the refilling of the buckets.
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    private synchronized BandwidthLimiter setRate(int direction, long bytesPerSecond) {
+        checkRate(bytesPerSecond);
+        Bucket bucket = update(direction);
+        if (bucket.rate == 0) {
+            // start with a full bucket, as if the limit had always been there
+            bucket.tokens = bytesPerSecond;
+        } else {
+            bucket.tokens = Math.min(bucket.tokens, bytesPerSecond);
+        }
+        bucket.rate = bytesPerSecond;
+        return this;
+    }
+
+    private long getCount(int direction) {
+        return counters.getLong(direction * 8);
+    }
+
+    private Bucket update(int direction) {
+        Bucket bucket = buckets[direction];
+        long now = now();
+        long count = getCount(direction);
+
+        if (bucket.rate > 0) {
+            double refill = bucket.rate * ((now - bucket.lastTime) / 1e9);
+            bucket.tokens = Math.min(bucket.rate, bucket.tokens + refill);
+        }
+        bucket.tokens -= count - bucket.lastCount;
+        bucket.lastTime = now;
+        bucket.lastCount = count;
+
+        long window = now - bucket.windowStart;
+        if (window >= THROUGHPUT_WINDOW) {
+            bucket.throughput = (count - bucket.windowCount) * 1e9 / window;
+            bucket.windowStart = now;
+            bucket.windowCount = count;
+        }
+        return bucket;
+    }
+
+    private static void checkRate(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("rate must not be negative: " + bytesPerSecond);
+        }
+    }
+
+    private static final class Bucket {
+
+        long rate;
+        double tokens;
+        long lastTime;
+        long lastCount;
+
+        long windowStart;
+        long windowCount;
+        double throughput;
+
+        Bucket(long rate, long now) {
+            this.rate = rate;
+            this.tokens = rate;
+            this.lastTime = now;
+            this.windowStart = now;
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of bucket metadata for a {@link Storj} instance.
+ * 
+ * <p>
+ * When set with {@link Storj#setBucketCache(BucketCache)}, the
+ * <code>getBucket()</code> and <code>getBucketId()</code> methods are served
+ * from the cache while the cached entry is fresh. The cache is filled from the
+ * responses of <code>getBuckets()</code>, <code>getBucket()</code>,
+ * <code>getBucketId()</code> and <code>createBucket()</code>, and the entries
+ * of deleted buckets are removed by <code>deleteBucket()</code>.
+ * </p>
+ * 
+ * <p>
+ * Entries expire after a fixed time since they were stored, and the least
+ * recently used entries are evicted when the cache is full. Changes made to
+ * the buckets by other clients are therefore visible only after the entries
+ * expire.
+ * </p>
+ */
+public class BucketCache {
+
+    private final long ttlNanos;
+    private final int maximumSize;
+
+    private final Map<String, CacheEntry<Bucket>> buckets;
+    private final Map<String, CacheEntry<String>> bucketIds;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Incremented on every invalidation, so responses to requests sent before
+     * an invalidation do not fill the cache with stale entries.
+     */
+    private long generation;
+
+    /**
+     * Constructs a new bucket cache.
+     * 
+     * @param ttl
+     *            the time an entry is fresh after being stored
+     * @param unit
+     *            the time unit of <code>ttl</code>
+     * @param maximumSize
+     *            the maximum number of buckets and of bucket names stored
+     */
+    public BucketCache(long ttl, TimeUnit unit, int maximumSize) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        }
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maximumSize = maximumSize;
+        this.buckets = new LruMap<>(maximumSize);
+        this.bucketIds = new LruMap<>(maximumSize);
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     * 
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to be sent to the Bridge.
+     * 
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the maximum number of buckets and of bucket names stored.
+     * 
+     * @return the maximum size
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the number of cached buckets, including expired ones not yet
+     * evicted.
+     * 
+     * @return the number of cached buckets
+     */
+    public synchronized int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Removes the entries of a bucket.
+     * 
+     * @param bucketId
+     *            the id of the bucket
+     */
+    public synchronized void invalidate(String bucketId) {
+        generation++;
+        buckets.remove(bucketId);
+        for (Iterator<CacheEntry<String>> it = bucketIds.values().iterator(); it.hasNext();) {
+            if (it.next().value.equals(bucketId)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        buckets.clear();
+        bucketIds.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "BucketCache [size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+
+    synchronized Bucket getBucket(String bucketId) {
+        return get(buckets, bucketId);
+    }
+
+    synchronized String getBucketId(String bucketName) {
+        return get(bucketIds, bucketName);
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores a bucket received in a response.
+     * 
+     * @param bucket
+     *            the bucket
+     * @param requestGeneration
+     *            the generation when the request was sent
+     */
+    synchronized void put(Bucket bucket, long requestGeneration) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        long expiry = now() + ttlNanos;
+        buckets.put(bucket.getId(), new CacheEntry<>(bucket, expiry));
+        if (bucket.isDecrypted()) {
+            bucketIds.put(bucket.getName(), new CacheEntry<>(bucket.getId(), expiry));
+        }
+    }
+
+    /**
+     * Stores a bucket id received in a response.
+     * 
+     * @param bucketName
+     *            the bucket name
+     * @param bucketId
+     *            the bucket id
+     * @param requestGeneration
+     *            the generation when the request was sent
+     */
+    synchronized void putId(String bucketName, String bucketId, long requestGeneration) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        bucketIds.put(bucketName, new CacheEntry<>(bucketId, now() + ttlNanos));
+    }
+
+    GetBucketsCallback wrap(final GetBucketsCallback callback) {
+        final long requestGeneration = getGeneration();
+        return new GetBucketsCallback() {
+            @Override
+            public void onBucketsReceived(Bucket[] buckets) {
+                for (Bucket bucket : buckets) {
+                    put(bucket, requestGeneration);
+                }
+                callback.onBucketsReceived(buckets);
+            }
+
+            @Override
+            public void onError(int code, String message) {
+                callback.onError(code, message);
+            }
+        };
+    }
+
+    GetBucketCallback wrap(final GetBucketCallback callback) {
+        final long requestGeneration = getGeneration();
+        return new GetBucketCallback() {
+            @Override
+            public void onBucketReceived(Bucket bucket) {
+                put(bucket, requestGeneration);
+                callback.onBucketReceived(bucket);
+            }
+
+            @Override
+            public void onError(String bucketId, int code, String message) {
+                callback.onError(bucketId, code, message);
+            }
+        };
+    }
+
+    GetBucketIdCallback wrap(final GetBucketIdCallback callback) {
+        final long requestGeneration = getGeneration();
+        return new GetBucketIdCallback() {
+            @Override
+            public void onBucketIdReceived(String bucketName, String bucketId) {
+                putId(bucketName, bucketId, requestGeneration);
+                callback.onBucketIdReceived(bucketName, bucketId);
+            }
+
+            @Override
+            public void onError(String bucketName, int code, String message) {
+                callback.onError(bucketName, code, message);
+            }
+        };
+    }
+
+    CreateBucketCallback wrap(final CreateBucketCallback callback) {
+        return new CreateBucketCallback() {
+            @Override
+            public void onBucketCreated(Bucket bucket) {
+                // a new bucket cannot have been cached by a concurrent request
+                put(bucket, getGeneration());
+                callback.onBucketCreated(bucket);
+            }
+
+            @Override
+            public void onError(String bucketName, int code, String message) {
+                callback.onError(bucketName, code, message);
+            }
+        };
+    }
+
+    DeleteBucketCallback wrap(final DeleteBucketCallback callback) {
+        return new DeleteBucketCallback() {
+            @Override
+            public void onBucketDeleted(String bucketId) {
+                // drops what concurrent requests may have cached meanwhile
+                invalidate(bucketId);
+                callback.onBucketDeleted(bucketId);
+            }
+
+            @Override
+            public void onError(String bucketId, int code, String message) {
+                callback.onError(bucketId, code, message);
+            }
+        };
+    }
+
+    /**
+     * Returns the current time in nanoseconds. Tests override it to control
+     * the expiration of the entries.
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    private <T> T get(Map<String, CacheEntry<T>> map, String key) {
+        CacheEntry<T> entry = map.get(key);
+        if (entry != null && now() - entry.expiry < 0) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        if (entry != null) {
+            map.remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private static class CacheEntry<T> {
+        final T value;
+        final long expiry;
+
+        CacheEntry(T value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class LruMap<T> extends LinkedHashMap<String, CacheEntry<T>> {
+        private final int maximumSize;
+
+        LruMap(int maximumSize) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<T>> eldest) {
+            return size() > maximumSize;
+        }
+    }
+
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands off the callbacks invoked by the native library on the event loop
+ * thread to an {@link Executor}.
+ *
+ * <p>
+ * Callbacks are queued in a bounded queue and run one at a time in the order
+ * they were invoked by the native library, so the guarantees of running them
+ * on the event loop thread (e.g. progress always before completion) are
+ * preserved.
+ * </p>
+ *
+ * <p>
+ * Only the event loop thread waits for the bounded queue. Callbacks invoked
+ * right away on other threads, e.g. on a cache hit or when the circuit breaker
+ * rejects a request, are queued without a bound if the queue is full. They
+ * may be invoked by the executor thread draining the queue, which would
+ * otherwise wait for itself.
+ * </p>
+ */
+class CallbackDispatcher {
+
+    /**
+     * Dispatcher that runs the callbacks directly on the event loop thread.
+     */
+    static final CallbackDispatcher DIRECT = new CallbackDispatcher(null, 0, OverflowPolicy.BLOCK);
+
+    private static final ThreadLocal<Boolean> EVENT_LOOP_THREAD = new ThreadLocal<>();
+
+    private final Executor executor;
+    private final BlockingQueue<Runnable> queue;
+    private final Queue<Runnable> overflow = new ConcurrentLinkedQueue<>();
+    private final OverflowPolicy policy;
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    CallbackDispatcher(Executor executor, int queueCapacity, OverflowPolicy policy) {
+        this.executor = executor;
+        this.queue = (executor == null) ? null : new ArrayBlockingQueue<Runnable>(queueCapacity);
+        this.policy = policy;
+    }
+
+    /**
+     * Marks the current thread as an event loop thread, which waits when the
+     * queue is full.
+     */
+    static void setEventLoopThread() {
+        EVENT_LOOP_THREAD.set(Boolean.TRUE);
+    }
+
+    /**
+     * Returns the number of callbacks waiting to be run by the executor.
+     */
+    int getQueueSize() {
+        return (queue == null) ? 0 : queue.size() + overflow.size();
+    }
+
+    GetBucketsCallback wrap(final GetBucketsCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new GetBucketsCallback() {
+            @Override
+            public void onBucketsReceived(final Bucket[] buckets) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBucketsReceived(buckets);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    GetBucketCallback wrap(final GetBucketCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new GetBucketCallback() {
+            @Override
+            public void onBucketReceived(final Bucket bucket) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBucketReceived(bucket);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String bucketId, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketId, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    GetBucketIdCallback wrap(final GetBucketIdCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new GetBucketIdCallback() {
+            @Override
+            public void onBucketIdReceived(final String bucketName, final String bucketId) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBucketIdReceived(bucketName, bucketId);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String bucketName, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketName, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    CreateBucketCallback wrap(final CreateBucketCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new CreateBucketCallback() {
+            @Override
+            public void onBucketCreated(final Bucket bucket) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBucketCreated(bucket);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String bucketName, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketName, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    DeleteBucketCallback wrap(final DeleteBucketCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new DeleteBucketCallback() {
+            @Override
+            public void onBucketDeleted(final String bucketId) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBucketDeleted(bucketId);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String bucketId, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketId, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    ListFilesCallback wrap(final ListFilesCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new ListFilesCallback() {
+            @Override
+            public void onFilesReceived(final String bucketId, final File[] files) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFilesReceived(bucketId, files);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String bucketId, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketId, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    FileCursorCallback wrap(final FileCursorCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new FileCursorCallback() {
+            @Override
+            public void onCursorReady(final FileCursor cursor) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCursorReady(cursor);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String bucketId, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketId, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    GetFileCallback wrap(final GetFileCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new GetFileCallback() {
+            @Override
+            public void onFileReceived(final File file) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFileReceived(file);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String fileId, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(fileId, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    GetFileIdCallback wrap(final GetFileIdCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new GetFileIdCallback() {
+            @Override
+            public void onFileIdReceived(final String fileName, final String fileId) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFileIdReceived(fileName, fileId);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String fileName, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(fileName, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    DeleteFileCallback wrap(final DeleteFileCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new DeleteFileCallback() {
+            @Override
+            public void onFileDeleted(final String fileId) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFileDeleted(fileId);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String fileId, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(fileId, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    DownloadFileCallback wrap(final DownloadFileCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new DownloadFileCallback() {
+            @Override
+            public void onProgress(final String fileId, final double progress, final long downloadedBytes,
+                    final long totalBytes) {
+                dispatchProgress(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onProgress(fileId, progress, downloadedBytes, totalBytes);
+                    }
+                });
+            }
+
+            @Override
+            public void onComplete(final String fileId, final String localPath) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onComplete(fileId, localPath);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String fileId, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(fileId, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    UploadFileCallback wrap(final UploadFileCallback callback) {
+        if (!accept()) {
+            return callback;
+        }
+        return new UploadFileCallback() {
+            @Override
+            public void onProgress(final String filePath, final double progress, final long uploadedBytes,
+                    final long totalBytes) {
+                dispatchProgress(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onProgress(filePath, progress, uploadedBytes, totalBytes);
+                    }
+                });
+            }
+
+            @Override
+            public void onComplete(final String filePath, final File file) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onComplete(filePath, file);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String filePath, final int code, final String message) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(filePath, code, message);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Checks if callbacks of a new request should be handed off to the executor.
+     *
+     * @return <code>true</code> if the callbacks must be wrapped, or
+     *         <code>false</code> if they run directly on the event loop thread
+     * @throws RejectedExecutionException
+     *             if the queue is full and the policy is
+     *             {@link OverflowPolicy#FAIL}
+     */
+    private boolean accept() {
+        if (executor == null) {
+            return false;
+        }
+        if (policy == OverflowPolicy.FAIL && queue.remainingCapacity() == 0) {
+            throw new RejectedExecutionException("Callback queue is full");
+        }
+        return true;
+    }
+
+    private void dispatch(Runnable task) {
+        if (queue.offer(task)) {
+            schedule();
+            return;
+        }
+        if (EVENT_LOOP_THREAD.get() == null) {
+            overflow.add(task);
+            schedule();
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(task);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        schedule();
+    }
+
+    private void dispatchProgress(Runnable task) {
+        if (policy == OverflowPolicy.BLOCK) {
+            dispatch(task);
+        } else if (queue.offer(task)) {
+            schedule();
+        }
+        // otherwise the progress tick is dropped
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainer);
+            } catch (RejectedExecutionException e) {
+                // the executor has been shut down - do not lose the callbacks
+                drainer.run();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // a callback may have been queued after the last poll
+        if (!queue.isEmpty() || !overflow.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private Runnable poll() {
+        Runnable task = queue.poll();
+        return (task != null) ? task : overflow.poll();
+    }
+
+}
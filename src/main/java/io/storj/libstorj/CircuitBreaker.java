@@ -0,0 +1,557 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops sending requests to the Bridge while it is failing.
+ *
+ * <p>
+ * When configured with {@link Storj#setCircuitBreaker(CircuitBreaker)}, the
+ * outcome and the latency of each request to the Bridge is recorded over a
+ * sliding window. The breaker is {@link State#CLOSED} while the Bridge is
+ * healthy. Once the window holds at least the minimum number of calls, and
+ * either the rate of failed calls or the rate of slow calls reaches its
+ * threshold, the breaker opens.
+ * </p>
+ *
+ * <p>
+ * While {@link State#OPEN}, requests fail right away with
+ * {@link Storj#CIRCUIT_OPEN} instead of waiting for a timeout, and transfers
+ * queued in a {@link TransferScheduler} are held back. After the open
+ * duration the breaker becomes {@link State#HALF_OPEN} and probes the Bridge
+ * with {@link Storj#getInfo(GetInfoCallback)}. A successful, not slow probe
+ * closes the breaker, and any other outcome opens it again.
+ * </p>
+ *
+ * <p>
+ * The following errors count as failures by default:
+ * {@link Storj#HTTP_INTERNAL_SERVER_ERROR},
+ * {@link Storj#HTTP_SERVICE_UNAVAILABLE},
+ * {@link Storj#STORJ_BRIDGE_REQUEST_ERROR},
+ * {@link Storj#STORJ_BRIDGE_TIMEOUT_ERROR},
+ * {@link Storj#STORJ_BRIDGE_INTERNAL_ERROR},
+ * {@link Storj#CURLE_COULDNT_RESOLVE_HOST},
+ * {@link Storj#CURLE_COULDNT_CONNECT} and
+ * {@link Storj#CURLE_OPERATION_TIMEDOUT}. All other errors, e.g. a file not
+ * found, show that the Bridge is responding and count as successful calls.
+ * </p>
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of a circuit breaker.
+     */
+    public enum State {
+
+        /**
+         * Requests are sent and their outcome recorded.
+         */
+        CLOSED,
+
+        /**
+         * Requests fail right away.
+         */
+        OPEN,
+
+        /**
+         * The Bridge is being probed. Requests still fail right away.
+         */
+        HALF_OPEN
+    }
+
+    private static final int[] FAILURES = {
+            Storj.HTTP_INTERNAL_SERVER_ERROR,
+            Storj.HTTP_SERVICE_UNAVAILABLE,
+            Storj.STORJ_BRIDGE_REQUEST_ERROR,
+            Storj.STORJ_BRIDGE_TIMEOUT_ERROR,
+            Storj.STORJ_BRIDGE_INTERNAL_ERROR,
+            Storj.CURLE_COULDNT_RESOLVE_HOST,
+            Storj.CURLE_COULDNT_CONNECT,
+            Storj.CURLE_OPERATION_TIMEDOUT
+    };
+
+    /**
+     * How often transfers held back while probing check the state again.
+     */
+    private static final long PROBE_POLL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int window;
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private final List<Runnable> probes = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private final Set<Integer> failures = new HashSet<>();
+    private final long[] seconds;
+    private final int[] calls;
+    private final int[] failedCalls;
+    private final int[] slowCalls;
+    private int minimumCalls = 20;
+    private double failureRateThreshold = 0.5;
+    private double slowCallRateThreshold = 0.8;
+    private long slowCallDuration = TimeUnit.SECONDS.toNanos(5);
+    private long openDuration = TimeUnit.SECONDS.toNanos(30);
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int openings;
+
+    /**
+     * Constructs new circuit breaker with a sliding window of 10 seconds.
+     */
+    public CircuitBreaker() {
+        this(10);
+    }
+
+    /**
+     * Constructs new circuit breaker with the provided sliding window.
+     *
+     * @param windowSeconds
+     *            the length of the window in seconds
+     * @throws IllegalArgumentException
+     *             if <code>windowSeconds</code> is less than 1
+     */
+    public CircuitBreaker(int windowSeconds) {
+        if (windowSeconds < 1) {
+            throw new IllegalArgumentException("windowSeconds must be positive: " + windowSeconds);
+        }
+        window = windowSeconds;
+        seconds = new long[window];
+        calls = new int[window];
+        failedCalls = new int[window];
+        slowCalls = new int[window];
+        for (int code : FAILURES) {
+            failures.add(code);
+        }
+    }
+
+    /**
+     * Sets whether an error counts as a failure of the Bridge.
+     *
+     * @param code
+     *            the error code, one of the constants in {@link Storj}
+     * @param failure
+     *            <code>true</code> to count calls failing with this error as
+     *            failed calls
+     * @return a reference to this circuit breaker
+     */
+    public synchronized CircuitBreaker setFailure(int code, boolean failure) {
+        if (failure) {
+            failures.add(code);
+        } else {
+            failures.remove(code);
+        }
+        return this;
+    }
+
+    /**
+     * Checks whether an error counts as a failure of the Bridge.
+     *
+     * @param code
+     *            the error code
+     * @return <code>true</code> if calls failing with this error count as
+     *         failed calls
+     */
+    public synchronized boolean isFailure(int code) {
+        return failures.contains(code);
+    }
+
+    /**
+     * Sets the minimum number of calls in the window before the breaker may
+     * open.
+     *
+     * @param minimumCalls
+     *            a positive number
+     * @return a reference to this circuit breaker
+     * @throws IllegalArgumentException
+     *             if <code>minimumCalls</code> is less than 1
+     */
+    public synchronized CircuitBreaker setMinimumCalls(int minimumCalls) {
+        if (minimumCalls < 1) {
+            throw new IllegalArgumentException("minimumCalls must be positive: " + minimumCalls);
+        }
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * Returns the minimum number of calls in the window before the breaker may
+     * open.
+     *
+     * @return the minimum number of calls
+     */
+    public synchronized int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * Sets the rate of failed calls opening the breaker.
+     *
+     * @param threshold
+     *            a rate greater than 0 and not greater than 1
+     * @return a reference to this circuit breaker
+     * @throws IllegalArgumentException
+     *             if the threshold is out of range
+     */
+    public synchronized CircuitBreaker setFailureRateThreshold(double threshold) {
+        failureRateThreshold = checkRate(threshold);
+        return this;
+    }
+
+    /**
+     * Returns the rate of failed calls opening the breaker.
+     *
+     * @return the failure rate threshold
+     */
+    public synchronized double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Sets when calls count as slow, and the rate of slow calls opening the
+     * breaker.
+     *
+     * @param duration
+     *            the duration from which a call counts as slow
+     * @param unit
+     *            the time unit of the duration
+     * @param threshold
+     *            a rate greater than 0 and not greater than 1
+     * @return a reference to this circuit breaker
+     * @throws IllegalArgumentException
+     *             if the duration is not positive or the threshold is out of
+     *             range
+     */
+    public synchronized CircuitBreaker setSlowCallThreshold(long duration, TimeUnit unit, double threshold) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration must be positive: " + duration);
+        }
+        slowCallRateThreshold = checkRate(threshold);
+        slowCallDuration = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Returns the duration from which calls count as slow.
+     *
+     * @return the duration in milliseconds
+     */
+    public synchronized long getSlowCallDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowCallDuration);
+    }
+
+    /**
+     * Returns the rate of slow calls opening the breaker.
+     *
+     * @return the slow call rate threshold
+     */
+    public synchronized double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * Sets how long the breaker stays open before probing the Bridge.
+     *
+     * @param duration
+     *            the open duration
+     * @param unit
+     *            the time unit of the duration
+     * @return a reference to this circuit breaker
+     * @throws IllegalArgumentException
+     *             if the duration is not positive
+     */
+    public synchronized CircuitBreaker setOpenDuration(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration must be positive: " + duration);
+        }
+        openDuration = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Returns how long the breaker stays open before probing the Bridge.
+     *
+     * @return the open duration in milliseconds
+     */
+    public synchronized long getOpenDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(openDuration);
+    }
+
+    /**
+     * Returns the current state.
+     *
+     * @return the state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of calls failed right away while the breaker was not
+     * closed.
+     *
+     * @return the number of rejected calls
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    /**
+     * Adds a listener for the state changes.
+     *
+     * @param listener
+     *            the listener
+     * @return a reference to this circuit breaker
+     */
+    public CircuitBreaker addListener(CircuitBreakerListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Removes a listener for the state changes.
+     *
+     * @param listener
+     *            the listener
+     * @return a reference to this circuit breaker
+     */
+    public CircuitBreaker removeListener(CircuitBreakerListener listener) {
+        listeners.remove(listener);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker [state=" + getState() + ", rejectedCalls=" + getRejectedCalls() + "]";
+    }
+
+    /**
+     * Adds a probe that can be run when the breaker becomes half open. Every
+     * {@link Storj} object using the breaker adds its own, and the earliest
+     * added one is run. The probe is run on the timer thread, so it must not
+     * block, and must report its outcome with {@link #probed(int, long)}.
+     * Without a probe the breaker closes after the open duration.
+     */
+    void addProbe(Runnable probe) {
+        probes.add(probe);
+    }
+
+    /**
+     * Removes a probe added with {@link #addProbe(Runnable)}.
+     */
+    void removeProbe(Runnable probe) {
+        probes.remove(probe);
+    }
+
+    /**
+     * Checks whether a call may be made now, and counts it as rejected if not.
+     *
+     * @return <code>true</code> if the breaker is closed
+     */
+    boolean allowCall() {
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return true;
+            }
+        }
+        rejectedCalls.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns how long a transfer should wait before checking the state again.
+     *
+     * @return the delay in nanoseconds, or <code>0</code> if the breaker is
+     *         closed
+     */
+    synchronized long getWaitTime() {
+        if (state == State.CLOSED) {
+            return 0;
+        }
+        if (state == State.OPEN) {
+            return Math.max(PROBE_POLL, openedAt + openDuration - now());
+        }
+        return PROBE_POLL;
+    }
+
+    /**
+     * Records the outcome of a call.
+     *
+     * @param code
+     *            the error code, or {@link Storj#NO_ERROR}
+     * @param latency
+     *            the duration of the call in nanoseconds, or <code>0</code> if
+     *            it must not be counted as slow, e.g. for file transfers
+     */
+    void record(int code, long latency) {
+        State from;
+        synchronized (this) {
+            // calls still finishing after the breaker has opened do not count
+            if (state != State.CLOSED) {
+                return;
+            }
+            long second = TimeUnit.NANOSECONDS.toSeconds(now());
+            int slot = (int) Math.floorMod(second, (long) window);
+            if (seconds[slot] != second) {
+                seconds[slot] = second;
+                calls[slot] = 0;
+                failedCalls[slot] = 0;
+                slowCalls[slot] = 0;
+            }
+            calls[slot]++;
+            if (failures.contains(code)) {
+                failedCalls[slot]++;
+            }
+            if (latency >= slowCallDuration) {
+                slowCalls[slot]++;
+            }
+
+            int total = 0;
+            int failed = 0;
+            int slow = 0;
+            for (int i = 0; i < window; i++) {
+                if (second - seconds[i] < window) {
+                    total += calls[i];
+                    failed += failedCalls[i];
+                    slow += slowCalls[i];
+                }
+            }
+            if (total < minimumCalls
+                    || (failed < failureRateThreshold * total && slow < slowCallRateThreshold * total)) {
+                return;
+            }
+            from = open();
+        }
+        notifyListeners(from, State.OPEN);
+    }
+
+    /**
+     * Reports the outcome of the probe.
+     *
+     * @param code
+     *            the error code, or {@link Storj#NO_ERROR}
+     * @param latency
+     *            the duration of the probe in nanoseconds
+     */
+    void probed(int code, long latency) {
+        State to;
+        synchronized (this) {
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            if (code == Storj.NO_ERROR && latency < slowCallDuration) {
+                to = close();
+            } else {
+                open();
+                to = State.OPEN;
+            }
+        }
+        notifyListeners(State.HALF_OPEN, to);
+    }
+
+    /**
+     * Returns the current time in nanoseconds. Tests override it to control
+     * the sliding window.
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Opens the breaker and schedules the probe.
+     *
+     * @return the previous state
+     */
+    private State open() {
+        State from = state;
+        state = State.OPEN;
+        openedAt = now();
+        final int opening = ++openings;
+        DelayedTasks.schedule(new Runnable() {
+            @Override
+            public void run() {
+                halfOpen(opening);
+            }
+        }, openDuration);
+        return from;
+    }
+
+    /**
+     * Closes the breaker with an empty window.
+     *
+     * @return the new state
+     */
+    private State close() {
+        state = State.CLOSED;
+        for (int i = 0; i < window; i++) {
+            calls[i] = 0;
+            failedCalls[i] = 0;
+            slowCalls[i] = 0;
+        }
+        return state;
+    }
+
+    private void halfOpen(int opening) {
+        Iterator<Runnable> it = probes.iterator();
+        Runnable probe = it.hasNext() ? it.next() : null;
+        State to;
+        synchronized (this) {
+            // a newer opening has scheduled its own probe
+            if (state != State.OPEN || opening != openings) {
+                return;
+            }
+            to = (probe == null) ? close() : (state = State.HALF_OPEN);
+        }
+        notifyListeners(State.OPEN, to);
+
+        if (to == State.HALF_OPEN) {
+            try {
+                probe.run();
+            } catch (RuntimeException e) {
+                probed(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private void notifyListeners(State from, State to) {
+        for (CircuitBreakerListener listener : listeners) {
+            try {
+                listener.onStateChanged(this, from, to);
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private static double checkRate(double rate) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("rate must be greater than 0 and not greater than 1: " + rate);
+        }
+        return rate;
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Listener for the state changes of a {@link CircuitBreaker}.
+ *
+ * @see CircuitBreaker#addListener(CircuitBreakerListener)
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * Called when the circuit breaker changes its state.
+     *
+     * <p>
+     * The listener is called on the thread causing the change, e.g. the event
+     * loop thread reporting a failed request, so it must not block.
+     * </p>
+     *
+     * @param breaker
+     *            the circuit breaker
+     * @param from
+     *            the previous state
+     * @param to
+     *            the new state
+     */
+    void onStateChanged(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to);
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Holder of the user's keys, kept in off-heap memory that is zeroed when the
+ * keys are no longer needed.
+ *
+ * <p>
+ * The keys are decoded to a {@link Keys} object only when a Storj environment
+ * is created or the keys are requested with {@link Storj#getKeys(String)}, so
+ * no long-lived copy of them is kept on the heap.
+ * </p>
+ */
+final class Credentials {
+
+    /**
+     * Marker for keys that have been looked up and not found.
+     */
+    static final Credentials NONE = new Credentials(null, new int[0]);
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Byte lengths of the user, password and mnemonic, or <code>-1</code> for
+     * <code>null</code> values.
+     */
+    private final int[] lengths;
+
+    private boolean cleared;
+
+    private Credentials(ByteBuffer buffer, int[] lengths) {
+        this.buffer = buffer;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Copies the provided keys to off-heap memory.
+     *
+     * @param keys
+     *            the keys to copy, or <code>null</code>
+     * @return a new credentials holder, or {@link #NONE} if <code>keys</code> is
+     *         <code>null</code>
+     */
+    static Credentials of(Keys keys) {
+        if (keys == null) {
+            return NONE;
+        }
+
+        byte[][] values = { encode(keys.getUser()), encode(keys.getPass()), encode(keys.getMnemonic()) };
+        int[] lengths = new int[values.length];
+        int capacity = 0;
+        for (int i = 0; i < values.length; i++) {
+            lengths[i] = (values[i] == null) ? -1 : values[i].length;
+            capacity += Math.max(0, lengths[i]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+        for (byte[] value : values) {
+            if (value != null) {
+                buffer.put(value);
+                Arrays.fill(value, (byte) 0);
+            }
+        }
+        return new Credentials(buffer, lengths);
+    }
+
+    /**
+     * Checks if this holder contains keys.
+     *
+     * @return <code>false</code> for {@link #NONE} and for cleared holders
+     */
+    synchronized boolean isPresent() {
+        return buffer != null && !cleared;
+    }
+
+    /**
+     * Decodes the keys.
+     *
+     * @return the keys, or <code>null</code> if there are none or they have been
+     *         cleared
+     */
+    synchronized Keys toKeys() {
+        if (!isPresent()) {
+            return null;
+        }
+
+        String[] values = new String[lengths.length];
+        int position = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] >= 0) {
+                byte[] bytes = new byte[lengths[i]];
+                ByteBuffer view = buffer.duplicate();
+                view.position(position);
+                view.get(bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+                Arrays.fill(bytes, (byte) 0);
+                position += lengths[i];
+            }
+        }
+        return new Keys(values[0], values[1], values[2]);
+    }
+
+    /**
+     * Overwrites the keys with zeros.
+     */
+    synchronized void clear() {
+        if (buffer != null && !cleared) {
+            for (int i = 0; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            cleared = true;
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daemon thread running the delayed tasks of the library, e.g. retries and
+ * transfers waiting for their bandwidth limit.
+ */
+final class DelayedTasks {
+
+    private static ScheduledExecutorService timer;
+
+    private DelayedTasks() {
+    }
+
+    /**
+     * Runs a task after a delay. The task must be short, as it delays the other
+     * tasks.
+     *
+     * @param task
+     *            the task to run
+     * @param delay
+     *            the delay in nanoseconds
+     */
+    static void schedule(Runnable task, long delay) {
+        getTimer().schedule(task, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "storj-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return timer;
+    }
+
+}
@@ -23,6 +23,7 @@ package io.storj.libstorj;
  * @see Storj#downloadFile(Bucket, File, DownloadFileCallback)
  * @see Storj#downloadFile(Bucket, File, String, DownloadFileCallback)
  * @see Storj#downloadFile(String, String, String, DownloadFileCallback)
+ * @see Storj#downloadFile(String, String, long, long, java.nio.channels.WritableByteChannel, DownloadFileCallback)
  * @see Storj#downloadFiles(Bucket, File[], DownloadFileCallback)
  * @see Storj#downloadFiles(Bucket, File[], String[], DownloadFileCallback)
  * @see Storj#downloadFiles(String, String[], String[], DownloadFileCallback)
@@ -50,7 +51,9 @@ public interface DownloadFileCallback {
      * @param fileId
      *            the id of the downloaded file
      * @param localPath
-     *            the local path (including file name) of the downloaded file
+     *            the local path (including file name) of the downloaded file, or
+     *            <code>null</code> if the file was downloaded to a channel or
+     *            stream
      */
     void onComplete(String fileId, String localPath);
 
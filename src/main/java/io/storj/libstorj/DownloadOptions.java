@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Options controlling the progress reporting and the scheduling of a download.
+ * 
+ * <p>
+ * Instances are immutable and created with a {@link Builder}:
+ * </p>
+ * 
+ * <pre>
+ * DownloadOptions options = new DownloadOptions.Builder()
+ *         .setPriority(TransferPriority.INTERACTIVE)
+ *         .setTenant("customer-42")
+ *         .build();
+ * </pre>
+ * 
+ * @see Storj#downloadFile(String, String, String, DownloadOptions, DownloadFileCallback)
+ * @see Storj#downloadFiles(String, String[], String[], DownloadOptions, DownloadFileCallback)
+ */
+public class DownloadOptions {
+
+    /**
+     * The options used if none are provided: the progress throttle configured
+     * for the {@link Storj} instance and normal priority.
+     */
+    public static final DownloadOptions DEFAULT = new Builder().build();
+
+    private final ProgressThrottle progressThrottle;
+    private final TransferPriority priority;
+    private final String tenant;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final boolean preallocate;
+
+    private DownloadOptions(Builder builder) {
+        progressThrottle = builder.progressThrottle;
+        priority = builder.priority;
+        tenant = builder.tenant;
+        bandwidthLimiter = builder.bandwidthLimiter;
+        preallocate = builder.preallocate;
+    }
+
+    /**
+     * Returns the throttling of the progress callbacks.
+     * 
+     * @return the progress throttle, or <code>null</code> to use the one
+     *         configured with {@link Storj#setProgressThrottle(ProgressThrottle)}
+     */
+    public ProgressThrottle getProgressThrottle() {
+        return progressThrottle;
+    }
+
+    /**
+     * Returns the priority class of the download.
+     * 
+     * @return the priority, or <code>null</code> if not set
+     */
+    public TransferPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the tenant the download is made for.
+     * 
+     * @return the tenant key, or <code>null</code> if not set
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Returns the bandwidth limiter of the download.
+     * 
+     * @return the limiter, or <code>null</code> to use the one configured with
+     *         {@link Storj#setBandwidthLimiter(BandwidthLimiter)}
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Returns whether the disk space of the file is allocated before the
+     * download starts.
+     * 
+     * @return <code>true</code> if the output file is preallocated
+     */
+    public boolean isPreallocate() {
+        return preallocate;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadOptions [progressThrottle=" + progressThrottle + ", priority=" + priority + ", tenant="
+                + tenant + ", bandwidthLimiter=" + bandwidthLimiter + ", preallocate=" + preallocate + "]";
+    }
+
+    /**
+     * Builder of {@link DownloadOptions}.
+     */
+    public static class Builder {
+
+        private ProgressThrottle progressThrottle;
+        private TransferPriority priority;
+        private String tenant;
+        private BandwidthLimiter bandwidthLimiter;
+        private boolean preallocate;
+
+        /**
+         * Creates a builder initialized with the default options.
+         */
+        public Builder() {
+        }
+
+        /**
+         * Creates a builder initialized with the provided options.
+         * 
+         * @param options
+         *            the options to start from
+         */
+        public Builder(DownloadOptions options) {
+            progressThrottle = options.progressThrottle;
+            priority = options.priority;
+            tenant = options.tenant;
+            bandwidthLimiter = options.bandwidthLimiter;
+            preallocate = options.preallocate;
+        }
+
+        /**
+         * Sets the throttling of the progress callbacks of the download.
+         * 
+         * @param throttle
+         *            the progress throttle, or <code>null</code> to use the one
+         *            configured with
+         *            {@link Storj#setProgressThrottle(ProgressThrottle)}
+         * @return a reference to this builder
+         */
+        public Builder setProgressThrottle(ProgressThrottle throttle) {
+            progressThrottle = throttle;
+            return this;
+        }
+
+        /**
+         * Sets the priority class of the download.
+         * 
+         * <p>
+         * A single file download with a priority is queued in the
+         * {@link TransferScheduler} if one is configured. Without a priority it
+         * starts immediately.
+         * </p>
+         * 
+         * @param priority
+         *            the priority class, or <code>null</code>
+         * @return a reference to this builder
+         * @see Storj#setTransferScheduler(TransferScheduler)
+         */
+        public Builder setPriority(TransferPriority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Sets the tenant the download is made for. Tenants with queued
+         * transfers of the same priority take turns.
+         * 
+         * @param tenant
+         *            the tenant key, or <code>null</code>
+         * @return a reference to this builder
+         */
+        public Builder setTenant(String tenant) {
+            this.tenant = tenant;
+            return this;
+        }
+
+        /**
+         * Sets the bandwidth limiter of the download, instead of the one
+         * configured for the {@link Storj} instance.
+         * 
+         * @param limiter
+         *            the limiter, or <code>null</code> to use the one configured
+         *            with {@link Storj#setBandwidthLimiter(BandwidthLimiter)}
+         * @return a reference to this builder
+         */
+        public Builder setBandwidthLimiter(BandwidthLimiter limiter) {
+            bandwidthLimiter = limiter;
+            return this;
+        }
+
+        /**
+         * Enables or disables allocating the disk space of the file before the
+         * download starts.
+         * 
+         * <p>
+         * The native library writes the shards at their offsets in the output
+         * file as they arrive. A preallocated file is not extended piece by
+         * piece, which reduces fragmentation, and a download to a disk without
+         * enough free space fails before any shard is fetched. The size of the
+         * file must be known, so preallocation applies only to downloads
+         * started with a {@link File} object, e.g. with
+         * {@link Storj#downloadFile(Bucket, File, String, DownloadOptions, DownloadFileCallback)}.
+         * It is done with <code>fallocate(2)</code> on Linux only, and skipped
+         * on other platforms and on file systems that do not support it.
+         * </p>
+         * 
+         * @param enabled
+         *            <code>true</code> to preallocate the output file
+         * @return a reference to this builder
+         */
+        public Builder setPreallocate(boolean enabled) {
+            preallocate = enabled;
+            return this;
+        }
+
+        /**
+         * Creates the options.
+         * 
+         * @return a new {@link DownloadOptions} instance
+         */
+        public DownloadOptions build() {
+            return new DownloadOptions(this);
+        }
+
+    }
+
+}
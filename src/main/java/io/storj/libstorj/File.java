@@ -177,6 +177,17 @@ public class File implements Serializable, Comparable<File> {
      * @return a guess of the content type based on the file name
      */
     public String getMimeType() {
+        return guessMimeType(name, mimeType);
+    }
+
+    /**
+     * Returns the content type as stored in the Storj Bridge.
+     */
+    String getRawMimeType() {
+        return mimeType;
+    }
+
+    static String guessMimeType(String name, String mimeType) {
         String mime = null;
 
         // prefer the Java util as libstorj returns always 'application/octet-stream'
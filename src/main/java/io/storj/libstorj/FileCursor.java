@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.io.Closeable;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor over the files of a bucket, returned by
+ * {@link Storj#listFiles(String, int, FileCursorCallback)}.
+ *
+ * <p>
+ * The file list is kept in native memory as received from the bridge, and
+ * {@link File} objects are created only for the page returned by
+ * {@link #next()}. Pages are created on the thread that calls
+ * {@link #next()}, so the consumer decides the pace and the pages that have
+ * been processed can be garbage collected.
+ * </p>
+ *
+ * <p>
+ * The native memory is released when the last page is read or when the cursor
+ * is closed, whichever comes first. A cursor that is not read to the end must
+ * be closed.
+ * </p>
+ */
+public class FileCursor implements Closeable {
+
+    private final String bucketId;
+    private final int totalFiles;
+    private final int pageSize;
+
+    private long handle;
+    private int position;
+
+    FileCursor(String bucketId, long handle, int totalFiles, int pageSize) {
+        this.bucketId = bucketId;
+        this.handle = handle;
+        this.totalFiles = totalFiles;
+        this.pageSize = pageSize;
+        if (totalFiles == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Returns the id of the bucket this cursor lists.
+     *
+     * @return the bucket id
+     */
+    public String getBucketId() {
+        return bucketId;
+    }
+
+    /**
+     * Returns the number of files in the bucket.
+     *
+     * @return the total number of files
+     */
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    /**
+     * Returns the maximum number of files returned by {@link #next()}.
+     *
+     * @return the page size
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Checks if there are more files to read.
+     *
+     * @return <code>true</code> if {@link #next()} will return at least one file
+     */
+    public synchronized boolean hasNext() {
+        return handle != 0 && position < totalFiles;
+    }
+
+    /**
+     * Returns the next page of files.
+     *
+     * @return an array of at most {@link #getPageSize()} {@link File} objects
+     * @throws NoSuchElementException
+     *             if all files have been read or the cursor has been closed
+     */
+    public synchronized File[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        int count = Math.min(pageSize, totalFiles - position);
+        File[] files = fetch(handle, position, count);
+        position += count;
+        if (position == totalFiles) {
+            close();
+        }
+        return files;
+    }
+
+    /**
+     * Reads all remaining files into a {@link FileTable} and closes the cursor.
+     *
+     * <p>
+     * The table is filled directly from the native file list, without creating
+     * intermediate {@link File} objects.
+     * </p>
+     *
+     * @return a new table with the remaining files, which is empty if all files
+     *         have been read or the cursor has been closed
+     */
+    public synchronized FileTable toTable() {
+        if (!hasNext()) {
+            return new FileTable(0);
+        }
+
+        FileTable table = new FileTable(totalFiles - position);
+        while (position < totalFiles) {
+            int count = Math.min(pageSize, totalFiles - position);
+            fill(handle, position, count, table);
+            position += count;
+        }
+        close();
+        return table;
+    }
+
+    /**
+     * Releases the native memory holding the file list. Subsequent calls to
+     * {@link #hasNext()} return <code>false</code>.
+     */
+    @Override
+    public synchronized void close() {
+        if (handle != 0) {
+            release(handle);
+            handle = 0;
+        }
+    }
+
+    File[] fetch(long handle, int offset, int count) {
+        return _getFiles(handle, offset, count);
+    }
+
+    void fill(long handle, int offset, int count, FileTable table) {
+        _fillTable(handle, offset, count, table);
+    }
+
+    void release(long handle) {
+        _free(handle);
+    }
+
+    private static native File[] _getFiles(long handle, int offset, int count);
+
+    private static native void _fillTable(long handle, int offset, int count, FileTable table);
+
+    private static native void _free(long handle);
+
+}
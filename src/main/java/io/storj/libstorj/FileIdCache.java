@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of file names to file ids for a {@link Storj} instance.
+ * 
+ * <p>
+ * When set with {@link Storj#setFileIdCache(FileIdCache)}, the
+ * <code>getFileId()</code> and <code>getFileIds()</code> methods are served
+ * from the index. The index is kept coherent by the operations of the same
+ * {@link Storj} instance: it is filled from the responses of
+ * <code>getFileId()</code> and the completed uploads, and optionally from the
+ * responses of <code>listFiles()</code>, and the entries of deleted files and
+ * buckets are removed.
+ * </p>
+ * 
+ * <p>
+ * Each bucket has its own index bounded to a maximum number of names, evicting
+ * the least recently used ones. Entries do not expire, so files deleted by
+ * other clients remain in the index until {@link #invalidate(String, String)}
+ * or {@link #invalidateBucket(String)} is called.
+ * </p>
+ */
+public class FileIdCache {
+
+    private final int maximumSize;
+    private volatile boolean warmFromListFiles;
+
+    private final ConcurrentMap<String, Index> indexes = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a new file id cache.
+     * 
+     * @param maximumSize
+     *            the maximum number of file names stored per bucket
+     */
+    public FileIdCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Configure whether the responses of <code>listFiles()</code> fill the
+     * index of the listed bucket.
+     * 
+     * <p>
+     * Warming is disabled by default.
+     * </p>
+     * 
+     * @param enabled
+     *            <code>true</code> to fill the index from file listings
+     * @return a reference to this FileIdCache object
+     */
+    public FileIdCache setWarmFromListFiles(boolean enabled) {
+        warmFromListFiles = enabled;
+        return this;
+    }
+
+    /**
+     * Returns whether the responses of <code>listFiles()</code> fill the index.
+     * 
+     * @return <code>true</code> if warming from file listings is enabled
+     */
+    public boolean isWarmFromListFiles() {
+        return warmFromListFiles;
+    }
+
+    /**
+     * Returns the maximum number of file names stored per bucket.
+     * 
+     * @return the maximum size
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     * 
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to be sent to the Bridge.
+     * 
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of file names stored for a bucket.
+     * 
+     * @param bucketId
+     *            the id of the bucket
+     * @return the number of file names
+     */
+    public int size(String bucketId) {
+        Index index = indexes.get(bucketId);
+        if (index == null) {
+            return 0;
+        }
+        synchronized (index) {
+            return index.ids.size();
+        }
+    }
+
+    /**
+     * Removes the entry of a file name.
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileName
+     *            the name of the file
+     */
+    public void invalidate(String bucketId, String fileName) {
+        Index index = indexes.get(bucketId);
+        if (index != null) {
+            synchronized (index) {
+                index.generation++;
+                String fileId = index.ids.remove(fileName);
+                if (fileId != null) {
+                    index.names.remove(fileId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries of a bucket.
+     * 
+     * @param bucketId
+     *            the id of the bucket
+     */
+    public void invalidateBucket(String bucketId) {
+        Index index = indexes.get(bucketId);
+        if (index != null) {
+            synchronized (index) {
+                index.generation++;
+                index.ids.clear();
+                index.names.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll() {
+        for (String bucketId : indexes.keySet()) {
+            invalidateBucket(bucketId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileIdCache [buckets=" + indexes.size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + "]";
+    }
+
+    String getFileId(String bucketId, String fileName) {
+        Index index = indexes.get(bucketId);
+        String fileId = null;
+        if (index != null) {
+            synchronized (index) {
+                fileId = index.ids.get(fileName);
+            }
+        }
+        if (fileId != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return fileId;
+    }
+
+    long getGeneration(String bucketId) {
+        Index index = getIndex(bucketId);
+        synchronized (index) {
+            return index.generation;
+        }
+    }
+
+    /**
+     * Stores a file id received in a response.
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileName
+     *            the name of the file
+     * @param fileId
+     *            the id of the file
+     * @param requestGeneration
+     *            the generation of the bucket index when the request was sent
+     */
+    void put(String bucketId, String fileName, String fileId, long requestGeneration) {
+        Index index = getIndex(bucketId);
+        synchronized (index) {
+            if (requestGeneration == index.generation) {
+                index.put(fileName, fileId);
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of a file id.
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileId
+     *            the id of the file
+     */
+    void remove(String bucketId, String fileId) {
+        Index index = indexes.get(bucketId);
+        if (index != null) {
+            synchronized (index) {
+                index.generation++;
+                String fileName = index.names.remove(fileId);
+                if (fileName != null) {
+                    index.ids.remove(fileName);
+                }
+            }
+        }
+    }
+
+    GetFileIdCallback wrap(final String bucketId, final GetFileIdCallback callback) {
+        final long requestGeneration = getGeneration(bucketId);
+        return new GetFileIdCallback() {
+            @Override
+            public void onFileIdReceived(String fileName, String fileId) {
+                put(bucketId, fileName, fileId, requestGeneration);
+                callback.onFileIdReceived(fileName, fileId);
+            }
+
+            @Override
+            public void onError(String fileName, int code, String message) {
+                callback.onError(fileName, code, message);
+            }
+        };
+    }
+
+    ListFilesCallback wrap(final String bucketId, final ListFilesCallback callback) {
+        if (!warmFromListFiles) {
+            return callback;
+        }
+        final long requestGeneration = getGeneration(bucketId);
+        return new ListFilesCallback() {
+            @Override
+            public void onFilesReceived(String listedBucketId, File[] files) {
+                // a listing is a consistent snapshot, so it replaces the index
+                Index index = getIndex(bucketId);
+                synchronized (index) {
+                    // otherwise files may have been deleted since the listing
+                    if (requestGeneration == index.generation) {
+                        index.ids.clear();
+                        index.names.clear();
+                        for (File file : files) {
+                            if (file.isDecrypted()) {
+                                index.put(file.getName(), file.getId());
+                            }
+                        }
+                    }
+                }
+                callback.onFilesReceived(listedBucketId, files);
+            }
+
+            @Override
+            public void onError(String bucketId, int code, String message) {
+                callback.onError(bucketId, code, message);
+            }
+        };
+    }
+
+    DeleteFileCallback wrap(final String bucketId, final DeleteFileCallback callback) {
+        return new DeleteFileCallback() {
+            @Override
+            public void onFileDeleted(String fileId) {
+                // drops what concurrent requests may have cached meanwhile
+                remove(bucketId, fileId);
+                callback.onFileDeleted(fileId);
+            }
+
+            @Override
+            public void onError(String fileId, int code, String message) {
+                callback.onError(fileId, code, message);
+            }
+        };
+    }
+
+    UploadFileCallback wrap(final String bucketId, final String fileName, final UploadFileCallback callback) {
+        return new UploadFileCallback() {
+            @Override
+            public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+                callback.onProgress(filePath, progress, uploadedBytes, totalBytes);
+            }
+
+            @Override
+            public void onComplete(String filePath, File file) {
+                // a new file cannot have been cached by a concurrent request
+                if (file != null) {
+                    put(bucketId, fileName, file.getId(), getGeneration(bucketId));
+                }
+                callback.onComplete(filePath, file);
+            }
+
+            @Override
+            public void onError(String filePath, int code, String message) {
+                callback.onError(filePath, code, message);
+            }
+        };
+    }
+
+    private Index getIndex(String bucketId) {
+        Index index = indexes.get(bucketId);
+        if (index == null) {
+            Index created = new Index(maximumSize);
+            index = indexes.putIfAbsent(bucketId, created);
+            if (index == null) {
+                index = created;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * File name index of a bucket, guarded by its own lock.
+     */
+    private static class Index {
+        /**
+         * File ids by name in access order.
+         */
+        final LinkedHashMap<String, String> ids;
+
+        /**
+         * File names by id, for removing deleted files.
+         */
+        final Map<String, String> names = new HashMap<>();
+
+        /**
+         * Incremented on every invalidation, so responses to requests sent
+         * before an invalidation do not fill the index with stale entries.
+         */
+        long generation;
+
+        Index(final int maximumSize) {
+            ids = new LinkedHashMap<String, String>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    if (size() > maximumSize) {
+                        names.remove(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        void put(String fileName, String fileId) {
+            String previous = ids.put(fileName, fileId);
+            if (previous != null) {
+                names.remove(previous);
+            }
+            names.put(fileId, fileName);
+        }
+    }
+
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, column oriented table of file metadata for large file listings.
+ *
+ * <p>
+ * Instead of one {@link File} object with ten fields per file, the metadata is
+ * kept in a few arrays shared by all rows:
+ * </p>
+ * <ul>
+ * <li>the file id, key index and HMAC are packed from their hex form into
+ * bytes,</li>
+ * <li>the upload time is stored as epoch milliseconds,</li>
+ * <li>the bucket id, content type and erasure algorithm, which repeat across
+ * the rows, are stored once and referenced by number,</li>
+ * <li>the file names are stored as UTF-8 in a single byte buffer.</li>
+ * </ul>
+ *
+ * <p>
+ * Values that do not fit the compact form (e.g. ids that are not lowercase hex
+ * of the usual length) are kept as they are, so reading a row always returns
+ * the values that were added.
+ * </p>
+ *
+ * <p>
+ * Rows are read through lightweight {@link Entry} views that are created on
+ * demand and have the same getters as {@link File}. A table can be filled
+ * directly from the native file list with {@link FileCursor#toTable()}.
+ * </p>
+ *
+ * <p>
+ * A table is not safe for concurrent modification, but can be read from
+ * multiple threads once it has been filled.
+ * </p>
+ */
+public final class FileTable implements Iterable<FileTable.Entry> {
+
+    private static final int ID_BYTES = 12;
+    private static final int INDEX_BYTES = 32;
+    private static final int HMAC_BYTES = 64;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final DateTimeFormatter CREATED_FORMAT = DateTimeFormatter
+            .ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private int size;
+
+    private final HexColumn ids;
+    private final HexColumn indexes;
+    private final HexColumn hmacs;
+
+    private long[] sizes;
+    private long[] created;
+    private final Map<Integer, String> createdOverflow = new HashMap<>();
+    private final BitSet decrypted = new BitSet();
+
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> dictionaryCodes = new HashMap<>();
+    private int[] bucketIds;
+    private int[] mimeTypes;
+    private int[] erasures;
+
+    private byte[] names;
+    private int namesLength;
+    private int[] nameOffsets;
+    private final BitSet nullNames = new BitSet();
+
+    /**
+     * Constructs an empty table.
+     */
+    public FileTable() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty table with room for the specified number of files.
+     *
+     * @param capacity
+     *            the expected number of files
+     */
+    public FileTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ids = new HexColumn(ID_BYTES, capacity);
+        indexes = new HexColumn(INDEX_BYTES, capacity);
+        hmacs = new HexColumn(HMAC_BYTES, capacity);
+        sizes = new long[capacity];
+        created = new long[capacity];
+        bucketIds = new int[capacity];
+        mimeTypes = new int[capacity];
+        erasures = new int[capacity];
+        nameOffsets = new int[capacity + 1];
+        names = new byte[capacity * 16];
+    }
+
+    /**
+     * Creates a table with the metadata of the provided files.
+     *
+     * @param files
+     *            an array of {@link File} objects
+     * @return a new table
+     */
+    public static FileTable of(File... files) {
+        FileTable table = new FileTable(files.length);
+        for (File file : files) {
+            table.add(file);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the number of files in the table.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a view of the file at the specified row.
+     *
+     * @param row
+     *            the row, from <code>0</code> to <code>size() - 1</code>
+     * @return an {@link Entry} view of the row
+     * @throws IndexOutOfBoundsException
+     *             if the row is out of range
+     */
+    public Entry get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+        }
+        return new Entry(row);
+    }
+
+    /**
+     * Appends the metadata of a file to the table.
+     *
+     * @param file
+     *            a {@link File} object
+     * @return this {@link FileTable} object
+     */
+    public FileTable add(File file) {
+        // the raw content type, not the one guessed by File.getMimeType()
+        add(file.getId(), file.getBucketId(), file.getName(), file.getCreated(), file.isDecrypted(),
+                file.getSize(), file.getRawMimeType(), file.getErasure(), file.getIndex(), file.getHMAC());
+        return this;
+    }
+
+    /**
+     * Appends a row. Called by the native library for each file of the list.
+     */
+    void add(String id,
+             String bucketId,
+             String name,
+             String created,
+             boolean decrypted,
+             long size,
+             String mimeType,
+             String erasure,
+             String index,
+             String hmac) {
+        int row = this.size;
+        ensureCapacity(row + 1);
+
+        ids.set(row, id);
+        indexes.set(row, index);
+        hmacs.set(row, hmac);
+        sizes[row] = size;
+        this.created[row] = packTime(row, created);
+        this.decrypted.set(row, decrypted);
+        bucketIds[row] = encode(bucketId);
+        mimeTypes[row] = encode(mimeType);
+        erasures[row] = encode(erasure);
+        addName(row, name);
+
+        this.size = row + 1;
+    }
+
+    /**
+     * Returns an iterator over views of the rows.
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Entry next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return new Entry(next++);
+            }
+        };
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sizes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, sizes.length * 2);
+        ids.grow(newCapacity);
+        indexes.grow(newCapacity);
+        hmacs.grow(newCapacity);
+        sizes = Arrays.copyOf(sizes, newCapacity);
+        created = Arrays.copyOf(created, newCapacity);
+        bucketIds = Arrays.copyOf(bucketIds, newCapacity);
+        mimeTypes = Arrays.copyOf(mimeTypes, newCapacity);
+        erasures = Arrays.copyOf(erasures, newCapacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, newCapacity + 1);
+    }
+
+    private int encode(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = dictionaryCodes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            dictionaryCodes.put(value, code);
+        }
+        return code;
+    }
+
+    private String decode(int code) {
+        return (code < 0) ? null : dictionary.get(code);
+    }
+
+    private long packTime(int row, String value) {
+        if (value == null) {
+            // an absent overflow entry stands for null
+            return NO_TIME;
+        }
+        try {
+            long millis = LocalDateTime.parse(value, CREATED_FORMAT).toInstant(ZoneOffset.UTC).toEpochMilli();
+            if (millis != NO_TIME && CREATED_FORMAT.format(Instant.ofEpochMilli(millis)).equals(value)) {
+                return millis;
+            }
+        } catch (DateTimeParseException | ArithmeticException e) {
+            // kept as it is below
+        }
+        createdOverflow.put(row, value);
+        return NO_TIME;
+    }
+
+    private String unpackTime(int row) {
+        long millis = created[row];
+        if (millis != NO_TIME) {
+            return CREATED_FORMAT.format(Instant.ofEpochMilli(millis));
+        }
+        return createdOverflow.get(row);
+    }
+
+    private void addName(int row, String name) {
+        if (name == null) {
+            nullNames.set(row);
+            nameOffsets[row + 1] = namesLength;
+            return;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (namesLength + bytes.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(namesLength + bytes.length, names.length * 2));
+        }
+        System.arraycopy(bytes, 0, names, namesLength, bytes.length);
+        namesLength += bytes.length;
+        nameOffsets[row + 1] = namesLength;
+    }
+
+    private String getName(int row) {
+        if (nullNames.get(row)) {
+            return null;
+        }
+        int start = nameOffsets[row];
+        return new String(names, start, nameOffsets[row + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A view of a single row of a {@link FileTable}.
+     *
+     * <p>
+     * The getters return the same values as the getters of the {@link File} the
+     * row was created from.
+     * </p>
+     */
+    public final class Entry {
+
+        private final int row;
+
+        private Entry(int row) {
+            this.row = row;
+        }
+
+        /**
+         * Returns the file id.
+         *
+         * @return the file id
+         */
+        public String getId() {
+            return ids.get(row);
+        }
+
+        /**
+         * Returns the id of the bucket containing this file.
+         *
+         * @return a bucket id
+         */
+        public String getBucketId() {
+            return decode(bucketIds[row]);
+        }
+
+        /**
+         * Returns the file name.
+         *
+         * @return the file name
+         * @see File#getName()
+         */
+        public String getName() {
+            return FileTable.this.getName(row);
+        }
+
+        /**
+         * Returns the time when the file was uploaded to the Storj network.
+         *
+         * @return the formatted UTC time when the file was uploaded
+         * @see File#getCreated()
+         */
+        public String getCreated() {
+            return unpackTime(row);
+        }
+
+        /**
+         * Checks if the file name has been decrypted successfully.
+         *
+         * @return <code>true</code> if the file name has been decrypted
+         *         successfully, <code>false</code> otherwise
+         * @see File#isDecrypted()
+         */
+        public boolean isDecrypted() {
+            return decrypted.get(row);
+        }
+
+        /**
+         * Returns the file size in bytes.
+         *
+         * @return the number of bytes
+         */
+        public long getSize() {
+            return sizes[row];
+        }
+
+        /**
+         * Returns the content type of the file.
+         *
+         * @return a guess of the content type based on the file name
+         * @see File#getMimeType()
+         */
+        public String getMimeType() {
+            return File.guessMimeType(getName(), decode(mimeTypes[row]));
+        }
+
+        /**
+         * Returns the erasure encoding algorithm used for this file.
+         *
+         * @return the name of the erasure encoding algorithm
+         */
+        public String getErasure() {
+            return decode(erasures[row]);
+        }
+
+        /**
+         * Returns the index that the encryption key for this file is derived
+         * from.
+         *
+         * @return the 32 bit hex value of the index
+         */
+        public String getIndex() {
+            return indexes.get(row);
+        }
+
+        /**
+         * Returns the HMAC checksum for the file.
+         *
+         * @return the HMAC checksum
+         * @see File#getHMAC()
+         */
+        public String getHMAC() {
+            return hmacs.get(row);
+        }
+
+        /**
+         * Checks if the file is a directory.
+         *
+         * @return <code>true</code> if the file name ends with a slash
+         * @see File#isDirectory()
+         */
+        public boolean isDirectory() {
+            return getName().endsWith("/");
+        }
+
+        /**
+         * Creates a standalone {@link File} object with the metadata of this
+         * row.
+         *
+         * @return a new {@link File} object
+         */
+        public File toFile() {
+            return new File(getId(), getBucketId(), getName(), getCreated(), isDecrypted(), getSize(),
+                    decode(mimeTypes[row]), getErasure(), getIndex(), getHMAC());
+        }
+
+    }
+
+    /**
+     * Column of lowercase hex strings of a fixed length, packed as bytes.
+     */
+    private static final class HexColumn {
+
+        private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+        private final int width;
+        private byte[] data;
+
+        private final BitSet nulls = new BitSet();
+
+        /**
+         * Values that cannot be packed.
+         */
+        private final Map<Integer, String> overflow = new HashMap<>();
+
+        HexColumn(int width, int capacity) {
+            this.width = width;
+            this.data = new byte[width * capacity];
+        }
+
+        void grow(int capacity) {
+            data = Arrays.copyOf(data, width * capacity);
+        }
+
+        void set(int row, String value) {
+            if (value == null) {
+                nulls.set(row);
+            } else if (value.length() != width * 2 || !pack(value, row * width)) {
+                overflow.put(row, value);
+            }
+        }
+
+        String get(int row) {
+            if (nulls.get(row)) {
+                return null;
+            }
+            if (!overflow.isEmpty() && overflow.containsKey(row)) {
+                return overflow.get(row);
+            }
+            char[] chars = new char[width * 2];
+            int offset = row * width;
+            for (int i = 0; i < width; i++) {
+                int b = data[offset + i] & 0xff;
+                chars[2 * i] = DIGITS[b >>> 4];
+                chars[2 * i + 1] = DIGITS[b & 0x0f];
+            }
+            return new String(chars);
+        }
+
+        private boolean pack(String value, int offset) {
+            for (int i = 0; i < width; i++) {
+                int high = digit(value.charAt(2 * i));
+                int low = digit(value.charAt(2 * i + 1));
+                if (high < 0 || low < 0) {
+                    return false;
+                }
+                data[offset + i] = (byte) ((high << 4) | low);
+            }
+            return true;
+        }
+
+        private static int digit(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            }
+            if (c >= 'a' && c <= 'f') {
+                return c - 'a' + 10;
+            }
+            // uppercase would not round trip
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Snapshot of the native runtime statistics of a {@link Storj} instance.
+ * 
+ * <p>
+ * The libuv thread pool is shared by all {@link Storj} instances in the
+ * process, while the request counts are for the event loop of a single
+ * instance.
+ * </p>
+ * 
+ * @see Storj#getNativeRuntimeStats()
+ * @see Storj#configureNativeRuntime(int)
+ */
+public class NativeRuntimeStats {
+
+    private final int threadPoolSize;
+    private final int activeRequests;
+
+    NativeRuntimeStats(int threadPoolSize, int activeRequests) {
+        this.threadPoolSize = threadPoolSize;
+        this.activeRequests = activeRequests;
+    }
+
+    /**
+     * Returns the number of threads in the libuv thread pool.
+     * 
+     * @return the thread pool size
+     */
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    /**
+     * Returns the number of requests of the event loop that are in progress.
+     * 
+     * <p>
+     * Each request to the Bridge and each file transfer counts once, although a
+     * transfer runs several Bridge and farmer requests on the thread pool.
+     * </p>
+     * 
+     * @return the number of active requests
+     */
+    public int getActiveRequests() {
+        return activeRequests;
+    }
+
+    /**
+     * Returns the number of requests waiting for a free thread, assuming that
+     * no other {@link Storj} instance is using the thread pool.
+     * 
+     * <p>
+     * A queue depth that stays above zero indicates that a larger thread pool
+     * would increase the transfer concurrency. As a transfer counts as one
+     * request, the actual queue depth can be larger.
+     * </p>
+     * 
+     * @return the estimated thread pool queue depth
+     */
+    public int getQueueDepth() {
+        return Math.max(0, activeRequests - threadPoolSize);
+    }
+
+    @Override
+    public String toString() {
+        return "NativeRuntimeStats [threadPoolSize=" + threadPoolSize + ", activeRequests=" + activeRequests
+                + ", queueDepth=" + getQueueDepth() + "]";
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Policy applied when the queue of callbacks handed off to the callback
+ * executor is full.
+ *
+ * <p>
+ * Completion and error callbacks are never discarded. The policies differ in
+ * how they treat progress callbacks and new requests while the executor is
+ * falling behind.
+ * </p>
+ *
+ * @see Storj#setCallbackExecutor(java.util.concurrent.Executor, int,
+ *      OverflowPolicy)
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The event loop thread waits until there is space in the queue for any
+     * callback, including progress callbacks.
+     */
+    BLOCK,
+
+    /**
+     * Progress callbacks are discarded while the queue is full. The event loop
+     * thread waits for space for all other callbacks.
+     */
+    DROP_PROGRESS,
+
+    /**
+     * Progress callbacks are discarded while the queue is full, and new requests
+     * are refused with a
+     * {@link java.util.concurrent.RejectedExecutionException}. Callbacks of
+     * requests already in progress wait for space in the queue.
+     */
+    FAIL
+
+}
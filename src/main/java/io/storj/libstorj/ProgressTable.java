@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Table in direct memory holding the progress of file transfers.
+ *
+ * <p>
+ * When a table is configured with {@link Storj#setProgressTable(ProgressTable)},
+ * each new download and upload gets a slot in it. The native library writes
+ * the progress, the final state and the error code of the transfer directly
+ * to the slot, and the <code>onProgress()</code> callbacks of the transfer are
+ * not invoked. Monitoring code can then poll any number of transfers without
+ * allocating objects and without calls into the native library.
+ * </p>
+ *
+ * <p>
+ * Each slot consists of {@link #SLOT_LONGS} longs in native byte order:
+ * </p>
+ * <ul>
+ * <li>{@link #TRANSFER} - the transfer state pointer returned by
+ * <code>downloadFile()</code> or <code>uploadFile()</code>,</li>
+ * <li>{@link #BYTES_DONE} - the number of bytes transferred,</li>
+ * <li>{@link #TOTAL_BYTES} - the total number of bytes,</li>
+ * <li>{@link #STATE} - one of the <code>STATE_*</code> constants,</li>
+ * <li>{@link #ERROR_CODE} - the error code of a failed transfer.</li>
+ * </ul>
+ *
+ * <p>
+ * Each value is written atomically, but a slot as a whole is not, so
+ * {@link #getBytesDone(int)} may already be ahead of the previously read
+ * {@link #getTotalBytes(int)}. The slot of a finished transfer keeps its final
+ * values until the slot is reused, which happens only when no slot has been
+ * left unused.
+ * </p>
+ *
+ * <p>
+ * If all slots are taken by active transfers, new transfers get no slot and
+ * report their progress through the callbacks.
+ * </p>
+ */
+public final class ProgressTable {
+
+    /**
+     * The number of longs in a slot.
+     */
+    public static final int SLOT_LONGS = 8;
+
+    /**
+     * Index in a slot of the transfer state pointer.
+     */
+    public static final int TRANSFER = 0;
+
+    /**
+     * Index in a slot of the number of bytes transferred.
+     */
+    public static final int BYTES_DONE = 1;
+
+    /**
+     * Index in a slot of the total number of bytes.
+     */
+    public static final int TOTAL_BYTES = 2;
+
+    /**
+     * Index in a slot of the transfer state.
+     */
+    public static final int STATE = 3;
+
+    /**
+     * Index in a slot of the error code.
+     */
+    public static final int ERROR_CODE = 4;
+
+    /**
+     * The slot has never been used.
+     */
+    public static final int STATE_FREE = 0;
+
+    /**
+     * The transfer is in progress.
+     */
+    public static final int STATE_ACTIVE = 1;
+
+    /**
+     * The transfer completed successfully.
+     */
+    public static final int STATE_COMPLETED = 2;
+
+    /**
+     * The transfer failed or was canceled. The error code is set.
+     */
+    public static final int STATE_FAILED = 3;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    /**
+     * Slots never used so far, followed by finished slots in the order they
+     * finished. Guarded by <code>this</code>.
+     */
+    private final Deque<Integer> unused = new ArrayDeque<>();
+    private final Deque<Integer> finished = new ArrayDeque<>();
+
+    /**
+     * Constructs new table with the provided number of slots.
+     *
+     * @param capacity
+     *            the maximum number of transfers tracked at the same time
+     * @throws IllegalArgumentException
+     *             if <code>capacity</code> is less than 1
+     */
+    public ProgressTable(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity * SLOT_LONGS * 8).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < capacity; i++) {
+            unused.add(i);
+        }
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the capacity of the table
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns a read-only view of the whole table, e.g. for copying it in bulk.
+     *
+     * @return a {@link LongBuffer} with {@link #SLOT_LONGS} longs per slot
+     */
+    public LongBuffer asLongBuffer() {
+        return buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    /**
+     * Finds the slot of a transfer.
+     *
+     * @param transfer
+     *            the transfer state pointer returned by
+     *            <code>downloadFile()</code> or <code>uploadFile()</code>
+     * @return the slot, or <code>-1</code> if the transfer has no slot
+     */
+    public int findSlot(long transfer) {
+        if (transfer == 0) {
+            return -1;
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            if (get(slot, TRANSFER) == transfer) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the transfer state pointer of the transfer in a slot.
+     *
+     * @param slot
+     *            the slot
+     * @return the transfer state pointer, or <code>0</code> if not known yet
+     */
+    public long getTransfer(int slot) {
+        return get(slot, TRANSFER);
+    }
+
+    /**
+     * Returns the number of bytes transferred.
+     *
+     * @param slot
+     *            the slot
+     * @return the number of bytes
+     */
+    public long getBytesDone(int slot) {
+        return get(slot, BYTES_DONE);
+    }
+
+    /**
+     * Returns the total number of bytes of the transfer.
+     *
+     * @param slot
+     *            the slot
+     * @return the number of bytes, or <code>0</code> if not known yet
+     */
+    public long getTotalBytes(int slot) {
+        return get(slot, TOTAL_BYTES);
+    }
+
+    /**
+     * Returns the state of the transfer.
+     *
+     * @param slot
+     *            the slot
+     * @return one of the <code>STATE_*</code> constants
+     */
+    public int getState(int slot) {
+        return (int) get(slot, STATE);
+    }
+
+    /**
+     * Returns the error code of a failed transfer.
+     *
+     * @param slot
+     *            the slot
+     * @return the error code, or <code>0</code> if the transfer has not failed
+     */
+    public int getErrorCode(int slot) {
+        return (int) get(slot, ERROR_CODE);
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Takes a slot for a new transfer and resets it.
+     *
+     * @return the slot, or <code>-1</code> if all slots are in use
+     */
+    synchronized int acquire() {
+        Integer slot = unused.poll();
+        if (slot == null) {
+            slot = finished.poll();
+        }
+        if (slot == null) {
+            return -1;
+        }
+        put(slot, TRANSFER, 0);
+        put(slot, BYTES_DONE, 0);
+        put(slot, TOTAL_BYTES, 0);
+        put(slot, ERROR_CODE, 0);
+        put(slot, STATE, STATE_ACTIVE);
+        return slot;
+    }
+
+    /**
+     * Records the transfer state pointer once the transfer has been started.
+     */
+    void setTransfer(int slot, long transfer) {
+        put(slot, TRANSFER, transfer);
+    }
+
+    /**
+     * Makes the slot of a finished transfer available for reuse.
+     */
+    synchronized void release(int slot) {
+        finished.add(slot);
+    }
+
+    private long get(int slot, int field) {
+        checkSlot(slot);
+        return buffer.getLong((slot * SLOT_LONGS + field) * 8);
+    }
+
+    private void put(int slot, int field, long value) {
+        buffer.putLong((slot * SLOT_LONGS + field) * 8, value);
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            throw new IndexOutOfBoundsException("slot " + slot + ", capacity " + capacity);
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how often the progress callbacks of a transfer are invoked.
+ * 
+ * <p>
+ * The throttling is done by the native library, so progress updates that are
+ * skipped do not cross into Java at all. An update is passed on only if both
+ * the minimum interval and the minimum number of bytes have been reached since
+ * the last update that was passed on. A limit of zero is not applied.
+ * </p>
+ * 
+ * <p>
+ * Regardless of the limits, the first update and an update with 100% progress
+ * are always passed on. A successful transfer always reports 100% progress
+ * right before <code>onComplete()</code>.
+ * </p>
+ * 
+ * @see Storj#setProgressThrottle(ProgressThrottle)
+ * @see Storj#downloadFile(String, String, String, ProgressThrottle,
+ *      DownloadFileCallback)
+ * @see UploadOptions.Builder#setProgressThrottle(ProgressThrottle)
+ */
+public class ProgressThrottle {
+
+    /**
+     * Passes on every progress update reported by the native library.
+     */
+    public static final ProgressThrottle NONE = new ProgressThrottle(0, TimeUnit.MILLISECONDS, 0);
+
+    private final long minIntervalMillis;
+    private final long minBytes;
+
+    /**
+     * Constructs new throttle with the provided limits.
+     * 
+     * @param minInterval
+     *            the minimum time between two progress updates, or
+     *            <code>0</code> for no time limit
+     * @param unit
+     *            the time unit of <code>minInterval</code>
+     * @param minBytes
+     *            the minimum number of bytes transferred between two progress
+     *            updates, or <code>0</code> for no byte limit
+     * @throws IllegalArgumentException
+     *             if any of the limits is negative
+     */
+    public ProgressThrottle(long minInterval, TimeUnit unit, long minBytes) {
+        if (minInterval < 0) {
+            throw new IllegalArgumentException("minInterval must not be negative: " + minInterval);
+        }
+        if (minBytes < 0) {
+            throw new IllegalArgumentException("minBytes must not be negative: " + minBytes);
+        }
+        this.minIntervalMillis = unit.toMillis(minInterval);
+        this.minBytes = minBytes;
+    }
+
+    /**
+     * Returns the minimum time between two progress updates.
+     * 
+     * @return the interval in milliseconds, or <code>0</code> if not limited
+     */
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    /**
+     * Returns the minimum number of bytes transferred between two progress
+     * updates.
+     * 
+     * @return the number of bytes, or <code>0</code> if not limited
+     */
+    public long getMinBytes() {
+        return minBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ProgressThrottle [minIntervalMillis=" + minIntervalMillis + ", minBytes=" + minBytes + "]";
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only {@link SeekableByteChannel} over a file being downloaded to a
+ * scratch file.
+ *
+ * <p>
+ * The native library writes the shards at their offsets in any order, so the
+ * downloaded bytes cannot be told apart from the gaps before the download is
+ * complete. Reads and {@link #size()} therefore wait for the download to
+ * complete, and are then served from the scratch file, relying on the page
+ * cache of the operating system for caching and read-ahead. The scratch file
+ * holds the whole file, in memory if the scratch directory is a tmpfs, until
+ * the channel is closed. Closing the channel cancels the download if still in
+ * progress and deletes the scratch file.
+ * </p>
+ */
+class RemoteFileChannel implements SeekableByteChannel, DownloadFileCallback {
+
+    private final Path scratch;
+
+    // guarded by this
+    private Storj storj;
+    private long download;
+    private boolean finished;
+    private boolean closed;
+    private FileChannel file;
+    private IOException error;
+    private long position;
+
+    RemoteFileChannel(Path scratch) {
+        this.scratch = scratch;
+    }
+
+    /**
+     * Sets the download to cancel if the channel is closed before the download
+     * is complete.
+     */
+    synchronized void setDownload(Storj storj, long download) {
+        this.storj = storj;
+        this.download = download;
+    }
+
+    @Override
+    public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+    }
+
+    @Override
+    public void onComplete(String fileId, String localPath) {
+        FileChannel opened = null;
+        IOException failure = null;
+        try {
+            opened = FileChannel.open(scratch, StandardOpenOption.READ);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (this) {
+            if (!closed) {
+                file = opened;
+                error = failure;
+                finished = true;
+                notifyAll();
+                return;
+            }
+        }
+        // closed while downloading
+        closeQuietly(opened);
+        deleteScratch();
+    }
+
+    @Override
+    public void onError(String fileId, int code, String message) {
+        deleteScratch();
+        synchronized (this) {
+            error = new IOException(message + " (" + code + ")");
+            finished = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        FileChannel in;
+        long from;
+        synchronized (this) {
+            in = await();
+            from = position;
+        }
+        int read = in.read(dst, from);
+        if (read > 0) {
+            synchronized (this) {
+                position = from + read;
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("newPosition must not be negative: " + newPosition);
+        }
+        checkOpen();
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        FileChannel in;
+        synchronized (this) {
+            in = await();
+        }
+        return in.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean downloading;
+        Storj owner;
+        long state;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            downloading = !finished;
+            owner = storj;
+            state = download;
+            notifyAll();
+        }
+
+        if (downloading) {
+            // the scratch file is deleted by the callback
+            if (owner != null) {
+                owner.cancelDownload(state);
+            }
+        } else {
+            closeQuietly(file);
+            deleteScratch();
+        }
+    }
+
+    /**
+     * Waits for the download to complete. Must be called with the lock held.
+     *
+     * @return the scratch file opened for reading
+     */
+    private FileChannel await() throws IOException {
+        checkOpen();
+        while (!finished) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the download");
+            }
+            checkOpen();
+        }
+        if (error != null) {
+            throw new IOException(error.getMessage(), error);
+        }
+        return file;
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // only read from
+            }
+        }
+    }
+
+    private void deleteScratch() {
+        try {
+            Files.deleteIfExists(scratch);
+        } catch (IOException e) {
+            // nothing more to do, the file is in the scratch directory anyway
+        }
+    }
+
+}
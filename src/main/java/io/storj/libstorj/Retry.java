@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * A request to the Bridge that is submitted again when it fails with an error
+ * that the {@link RetryPolicy} allows to retry.
+ *
+ * <p>
+ * Subclasses submit the request in {@link #submit()}, passing the callback
+ * wrapped with one of the <code>wrap()</code> methods. The wrapper reports the
+ * error to the callback only when the request is not retried.
+ * </p>
+ *
+ * <p>
+ * If a {@link CircuitBreaker} is provided, the outcome and the latency of each
+ * attempt is recorded in it, and attempts are not submitted while it is open.
+ * </p>
+ */
+abstract class Retry {
+
+    private final RetryPolicy policy;
+    private final CircuitBreaker breaker;
+    private final boolean idempotent;
+
+    // accessed by one attempt at a time
+    private int retries;
+    private long delay;
+    private long submitted;
+
+    /**
+     * @param policy
+     *            the retry policy, or <code>null</code> to never retry
+     * @param breaker
+     *            the circuit breaker, or <code>null</code> if none
+     * @param idempotent
+     *            <code>false</code> if the request may not be repeated once
+     *            processed by the Bridge
+     */
+    Retry(RetryPolicy policy, CircuitBreaker breaker, boolean idempotent) {
+        this.policy = policy;
+        this.breaker = breaker;
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * Submits the request for the first time, or calls {@link #reject()} if the
+     * circuit breaker is open.
+     */
+    void start() {
+        if (!admit()) {
+            reject();
+            return;
+        }
+        requested();
+        submit();
+    }
+
+    /**
+     * Records the request in the budget of the policy, for requests submitted
+     * for the first time without {@link #start()}.
+     */
+    void requested() {
+        if (policy != null) {
+            policy.requested();
+        }
+    }
+
+    /**
+     * Submits the request. Called again for each retry.
+     */
+    abstract void submit();
+
+    /**
+     * Reports the error {@link Storj#CIRCUIT_OPEN} to the callback of a request
+     * not submitted because the circuit breaker is open.
+     */
+    abstract void reject();
+
+    /**
+     * Checks whether the retry must be given up, e.g. because the request was
+     * canceled or the environment destroyed while waiting.
+     */
+    boolean isCanceled() {
+        return false;
+    }
+
+    /**
+     * Returns the number of retries made so far.
+     */
+    int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Schedules a retry of a failed request if the policy allows it.
+     *
+     * @param code
+     *            the error code
+     * @param giveUp
+     *            reports the error if the request is canceled before the retry
+     * @return <code>true</code> if a retry is scheduled, or <code>false</code>
+     *         if the error must be reported
+     */
+    boolean retry(int code, final Runnable giveUp) {
+        if (policy == null || !policy.allowRetry(code, retries + 1, idempotent)) {
+            return false;
+        }
+        retries++;
+        delay = policy.nextDelay(delay);
+        DelayedTasks.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // the last error is reported when the breaker has opened meanwhile
+                if (isCanceled() || !admit()) {
+                    giveUp.run();
+                    return;
+                }
+                try {
+                    submit();
+                } catch (RuntimeException e) {
+                    giveUp.run();
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }, delay);
+        return true;
+    }
+
+    /**
+     * Checks the circuit breaker, and records the time of the attempt if it is
+     * closed.
+     */
+    private boolean admit() {
+        if (breaker != null && !breaker.allowCall()) {
+            return false;
+        }
+        submitted = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Records the outcome of an attempt in the circuit breaker.
+     */
+    private void completed(int code) {
+        if (breaker != null) {
+            breaker.record(code, System.nanoTime() - submitted);
+        }
+    }
+
+    GetBucketsCallback wrap(final GetBucketsCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new GetBucketsCallback() {
+            @Override
+            public void onBucketsReceived(Bucket[] buckets) {
+                completed(Storj.NO_ERROR);
+                callback.onBucketsReceived(buckets);
+            }
+
+            @Override
+            public void onError(final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    GetBucketCallback wrap(final GetBucketCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new GetBucketCallback() {
+            @Override
+            public void onBucketReceived(Bucket bucket) {
+                completed(Storj.NO_ERROR);
+                callback.onBucketReceived(bucket);
+            }
+
+            @Override
+            public void onError(final String bucketId, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketId, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    GetBucketIdCallback wrap(final GetBucketIdCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new GetBucketIdCallback() {
+            @Override
+            public void onBucketIdReceived(String bucketName, String bucketId) {
+                completed(Storj.NO_ERROR);
+                callback.onBucketIdReceived(bucketName, bucketId);
+            }
+
+            @Override
+            public void onError(final String bucketName, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketName, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    CreateBucketCallback wrap(final CreateBucketCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new CreateBucketCallback() {
+            @Override
+            public void onBucketCreated(Bucket bucket) {
+                completed(Storj.NO_ERROR);
+                callback.onBucketCreated(bucket);
+            }
+
+            @Override
+            public void onError(final String bucketName, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketName, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    DeleteBucketCallback wrap(final DeleteBucketCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new DeleteBucketCallback() {
+            @Override
+            public void onBucketDeleted(String bucketId) {
+                completed(Storj.NO_ERROR);
+                callback.onBucketDeleted(bucketId);
+            }
+
+            @Override
+            public void onError(final String bucketId, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketId, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    ListFilesCallback wrap(final ListFilesCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new ListFilesCallback() {
+            @Override
+            public void onFilesReceived(String bucketId, File[] files) {
+                completed(Storj.NO_ERROR);
+                callback.onFilesReceived(bucketId, files);
+            }
+
+            @Override
+            public void onError(final String bucketId, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketId, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    FileCursorCallback wrap(final FileCursorCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new FileCursorCallback() {
+            @Override
+            public void onCursorReady(FileCursor cursor) {
+                completed(Storj.NO_ERROR);
+                callback.onCursorReady(cursor);
+            }
+
+            @Override
+            public void onError(final String bucketId, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(bucketId, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    GetFileCallback wrap(final GetFileCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new GetFileCallback() {
+            @Override
+            public void onFileReceived(File file) {
+                completed(Storj.NO_ERROR);
+                callback.onFileReceived(file);
+            }
+
+            @Override
+            public void onError(final String fileId, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(fileId, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    GetFileIdCallback wrap(final GetFileIdCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new GetFileIdCallback() {
+            @Override
+            public void onFileIdReceived(String fileName, String fileId) {
+                completed(Storj.NO_ERROR);
+                callback.onFileIdReceived(fileName, fileId);
+            }
+
+            @Override
+            public void onError(final String fileName, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(fileName, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+    DeleteFileCallback wrap(final DeleteFileCallback callback) {
+        if (policy == null && breaker == null) {
+            return callback;
+        }
+        return new DeleteFileCallback() {
+            @Override
+            public void onFileDeleted(String fileId) {
+                completed(Storj.NO_ERROR);
+                callback.onFileDeleted(fileId);
+            }
+
+            @Override
+            public void onError(final String fileId, final int code, final String message) {
+                completed(code);
+                Runnable report = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(fileId, code, message);
+                    }
+                };
+                if (!retry(code, report)) {
+                    report.run();
+                }
+            }
+        };
+    }
+
+}
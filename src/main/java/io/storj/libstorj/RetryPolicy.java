@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which failed requests and transfers are retried, and when.
+ *
+ * <p>
+ * When configured with {@link Storj#setRetryPolicy(RetryPolicy)}, requests to
+ * the Bridge and whole file transfers failing with a transient error are
+ * submitted again instead of reporting the error to the callback. Only the
+ * last error is reported if all retries fail.
+ * </p>
+ *
+ * <p>
+ * The following errors are retryable by default:
+ * {@link Storj#HTTP_TRANSFER_RATE_LIMIT},
+ * {@link Storj#HTTP_TOO_MANY_REQUESTS},
+ * {@link Storj#HTTP_SERVICE_UNAVAILABLE},
+ * {@link Storj#STORJ_BRIDGE_TIMEOUT_ERROR},
+ * {@link Storj#STORJ_BRIDGE_INTERNAL_ERROR},
+ * {@link Storj#STORJ_BRIDGE_RATE_ERROR},
+ * {@link Storj#STORJ_FARMER_REQUEST_ERROR},
+ * {@link Storj#STORJ_FARMER_TIMEOUT_ERROR},
+ * {@link Storj#CURLE_COULDNT_RESOLVE_HOST},
+ * {@link Storj#CURLE_COULDNT_CONNECT} and
+ * {@link Storj#CURLE_OPERATION_TIMEDOUT}. All others are fatal. Requests that
+ * are not safe to repeat, i.e. creating and deleting buckets and files, and
+ * uploads, which create a file in the Bridge, are retried only if the Bridge
+ * did not process them: on rate limits, when the service is unavailable, and
+ * when the connection could not be established.
+ * </p>
+ *
+ * <p>
+ * The delay before each retry is chosen with decorrelated jitter: a random
+ * value between the base delay and three times the previous delay, capped at
+ * the maximum delay. This spreads out the retries of many clients failing at
+ * the same time.
+ * </p>
+ *
+ * <p>
+ * All retries go through a budget, so a failing Bridge does not get flooded
+ * with retries. Over a sliding window of 10 seconds, the retries may not
+ * exceed the minimum number of retries per second plus a ratio of the
+ * requests. A retry denied by the budget reports the error right away.
+ * </p>
+ *
+ * <p>
+ * A policy can be shared by multiple {@link Storj} instances to apply one
+ * budget to all of them.
+ * </p>
+ */
+public class RetryPolicy {
+
+    /**
+     * Length of the budget window in seconds.
+     */
+    private static final int WINDOW = 10;
+
+    private static final int[] RETRYABLE = {
+            Storj.HTTP_TRANSFER_RATE_LIMIT,
+            Storj.HTTP_TOO_MANY_REQUESTS,
+            Storj.HTTP_SERVICE_UNAVAILABLE,
+            Storj.STORJ_BRIDGE_TIMEOUT_ERROR,
+            Storj.STORJ_BRIDGE_INTERNAL_ERROR,
+            Storj.STORJ_BRIDGE_RATE_ERROR,
+            Storj.STORJ_FARMER_REQUEST_ERROR,
+            Storj.STORJ_FARMER_TIMEOUT_ERROR,
+            Storj.CURLE_COULDNT_RESOLVE_HOST,
+            Storj.CURLE_COULDNT_CONNECT,
+            Storj.CURLE_OPERATION_TIMEDOUT
+    };
+
+    /**
+     * Errors meaning that the request was not processed, so it is safe to
+     * repeat it even if it is not idempotent.
+     */
+    private static final int[] NOT_PROCESSED = {
+            Storj.HTTP_TRANSFER_RATE_LIMIT,
+            Storj.HTTP_TOO_MANY_REQUESTS,
+            Storj.HTTP_SERVICE_UNAVAILABLE,
+            Storj.STORJ_BRIDGE_RATE_ERROR,
+            Storj.CURLE_COULDNT_RESOLVE_HOST,
+            Storj.CURLE_COULDNT_CONNECT
+    };
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejectedRetries = new AtomicLong();
+
+    // guarded by this
+    private final Set<Integer> retryable = new HashSet<>();
+    private double retryRatio = 0.2;
+    private int minRetriesPerSecond = 10;
+    private final long[] windowSeconds = new long[WINDOW];
+    private final long[] windowRequests = new long[WINDOW];
+    private final long[] windowRetries = new long[WINDOW];
+
+    /**
+     * Constructs new policy retrying up to 3 times, with delays between 100
+     * milliseconds and 10 seconds.
+     */
+    public RetryPolicy() {
+        this(3, 100, 10000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs new policy with the provided limits.
+     *
+     * @param maxRetries
+     *            the maximum number of retries of a request or a transfer
+     * @param baseDelay
+     *            the minimum delay before a retry
+     * @param maxDelay
+     *            the maximum delay before a retry
+     * @param unit
+     *            the time unit of the delays
+     * @throws IllegalArgumentException
+     *             if <code>maxRetries</code> is negative, <code>baseDelay</code>
+     *             is not positive, or <code>maxDelay</code> is less than
+     *             <code>baseDelay</code>
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay, TimeUnit unit) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative: " + maxRetries);
+        }
+        if (baseDelay <= 0) {
+            throw new IllegalArgumentException("baseDelay must be positive: " + baseDelay);
+        }
+        if (maxDelay < baseDelay) {
+            throw new IllegalArgumentException("maxDelay must not be less than baseDelay: " + maxDelay);
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelay = unit.toNanos(baseDelay);
+        this.maxDelay = unit.toNanos(maxDelay);
+        for (int code : RETRYABLE) {
+            retryable.add(code);
+        }
+    }
+
+    /**
+     * Sets whether an error is retryable.
+     *
+     * @param code
+     *            the error code, one of the constants in {@link Storj}
+     * @param retryable
+     *            <code>true</code> to retry requests failing with this error
+     * @return a reference to this policy
+     */
+    public synchronized RetryPolicy setRetryable(int code, boolean retryable) {
+        if (retryable) {
+            this.retryable.add(code);
+        } else {
+            this.retryable.remove(code);
+        }
+        return this;
+    }
+
+    /**
+     * Checks whether an error is retryable.
+     *
+     * @param code
+     *            the error code
+     * @return <code>true</code> if requests failing with this error are retried
+     */
+    public synchronized boolean isRetryable(int code) {
+        return retryable.contains(code);
+    }
+
+    /**
+     * Sets the budget limiting the retries over a sliding window of 10
+     * seconds.
+     *
+     * @param retryRatio
+     *            the number of retries allowed per request, e.g.
+     *            <code>0.2</code> for one retry per five requests
+     * @param minRetriesPerSecond
+     *            the number of retries per second allowed regardless of the
+     *            number of requests
+     * @return a reference to this policy
+     * @throws IllegalArgumentException
+     *             if any of the values is negative
+     */
+    public synchronized RetryPolicy setBudget(double retryRatio, int minRetriesPerSecond) {
+        if (retryRatio < 0) {
+            throw new IllegalArgumentException("retryRatio must not be negative: " + retryRatio);
+        }
+        if (minRetriesPerSecond < 0) {
+            throw new IllegalArgumentException("minRetriesPerSecond must not be negative: " + minRetriesPerSecond);
+        }
+        this.retryRatio = retryRatio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        return this;
+    }
+
+    /**
+     * Returns the number of retries allowed per request by the budget.
+     *
+     * @return the retry ratio
+     */
+    public synchronized double getRetryRatio() {
+        return retryRatio;
+    }
+
+    /**
+     * Returns the number of retries per second allowed by the budget regardless
+     * of the number of requests.
+     *
+     * @return the minimum retries per second
+     */
+    public synchronized int getMinRetriesPerSecond() {
+        return minRetriesPerSecond;
+    }
+
+    /**
+     * Returns the maximum number of retries of a request or a transfer.
+     *
+     * @return the retry limit
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Returns the minimum delay before a retry.
+     *
+     * @return the delay in milliseconds
+     */
+    public long getBaseDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(baseDelay);
+    }
+
+    /**
+     * Returns the maximum delay before a retry.
+     *
+     * @return the delay in milliseconds
+     */
+    public long getMaxDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxDelay);
+    }
+
+    /**
+     * Returns the number of retries spent.
+     *
+     * @return the number of retries
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Returns the number of retryable errors reported to the callbacks because
+     * the budget was exhausted.
+     *
+     * @return the number of rejected retries
+     */
+    public long getRejectedRetries() {
+        return rejectedRetries.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy [maxRetries=" + maxRetries + ", baseDelayMillis=" + getBaseDelayMillis()
+                + ", maxDelayMillis=" + getMaxDelayMillis() + ", retries=" + getRetries() + ", rejectedRetries="
+                + getRejectedRetries() + "]";
+    }
+
+    /**
+     * Records a new request or transfer, which adds to the budget.
+     */
+    synchronized void requested() {
+        windowRequests[slot(currentSecond())]++;
+    }
+
+    /**
+     * Decides whether to retry a failed request and spends the budget if so.
+     *
+     * @param code
+     *            the error code
+     * @param retry
+     *            the number of the retry, starting from 1
+     * @param idempotent
+     *            <code>false</code> if the request may not be repeated once
+     *            processed by the Bridge
+     * @return <code>true</code> if the request should be retried
+     */
+    synchronized boolean allowRetry(int code, int retry, boolean idempotent) {
+        if (retry > maxRetries || !retryable.contains(code) || (!idempotent && !contains(NOT_PROCESSED, code))) {
+            return false;
+        }
+
+        long second = currentSecond();
+        int slot = slot(second);
+        long requests = 0;
+        long spent = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            if (second - windowSeconds[i] < WINDOW) {
+                requests += windowRequests[i];
+                spent += windowRetries[i];
+            }
+        }
+        if (spent >= (long) minRetriesPerSecond * WINDOW + (long) (retryRatio * requests)) {
+            rejectedRetries.incrementAndGet();
+            return false;
+        }
+
+        windowRetries[slot]++;
+        retries.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the delay before the next retry.
+     *
+     * @param previous
+     *            the previous delay in nanoseconds, or <code>0</code> before
+     *            the first retry
+     * @return the delay in nanoseconds
+     */
+    long nextDelay(long previous) {
+        long upper = Math.min(maxDelay, Math.max(baseDelay, previous) * 3);
+        if (upper <= baseDelay) {
+            return baseDelay;
+        }
+        return ThreadLocalRandom.current().nextLong(baseDelay, upper + 1);
+    }
+
+    /**
+     * Returns the current time in nanoseconds. Tests override it to control
+     * the budget window.
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    private long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(now());
+    }
+
+    /**
+     * Returns the slot of a second in the budget window, clearing it if it held
+     * an older second.
+     */
+    private int slot(long second) {
+        int slot = (int) Math.floorMod(second, (long) WINDOW);
+        if (windowSeconds[slot] != second) {
+            windowSeconds[slot] = second;
+            windowRequests[slot] = 0;
+            windowRetries[slot] = 0;
+        }
+        return slot;
+    }
+
+    private static boolean contains(int[] codes, int code) {
+        for (int c : codes) {
+            if (c == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -18,9 +18,22 @@ package io.storj.libstorj;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Java object wrapper of the libstorj native library.
@@ -36,6 +49,16 @@ public class Storj {
      * Error code if file transfer was canceled.
      */
     public static final int TRANSFER_CANCELED = 1;
+
+    /**
+     * Error code if a request was not sent to the Bridge because the
+     * {@link CircuitBreaker} is open.
+     * 
+     * <p>
+     * This error is raised by the Java binding and not by the native library.
+     * </p>
+     */
+    public static final int CIRCUIT_OPEN = 8000;
     
     /**
      * Error code if an invalid request was sent to the Bridge.
@@ -389,21 +412,83 @@ public class Storj {
     private static final String DEFAULT_HOST = "api.storj.io";
     private static final int DEFAULT_PORT = 443;
 
+    /**
+     * System property for the number of threads in the libuv thread pool.
+     * 
+     * @see #configureNativeRuntime(int)
+     */
+    public static final String THREAD_POOL_SIZE_PROPERTY = "storj.threadpool.size";
+
     private static String USER_AGENT;
 
+    /**
+     * Thread pool size requested with {@link #configureNativeRuntime(int)}, or
+     * <code>0</code> if not requested.
+     */
+    private static int requestedThreadPoolSize;
+
+    /**
+     * Thread pool size the native runtime was started with, or <code>0</code>
+     * if it has not been started yet.
+     */
+    private static int threadPoolSize;
+
     private String proto;
     private String host;
     private int port;
-    private Keys keys;
+
+    /**
+     * The user's keys, or <code>null</code> if they have not been looked up
+     * yet.
+     */
+    private volatile Credentials credentials;
     private java.io.File configDir;
     private java.io.File downloadDir;
+    private java.io.File scratchDir;
+    private volatile CallbackDispatcher dispatcher = CallbackDispatcher.DIRECT;
+    private volatile UploadOptions uploadOptions = UploadOptions.DEFAULT;
+    private volatile ProgressThrottle progressThrottle = ProgressThrottle.NONE;
+    private volatile ProgressTable progressTable;
+    private volatile TransferScheduler transferScheduler;
+    private volatile BandwidthLimiter bandwidthLimiter;
+    private volatile RetryPolicy retryPolicy;
+    private TransferScheduler internalScheduler;
+    private volatile CircuitBreaker circuitBreaker;
+    private BreakerProbe breakerProbe;
+    private volatile BucketCache bucketCache;
+    private volatile FileIdCache fileIdCache;
+
+    /**
+     * Transfers in progress by the pointer to their native state. The native
+     * library releases the state when the transfer finishes, so it must not be
+     * passed to the native library after that.
+     */
+    private final Map<Long, Transfer> transfers = new HashMap<>();
+
+    /**
+     * Transfers submitted to a scheduler by their ticket, until they finish.
+     */
+    private final Map<Long, TransferScheduler.Task> scheduledDownloads = new ConcurrentHashMap<>();
+    private final Map<Long, TransferScheduler.Task> scheduledUploads = new ConcurrentHashMap<>();
 
     private EventLoopRunner looper;
 
+    /**
+     * Daemon threads copying downloaded ranges from their scratch files and
+     * probing the circuit breaker.
+     */
+    private ExecutorService streamExecutor;
+
     /**
      * Pointer to the address of the storj_env_t struct in the native library.
      */
-    private long env;
+    private volatile long env;
+
+    /**
+     * Guards replacing {@link #env}, so that it is not destroyed while it is
+     * read outside of the event loop.
+     */
+    private final Object envLock = new Object();
 
     static {
         loadLibrary();
@@ -512,6 +597,89 @@ public class Storj {
 
         configDir = new java.io.File(System.getProperty("user.home"), ".storj");
         downloadDir = new java.io.File(System.getProperty("user.dir"));
+        scratchDir = new java.io.File(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Configures the native runtime shared by all Storj instances.
+     * 
+     * <p>
+     * The native library executes all network requests on the libuv thread
+     * pool, so its size limits the number of concurrent requests and shard
+     * transfers. The pool is started when the first Storj instance sends a
+     * request, and its size cannot be changed afterwards.
+     * </p>
+     * 
+     * <p>
+     * If this method is not called, the size is taken from the
+     * {@value #THREAD_POOL_SIZE_PROPERTY} system property, or else from the
+     * <code>UV_THREADPOOL_SIZE</code> environment variable, or else it is four
+     * times the number of available processors, between 4 and 128.
+     * </p>
+     * 
+     * @param threadPoolSize
+     *            the number of threads in the libuv thread pool
+     * @throws IllegalStateException
+     *             if the native runtime has already been started
+     * @see #getNativeRuntimeStats()
+     */
+    public static synchronized void configureNativeRuntime(int threadPoolSize) throws IllegalStateException {
+        if (threadPoolSize < 1) {
+            throw new IllegalArgumentException("threadPoolSize must be positive: " + threadPoolSize);
+        }
+        if (Storj.threadPoolSize != 0) {
+            throw new IllegalStateException(
+                    "Native runtime already started with thread pool size " + Storj.threadPoolSize);
+        }
+        requestedThreadPoolSize = threadPoolSize;
+    }
+
+    private static synchronized void startNativeRuntime() {
+        if (threadPoolSize != 0) {
+            return;
+        }
+
+        int size = requestedThreadPoolSize;
+        if (size == 0) {
+            size = Integer.getInteger(THREAD_POOL_SIZE_PROPERTY, 0);
+        }
+        if (size < 1) {
+            String env = System.getenv("UV_THREADPOOL_SIZE");
+            if (env != null) {
+                try {
+                    // already in the environment of the native library
+                    threadPoolSize = Math.max(1, Integer.parseInt(env.trim()));
+                    return;
+                } catch (NumberFormatException e) {
+                    // ignore the variable
+                }
+            }
+            size = Math.max(4, Math.min(128, 4 * Runtime.getRuntime().availableProcessors()));
+        }
+
+        _setThreadPoolSize(size);
+        threadPoolSize = size;
+    }
+
+    /**
+     * Returns statistics of the native runtime for this Storj instance.
+     * 
+     * <p>
+     * The values are read without synchronizing with the event loop, so they
+     * are approximate.
+     * </p>
+     * 
+     * @return the native runtime statistics
+     * @see #configureNativeRuntime(int)
+     */
+    public NativeRuntimeStats getNativeRuntimeStats() {
+        int poolSize;
+        synchronized (Storj.class) {
+            poolSize = threadPoolSize;
+        }
+        synchronized (envLock) {
+            return new NativeRuntimeStats(poolSize, (env == 0) ? 0 : _getActiveRequests(env));
+        }
     }
 
     /**
@@ -533,6 +701,8 @@ public class Storj {
      */
     public Storj setConfigDirectory(java.io.File dir) {
         configDir = dir;
+        // the keys are looked up in the new directory
+        replaceCredentials(null);
         
         if (!configDir.exists()) {
             boolean success = configDir.mkdirs();
@@ -566,6 +736,399 @@ public class Storj {
         return this;
     }
 
+    /**
+     * Configure the directory for the scratch files of downloads to channels.
+     * 
+     * <p>
+     * Ranges of files downloaded to a {@link WritableByteChannel} and files
+     * opened with {@link #openChannel(String, String)} are first downloaded to
+     * a scratch file, because the native library writes the shards out of
+     * order. The scratch file is deleted once the range has been copied to
+     * the channel, or when the opened channel is closed.
+     * </p>
+     * 
+     * <p>
+     * The default scratch directory is the system temporary directory. A
+     * memory backed directory such as <code>/dev/shm</code> avoids the disk
+     * I/O, but then each such file is held in memory in full while it is
+     * transferred, and files larger than the file system (e.g. 64 MiB in a
+     * default Docker container) fail.
+     * </p>
+     * 
+     * @param dir
+     *            a directory
+     * @return a reference to this Storj object
+     * @see #downloadFile(String, String, long, long, WritableByteChannel, DownloadFileCallback)
+     * @see #openChannel(String, String)
+     */
+    public Storj setScratchDirectory(java.io.File dir) {
+        scratchDir = dir;
+        return this;
+    }
+
+    /**
+     * Configure a cache for the bucket metadata.
+     * 
+     * <p>
+     * With a cache, {@link #getBucket(String, GetBucketCallback)} and
+     * {@link #getBucketId(String, GetBucketIdCallback)} are answered from memory
+     * while the cached entry is fresh, without a request to the Bridge. The
+     * callback of a cache hit is invoked before the method returns, on the
+     * calling thread or on the callback executor if one is set.
+     * </p>
+     * 
+     * <p>
+     * There is no cache by default.
+     * </p>
+     * 
+     * @param cache
+     *            the bucket cache, or <code>null</code> to disable caching
+     * @return a reference to this Storj object
+     */
+    public Storj setBucketCache(BucketCache cache) {
+        bucketCache = cache;
+        return this;
+    }
+
+    /**
+     * Returns the cache for the bucket metadata.
+     * 
+     * @return the bucket cache, or <code>null</code> if caching is disabled
+     * @see #setBucketCache(BucketCache)
+     */
+    public BucketCache getBucketCache() {
+        return bucketCache;
+    }
+
+    /**
+     * Configure a cache for resolving file names to file ids.
+     * 
+     * <p>
+     * With a cache, {@link #getFileId(String, String, GetFileIdCallback)} and
+     * {@link #getFileIds(String, String[], GetFileIdCallback)} are answered from
+     * memory for known file names, without a request to the Bridge. The
+     * callback of a cache hit is invoked before the method returns, on the
+     * calling thread or on the callback executor if one is set.
+     * </p>
+     * 
+     * <p>
+     * There is no cache by default.
+     * </p>
+     * 
+     * @param cache
+     *            the file id cache, or <code>null</code> to disable caching
+     * @return a reference to this Storj object
+     */
+    public Storj setFileIdCache(FileIdCache cache) {
+        fileIdCache = cache;
+        return this;
+    }
+
+    /**
+     * Returns the cache for resolving file names to file ids.
+     * 
+     * @return the file id cache, or <code>null</code> if caching is disabled
+     * @see #setFileIdCache(FileIdCache)
+     */
+    public FileIdCache getFileIdCache() {
+        return fileIdCache;
+    }
+
+    /**
+     * Configure the default options for uploading files.
+     * 
+     * <p>
+     * The default options apply to all <code>uploadFile()</code> and
+     * <code>uploadFiles()</code> methods that do not take an
+     * {@link UploadOptions} parameter.
+     * </p>
+     * 
+     * @param options
+     *            the upload options, or <code>null</code> to restore
+     *            {@link UploadOptions#DEFAULT}
+     * @return a reference to this Storj object
+     */
+    public Storj setUploadOptions(UploadOptions options) {
+        uploadOptions = (options == null) ? UploadOptions.DEFAULT : options;
+        return this;
+    }
+
+    /**
+     * Returns the default options for uploading files.
+     * 
+     * @return the upload options
+     * @see #setUploadOptions(UploadOptions)
+     */
+    public UploadOptions getUploadOptions() {
+        return uploadOptions;
+    }
+
+    /**
+     * Configure the default throttling of the progress callbacks of downloads
+     * and uploads.
+     * 
+     * <p>
+     * The default applies to all transfers started afterwards that do not
+     * specify a throttle of their own.
+     * </p>
+     * 
+     * @param throttle
+     *            the progress throttle, or <code>null</code> to restore
+     *            {@link ProgressThrottle#NONE}
+     * @return a reference to this Storj object
+     */
+    public Storj setProgressThrottle(ProgressThrottle throttle) {
+        progressThrottle = (throttle == null) ? ProgressThrottle.NONE : throttle;
+        return this;
+    }
+
+    /**
+     * Returns the default throttling of the progress callbacks.
+     * 
+     * @return the progress throttle
+     * @see #setProgressThrottle(ProgressThrottle)
+     */
+    public ProgressThrottle getProgressThrottle() {
+        return progressThrottle;
+    }
+
+    /**
+     * Configure a table in direct memory for tracking the progress of
+     * transfers.
+     * 
+     * <p>
+     * Downloads and uploads started afterwards write their progress to a slot
+     * of the table instead of invoking <code>onProgress()</code>. Transfers
+     * already in progress are not affected.
+     * </p>
+     * 
+     * @param table
+     *            the progress table, or <code>null</code> to report the progress
+     *            of new transfers through the callbacks again
+     * @return a reference to this Storj object
+     */
+    public Storj setProgressTable(ProgressTable table) {
+        progressTable = table;
+        return this;
+    }
+
+    /**
+     * Returns the table tracking the progress of transfers.
+     * 
+     * @return the progress table, or <code>null</code> if none is configured
+     * @see #setProgressTable(ProgressTable)
+     */
+    public ProgressTable getProgressTable() {
+        return progressTable;
+    }
+
+    /**
+     * Configure a scheduler limiting the concurrency of the
+     * <code>downloadFiles()</code> and <code>uploadFiles()</code> methods.
+     * 
+     * <p>
+     * While a scheduler is configured, these methods queue the transfers in it
+     * and return tickets instead of pointers to the native transfer states. The
+     * tickets can be passed to {@link #cancelDownload(long)} and
+     * {@link #cancelUpload(long)}, both before and after the transfer starts.
+     * The single file <code>downloadFile()</code> and <code>uploadFile()</code>
+     * methods taking {@link DownloadOptions} or {@link UploadOptions} with a
+     * priority are queued in the scheduler too. Without a priority they start
+     * immediately, unless a {@link BandwidthLimiter} or a {@link RetryPolicy}
+     * applies, in which case they are queued in an internal scheduler without a
+     * concurrency limit.
+     * </p>
+     * 
+     * @param scheduler
+     *            the transfer scheduler, or <code>null</code> to start all
+     *            transfers immediately
+     * @return a reference to this Storj object
+     */
+    public Storj setTransferScheduler(TransferScheduler scheduler) {
+        transferScheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Returns the scheduler limiting the concurrency of transfers.
+     * 
+     * @return the transfer scheduler, or <code>null</code> if none is configured
+     * @see #setTransferScheduler(TransferScheduler)
+     */
+    public TransferScheduler getTransferScheduler() {
+        return transferScheduler;
+    }
+
+    /**
+     * Configure a limiter for the upload and download bandwidth of the
+     * transfers.
+     * 
+     * <p>
+     * Transfers started afterwards count their bytes in the limiter, unless
+     * their options specify another one. The limits are enforced only when the
+     * transfers start: they are queued, in an unlimited scheduler if none is
+     * configured, and held back while the limiter is in debt. Running transfers
+     * are not throttled.
+     * </p>
+     * 
+     * @param limiter
+     *            the bandwidth limiter, or <code>null</code> for no limits
+     * @return a reference to this Storj object
+     * @see BandwidthLimiter
+     */
+    public Storj setBandwidthLimiter(BandwidthLimiter limiter) {
+        bandwidthLimiter = limiter;
+        return this;
+    }
+
+    /**
+     * Returns the limiter for the bandwidth of the transfers.
+     * 
+     * @return the bandwidth limiter, or <code>null</code> if none is configured
+     * @see #setBandwidthLimiter(BandwidthLimiter)
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Configure a policy for retrying requests and transfers failed with
+     * transient errors.
+     * 
+     * <p>
+     * Requests to the Bridge and the transfers of files started afterwards are
+     * retried after a delay, and only the last error is reported to the
+     * callback. While a retry policy is configured, all downloads and uploads
+     * return tickets instead of pointers to the native transfer states, as a
+     * retried transfer gets a new state. The tickets can be passed to
+     * {@link #cancelDownload(long)} and {@link #cancelUpload(long)}, also while
+     * waiting for a retry. Downloads to channels and channels opened with
+     * {@link #openChannel(String, String)} are retried as well, as nothing is
+     * written to them before their scratch file is complete.
+     * </p>
+     * 
+     * @param policy
+     *            the retry policy, or <code>null</code> to report all errors
+     *            right away
+     * @return a reference to this Storj object
+     * @see RetryPolicy
+     */
+    public Storj setRetryPolicy(RetryPolicy policy) {
+        retryPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Returns the policy for retrying failed requests and transfers.
+     * 
+     * @return the retry policy, or <code>null</code> if none is configured
+     * @see #setRetryPolicy(RetryPolicy)
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Configures a circuit breaker for the requests to the Bridge.
+     * 
+     * <p>
+     * The outcome and the latency of the requests to the Bridge are recorded
+     * in the circuit breaker. While it is open, requests and transfers fail
+     * right away with {@link #CIRCUIT_OPEN}, except transfers queued in a
+     * {@link TransferScheduler}, which wait until it closes. The breaker probes
+     * the Bridge with {@link #getInfo(GetInfoCallback)} on a daemon thread to
+     * find out when it has recovered.
+     * </p>
+     * 
+     * <p>
+     * A circuit breaker can be shared between Storj objects connecting to the
+     * same Bridge, but not to different Bridges. It then probes with any of
+     * them until they are destroyed.
+     * </p>
+     * 
+     * @param breaker
+     *            the circuit breaker, or <code>null</code> to always send the
+     *            requests
+     * @return a reference to this Storj object
+     * @see CircuitBreaker
+     */
+    public synchronized Storj setCircuitBreaker(CircuitBreaker breaker) {
+        if (circuitBreaker != null) {
+            circuitBreaker.removeProbe(breakerProbe);
+            breakerProbe = null;
+        }
+        if (breaker != null) {
+            breakerProbe = new BreakerProbe(this, breaker);
+            breaker.addProbe(breakerProbe);
+        }
+        circuitBreaker = breaker;
+        return this;
+    }
+
+    /**
+     * Returns the circuit breaker for the requests to the Bridge.
+     * 
+     * @return the circuit breaker, or <code>null</code> if none is configured
+     * @see #setCircuitBreaker(CircuitBreaker)
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Configure an executor for running the callbacks.
+     * 
+     * <p>
+     * By default callbacks run on the event loop thread, so a slow callback
+     * delays all other requests and file transfers of this Storj object. With
+     * an executor the callbacks are handed off through a bounded queue and run
+     * one at a time on the executor, in the order they were invoked by the
+     * native library.
+     * </p>
+     * 
+     * <p>
+     * The executor is used for requests made after this call. It does not
+     * apply to {@link #getInfo(GetInfoCallback)} and
+     * {@link #register(String, String, RegisterCallback)}, which run on the
+     * calling thread.
+     * </p>
+     * 
+     * @param executor
+     *            the executor to run the callbacks, or <code>null</code> to run
+     *            them on the event loop thread
+     * @param queueCapacity
+     *            the maximum number of callbacks waiting for the executor
+     * @param policy
+     *            the policy to apply when the queue is full
+     * @return a reference to this Storj object
+     * @see OverflowPolicy
+     */
+    public Storj setCallbackExecutor(Executor executor, int queueCapacity, OverflowPolicy policy) {
+        if (executor == null) {
+            dispatcher = CallbackDispatcher.DIRECT;
+        } else {
+            if (queueCapacity <= 0) {
+                throw new IllegalArgumentException("queueCapacity must be positive");
+            }
+            if (policy == null) {
+                throw new NullPointerException("policy");
+            }
+            dispatcher = new CallbackDispatcher(executor, queueCapacity, policy);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of callbacks waiting to be run by the callback executor.
+     * 
+     * @return the size of the callback queue, or <code>0</code> if no callback
+     *         executor is configured
+     * @see #setCallbackExecutor(Executor, int, OverflowPolicy)
+     */
+    public int getCallbackQueueSize() {
+        return dispatcher.getQueueSize();
+    }
+
     /**
      * Returns the current unix timestamp in milliseconds.
      * 
@@ -633,6 +1196,8 @@ public class Storj {
             return "Internal Server Error";
         case HTTP_SERVICE_UNAVAILABLE:
             return "Service Unavailable";
+        case CIRCUIT_OPEN:
+            return "Circuit Breaker Open";
         default:
             return _getErrorMessage(code);
         }
@@ -700,10 +1265,26 @@ public class Storj {
      * @see #setConfigDirectory(java.io.File)
      */
     public Keys getKeys(String passphrase) {
-        if (keys == null) {
-            keys = _exportKeys(getAuthFile().toString(), passphrase);
+        Credentials credentials = this.credentials;
+        if (credentials == null || !credentials.isPresent()) {
+            credentials = loadCredentials(passphrase);
         }
-        return keys;
+        return credentials.toKeys();
+    }
+
+    /**
+     * Discards the keys held in memory, so they are read again from the
+     * authentication file when needed.
+     * 
+     * <p>
+     * The keys are read from the authentication file only once and kept in
+     * memory until {@link #importKeys(Keys, String)} or {@link #deleteKeys()}
+     * is called. Call this method when the authentication file has been
+     * changed by another process.
+     * </p>
+     */
+    public void reloadKeys() {
+        replaceCredentials(null);
     }
 
     /**
@@ -727,12 +1308,21 @@ public class Storj {
         boolean success = _writeAuthFile(getAuthFile().toString(), keys.getUser(), keys.getPass(), keys.getMnemonic(),
                 passphrase);
         if (success) {
-            this.keys = keys;
-            // re-init Storj env
-            destroyEnv(env);
-            env = initEnv(keys);
-            // start the event loop runner if not running yet
-            startLooper();
+            replaceCredentials(Credentials.of(keys));
+            // re-init Storj env, the event loop runner is bound to the old one
+            long oldEnv;
+            synchronized (envLock) {
+                oldEnv = env;
+                env = 0;
+            }
+            if (stopLooper()) {
+                destroyEnv(oldEnv);
+            }
+            long newEnv = initEnv(keys);
+            synchronized (envLock) {
+                env = newEnv;
+            }
+            startLooper();
         }
         return success;
     }
@@ -751,7 +1341,7 @@ public class Storj {
     public boolean deleteKeys() {
         boolean success = getAuthFile().delete();
         if (success) {
-            keys = null;
+            replaceCredentials(Credentials.NONE);
         }
         return success;
     }
@@ -913,7 +1503,20 @@ public class Storj {
      */
     public void getBuckets(GetBucketsCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _getBuckets(env, callback);
+        BucketCache cache = bucketCache;
+        final GetBucketsCallback target = (cache == null) ? dispatcher.wrap(callback)
+                : cache.wrap(dispatcher.wrap(callback));
+        new Request(true) {
+            @Override
+            void reject() {
+                target.onError(CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _getBuckets(env, wrap(target));
+            }
+        }.start();
     }
 
     /**
@@ -929,7 +1532,7 @@ public class Storj {
      */
     public void getBucket(String bucketId, GetBucketCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _getBucket(env, bucketId, callback);
+        requestBucket(bucketId, callback);
     }
 
     /**
@@ -954,7 +1557,7 @@ public class Storj {
     public void getBuckets(String bucketIds[], GetBucketCallback callback) throws KeysNotFoundException {
         checkEnv();
         for (String bucketId : bucketIds) {
-            _getBucket(env, bucketId, callback);
+            requestBucket(bucketId, callback);
         }
     }
 
@@ -971,7 +1574,7 @@ public class Storj {
      */
     public void getBucketId(String bucketName, GetBucketIdCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _getBucketId(env, bucketName, callback);
+        requestBucketId(bucketName, callback);
     }
 
     /**
@@ -996,7 +1599,7 @@ public class Storj {
     public void getBucketIds(String[] bucketNames, GetBucketIdCallback callback) throws KeysNotFoundException {
         checkEnv();
         for (String bucketName : bucketNames) {
-            _getBucketId(env, bucketName, callback);
+            requestBucketId(bucketName, callback);
         }
     }
 
@@ -1013,7 +1616,7 @@ public class Storj {
      */
     public void createBucket(String bucketName, CreateBucketCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _createBucket(env, bucketName, callback);
+        requestCreateBucket(bucketName, callback);
     }
 
     /**
@@ -1038,7 +1641,7 @@ public class Storj {
     public void createBuckets(String[] bucketNames, final CreateBucketCallback callback) throws KeysNotFoundException {
         checkEnv();
         for (final String bucketName : bucketNames) {
-            _createBucket(env, bucketName, callback);
+            requestCreateBucket(bucketName, callback);
         }
     }
 
@@ -1070,7 +1673,7 @@ public class Storj {
      */
     public void deleteBucket(String bucketId, DeleteBucketCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _deleteBucket(env, bucketId, callback);
+        requestDeleteBucket(bucketId, callback);
     }
 
     /**
@@ -1117,7 +1720,7 @@ public class Storj {
     public void deleteBuckets(String[] bucketIds, DeleteBucketCallback callback) throws KeysNotFoundException {
         checkEnv();
         for (String bucketId : bucketIds) {
-            _deleteBucket(env, bucketId, callback);
+            requestDeleteBucket(bucketId, callback);
         }
     }
 
@@ -1149,7 +1752,70 @@ public class Storj {
      */
     public void listFiles(String bucketId, ListFilesCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _listFiles(env, bucketId, callback);
+        requestListFiles(bucketId, callback);
+    }
+
+    /**
+     * Gets a cursor over the files in a bucket that returns them in pages.
+     * 
+     * @param bucket
+     *            a {@link Bucket} object
+     * @param pageSize
+     *            the maximum number of files returned by each call to
+     *            {@link FileCursor#next()}
+     * @param callback
+     *            an implementation of the {@link FileCursorCallback} interface
+     *            to receive the response
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @see #listFiles(String, int, FileCursorCallback)
+     */
+    public void listFiles(Bucket bucket, int pageSize, FileCursorCallback callback) throws KeysNotFoundException {
+        listFiles(bucket.getId(), pageSize, callback);
+    }
+
+    /**
+     * Gets a cursor over the files in a bucket that returns them in pages.
+     * 
+     * <p>
+     * Unlike {@link #listFiles(String, ListFilesCallback)}, no {@link File}
+     * objects are created on the event loop thread. The file list stays in
+     * native memory and each call to {@link FileCursor#next()} creates only the
+     * objects of the next page, so large buckets can be processed without
+     * holding all files on the heap at once.
+     * </p>
+     * 
+     * @param bucketId
+     *            the bucket id
+     * @param pageSize
+     *            the maximum number of files returned by each call to
+     *            {@link FileCursor#next()}
+     * @param callback
+     *            an implementation of the {@link FileCursorCallback} interface
+     *            to receive the response
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @throws IllegalArgumentException
+     *             if <code>pageSize</code> is less than 1
+     */
+    public void listFiles(final String bucketId, final int pageSize, FileCursorCallback callback)
+            throws KeysNotFoundException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        checkEnv();
+        final FileCursorCallback target = dispatcher.wrap(callback);
+        new Request(true) {
+            @Override
+            void reject() {
+                target.onError(bucketId, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _listFilesCursor(env, bucketId, pageSize, wrap(target));
+            }
+        }.start();
     }
 
     /**
@@ -1196,7 +1862,7 @@ public class Storj {
     public void listFiles(String[] bucketIds, ListFilesCallback callback) throws KeysNotFoundException {
         checkEnv();
         for (String bucketId : bucketIds) {
-            _listFiles(env, bucketId, callback);
+            requestListFiles(bucketId, callback);
         }
     }
 
@@ -1232,7 +1898,7 @@ public class Storj {
      */
     public void getFile(String bucketId, String fileId, GetFileCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _getFile(env, bucketId, fileId, callback);
+        requestFile(bucketId, fileId, callback);
     }
 
     /**
@@ -1282,7 +1948,7 @@ public class Storj {
     public void getFiles(String bucketId, String[] fileIds, GetFileCallback callback) throws KeysNotFoundException {
         checkEnv();
         for (String fileId : fileIds) {
-            _getFile(env, bucketId, fileId, callback);
+            requestFile(bucketId, fileId, callback);
         }
     }
 
@@ -1318,7 +1984,7 @@ public class Storj {
      */
     public void getFileId(String bucketId, String fileName, GetFileIdCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _getFileId(env, bucketId, fileName, callback);
+        requestFileId(bucketId, fileName, callback);
     }
 
     /**
@@ -1370,7 +2036,7 @@ public class Storj {
     public void getFileIds(String bucketId, String[] fileNames, GetFileIdCallback callback) throws KeysNotFoundException {
         checkEnv();
         for (String fileName : fileNames) {
-            _getFileId(env, bucketId, fileName, callback);
+            requestFileId(bucketId, fileName, callback);
         }
     }
 
@@ -1406,7 +2072,7 @@ public class Storj {
      */
     public void deleteFile(String bucketId, String fileId, DeleteFileCallback callback) throws KeysNotFoundException {
         checkEnv();
-        _deleteFile(env, bucketId, fileId, callback);
+        requestDeleteFile(bucketId, fileId, callback);
     }
     
     /**
@@ -1456,7 +2122,7 @@ public class Storj {
     public void deleteFiles(String bucketId, String[] fileIds, DeleteFileCallback callback) throws KeysNotFoundException {
         checkEnv();
         for (String fileId : fileIds) {
-            _deleteFile(env, bucketId, fileId, callback);
+            requestDeleteFile(bucketId, fileId, callback);
         }
     }
 
@@ -1507,7 +2173,39 @@ public class Storj {
      * @see #cancelDownload(long)
      */
     public long downloadFile(Bucket bucket, File file, String localPath, DownloadFileCallback callback) throws KeysNotFoundException {
-        return downloadFile(bucket.getId(), file.getId(), localPath, callback);
+        return downloadFile(bucket, file, localPath, DownloadOptions.DEFAULT, callback);
+    }
+
+    /**
+     * Downloads a file to the provided local path with the provided options.
+     * 
+     * <p>
+     * The size of the file is taken from the {@link File} object, so the
+     * download can be preallocated, and it is accounted for when queued in a
+     * {@link TransferScheduler}.
+     * </p>
+     * 
+     * @param bucket
+     *            the {@link Bucket} containing the file
+     * @param file
+     *            the {@link File} to download
+     * @param localPath
+     *            the local path (including file name) to download the file to
+     * @param options
+     *            the download options, or <code>null</code> for
+     *            {@link DownloadOptions#DEFAULT}
+     * @param callback
+     *            an implementation of the {@link DownloadFileCallback} interface to
+     *            receive the download progress
+     * @return a pointer to the download state that can be passed to
+     *         {@link #cancelDownload(long)}
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @see DownloadOptions.Builder#setPreallocate(boolean)
+     */
+    public long downloadFile(Bucket bucket, File file, String localPath, DownloadOptions options,
+            DownloadFileCallback callback) throws KeysNotFoundException {
+        return downloadFile(bucket.getId(), file.getId(), file.getSize(), localPath, options, callback);
     }
 
     /**
@@ -1529,8 +2227,177 @@ public class Storj {
      * @see #cancelDownload(long)
      */
     public long downloadFile(String bucketId, String fileId, String localPath, DownloadFileCallback callback) throws KeysNotFoundException {
+        return downloadFile(bucketId, fileId, localPath, DownloadOptions.DEFAULT, callback);
+    }
+
+    /**
+     * Downloads a file to the provided local path with the provided options.
+     * 
+     * <p>
+     * If the options specify a priority and a {@link TransferScheduler} is
+     * configured, the download is queued in the scheduler and a ticket is
+     * returned instead of a pointer to the download state.
+     * </p>
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileId
+     *            the id of the file to download
+     * @param localPath
+     *            the local path (including file name) to download the file to
+     * @param options
+     *            the options for the download, or <code>null</code> for the
+     *            default options
+     * @param callback
+     *            an implementation of the {@link DownloadFileCallback} interface to
+     *            receive the download progress
+     * @return a pointer to the download state or a ticket that can be passed to
+     *         {@link #cancelDownload(long)}
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @see #setTransferScheduler(TransferScheduler)
+     */
+    public long downloadFile(String bucketId, String fileId, String localPath, DownloadOptions options,
+            DownloadFileCallback callback) throws KeysNotFoundException {
+        return downloadFile(bucketId, fileId, 0, localPath, options, callback);
+    }
+
+    private long downloadFile(String bucketId, String fileId, long size, String localPath, DownloadOptions options,
+            DownloadFileCallback callback) throws KeysNotFoundException {
+        checkEnv();
+        if (options == null) {
+            options = DownloadOptions.DEFAULT;
+        }
+        TransferScheduler scheduler = getScheduler((options.getPriority() != null) ? transferScheduler : null,
+                options.getBandwidthLimiter());
+        if (scheduler != null) {
+            return scheduleDownload(scheduler, bucketId, fileId, size, localPath, options, dispatcher.wrap(callback));
+        }
+        return startDownload(bucketId, fileId, size, localPath, options, dispatcher.wrap(callback));
+    }
+
+    /**
+     * Downloads a range of bytes of a file to the provided channel.
+     * 
+     * <p>
+     * Only the bytes from <code>offset</code> up to
+     * <code>offset + length</code> are written to the channel. If the range
+     * extends past the end of the file, only the bytes up to the end are
+     * written, and nothing is written if it starts past the end.
+     * </p>
+     * 
+     * <p>
+     * The native library can neither fetch a part of a file nor write to a
+     * stream, so the whole file is downloaded to a scratch file first, and
+     * the progress callbacks report the progress of the whole file. The range
+     * is copied to the channel on a separate thread only after the download
+     * has completed, and then the scratch file is deleted. The disk use and
+     * the latency are therefore those of downloading the whole file with
+     * {@link #downloadFile(String, String, String, DownloadFileCallback)} and
+     * copying the range afterwards. The channel should be in blocking mode,
+     * and it is not closed after the download.
+     * </p>
+     * 
+     * <p>
+     * The <code>localPath</code> passed to
+     * {@link DownloadFileCallback#onComplete(String, String)} is
+     * <code>null</code>. The download can be canceled with
+     * {@link #cancelDownload(long)} until the copying starts.
+     * </p>
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileId
+     *            the id of the file to download
+     * @param offset
+     *            the position of the first byte to write
+     * @param length
+     *            the maximum number of bytes to write
+     * @param channel
+     *            the channel to write the bytes to
+     * @param callback
+     *            an implementation of the {@link DownloadFileCallback} interface to
+     *            receive the download progress
+     * @return a pointer to the download state or a ticket that can be passed to
+     *         {@link #cancelDownload(long)}
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @throws IllegalArgumentException
+     *             if <code>offset</code> or <code>length</code> is negative
+     * @see #setScratchDirectory(java.io.File)
+     */
+    public long downloadFile(String bucketId, String fileId, long offset, long length, WritableByteChannel channel,
+            DownloadFileCallback callback) throws KeysNotFoundException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative: " + offset + ", " + length);
+        }
         checkEnv();
-        return _downloadFile(env, bucketId, fileId, localPath, callback);
+
+        DownloadFileCallback delegate = dispatcher.wrap(callback);
+        Path scratch;
+        try {
+            scratch = Files.createTempFile(scratchDir.toPath(), "storj-", ".download");
+        } catch (IOException e) {
+            delegate.onError(fileId, STORJ_FILE_WRITE_ERROR, e.getMessage());
+            return 0;
+        }
+
+        StreamingDownload download = new StreamingDownload(scratch, channel, offset, length, delegate,
+                getStreamExecutor());
+        return downloadScratchFile(bucketId, fileId, scratch, download);
+    }
+
+    /**
+     * Opens a read-only channel for random access to a file.
+     * 
+     * <p>
+     * The download of the file to a scratch file starts right away. Reading
+     * from the channel or querying its size waits until the download is
+     * complete, and throws an {@link IOException} if the download fails. The
+     * reads are then served from the scratch file. The whole file occupies the
+     * scratch directory until the channel is closed, which means it is held in
+     * memory if the scratch directory is on a tmpfs such as
+     * <code>/dev/shm</code>.
+     * </p>
+     * 
+     * <p>
+     * The channel must be closed to delete the scratch file. Closing the
+     * channel while the file is still being downloaded cancels the download.
+     * </p>
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the file
+     * @param fileId
+     *            the id of the file to open
+     * @return a new read-only seekable channel
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @throws IOException
+     *             if the scratch file cannot be created
+     * @see #setScratchDirectory(java.io.File)
+     */
+    public SeekableByteChannel openChannel(String bucketId, String fileId) throws KeysNotFoundException, IOException {
+        checkEnv();
+
+        Path scratch = Files.createTempFile(scratchDir.toPath(), "storj-", ".download");
+        RemoteFileChannel channel = new RemoteFileChannel(scratch);
+        channel.setDownload(this, downloadScratchFile(bucketId, fileId, scratch, channel));
+        return channel;
+    }
+
+    /**
+     * Downloads a file to a scratch file. Like the downloads to local files,
+     * it is queued in the internal scheduler while a retry policy or a
+     * bandwidth limiter is configured. The callback runs on the event loop
+     * thread.
+     */
+    private long downloadScratchFile(String bucketId, String fileId, Path scratch, DownloadFileCallback callback) {
+        DownloadOptions options = DownloadOptions.DEFAULT;
+        TransferScheduler scheduler = getScheduler(null, options.getBandwidthLimiter());
+        if (scheduler != null) {
+            return scheduleDownload(scheduler, bucketId, fileId, 0, scratch.toString(), options, callback);
+        }
+        return startDownload(bucketId, fileId, 0, scratch.toString(), options, callback);
     }
 
     /**
@@ -1598,7 +2465,11 @@ public class Storj {
      * @see #cancelDownload(long)
      */
     public long[] downloadFiles(Bucket bucket, File[] files, String[] localPaths, DownloadFileCallback callback) throws KeysNotFoundException {
-        return downloadFiles(bucket.getId(), getFileIds(files), localPaths, callback);
+        long[] sizes = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            sizes[i] = files[i].getSize();
+        }
+        return downloadFiles(bucket.getId(), getFileIds(files), sizes, localPaths, DownloadOptions.DEFAULT, callback);
     }
 
     /**
@@ -1627,12 +2498,62 @@ public class Storj {
      * @see #cancelDownload(long)
      */
     public long[] downloadFiles(String bucketId, String[] fileIds, String[] localPaths, DownloadFileCallback callback) throws KeysNotFoundException {
+        return downloadFiles(bucketId, fileIds, null, localPaths, DownloadOptions.DEFAULT, callback);
+    }
+
+    /**
+     * Downloads the specified list of files to the provided local paths with
+     * the provided options.
+     * 
+     * <p>
+     * The options apply to each of the downloads. If a
+     * {@link TransferScheduler} is configured, the downloads are queued in it
+     * with the priority and tenant of the options.
+     * </p>
+     * 
+     * @param bucketId
+     *            the id of the bucket containing the files
+     * @param fileIds
+     *            an array of file ids to download
+     * @param localPaths
+     *            an array of local paths (including file name) to download the
+     *            files to
+     * @param options
+     *            the options for the downloads, or <code>null</code> for the
+     *            default options
+     * @param callback
+     *            an implementation of the {@link DownloadFileCallback} interface to
+     *            receive the download progress
+     * @return an array with pointers to the download state or tickets that can
+     *         be passed to {@link #cancelDownload(long)}
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @see #setTransferScheduler(TransferScheduler)
+     */
+    public long[] downloadFiles(String bucketId, String[] fileIds, String[] localPaths, DownloadOptions options,
+            DownloadFileCallback callback) throws KeysNotFoundException {
+        return downloadFiles(bucketId, fileIds, null, localPaths, options, callback);
+    }
+
+    private long[] downloadFiles(String bucketId, String[] fileIds, long[] sizes, String[] localPaths,
+            DownloadOptions options, DownloadFileCallback callback) throws KeysNotFoundException {
         checkEnv();
+        if (options == null) {
+            options = DownloadOptions.DEFAULT;
+        }
 
         long[] states = new long[fileIds.length];
+        TransferScheduler scheduler = getScheduler(transferScheduler, options.getBandwidthLimiter());
 
         for (int i = 0; i < fileIds.length; i++) {
-            states[i] = _downloadFile(env, bucketId, fileIds[i], localPaths[i], callback);
+            long size = (sizes == null) ? 0 : sizes[i];
+            if (scheduler == null) {
+                states[i] = startDownload(bucketId, fileIds[i], size, localPaths[i], options,
+                        dispatcher.wrap(callback));
+            } else {
+                states[i] = scheduleDownload(scheduler, bucketId, fileIds[i], size, localPaths[i], options,
+                        dispatcher.wrap(callback));
+            }
         }
 
         return states;
@@ -1646,14 +2567,21 @@ public class Storj {
      *            <code>downloadFile()</code> methods
      * 
      * @return <code>true</code> if the download was canceled successfully,
-     *         <code>false</code> otherwise
+     *         <code>false</code> otherwise, e.g. if the download has already
+     *         finished
      * 
      * @see #downloadFile(Bucket, File, DownloadFileCallback)
      * @see #downloadFile(Bucket, File, String, DownloadFileCallback)
      * @see #downloadFile(String, String, String, DownloadFileCallback)
      */
     public boolean cancelDownload(long downloadState) {
-        return _cancelDownload(downloadState);
+        if (downloadState < 0) {
+            return cancelScheduled(downloadState, true);
+        }
+        synchronized (transfers) {
+            Transfer transfer = transfers.get(downloadState);
+            return transfer != null && transfer.download && _cancelDownload(downloadState);
+        }
     }
 
     /**
@@ -1755,8 +2683,41 @@ public class Storj {
      * @see #cancelUpload(long)
      */
     public long uploadFile(String bucketId, String fileName, String localPath, UploadFileCallback callback) throws KeysNotFoundException {
+        return uploadFile(bucketId, fileName, localPath, uploadOptions, callback);
+    }
+
+    /**
+     * Uploads a file to a bucket with the provided options.
+     * 
+     * @param bucketId
+     *            the id of the bucket to upload the file to
+     * @param fileName
+     *            the name to assign to the uploaded file
+     * @param localPath
+     *            the local path (including file name) of the file to upload
+     * @param options
+     *            the options for this upload, or <code>null</code> for the
+     *            default options
+     * @param callback
+     *            an implementation of the {@link UploadFileCallback} interface to
+     *            receive the upload progress
+     * @return a pointer to the upload state that can be passed to
+     *         {@link #cancelUpload(long)}
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @see #cancelUpload(long)
+     * @see #setUploadOptions(UploadOptions)
+     */
+    public long uploadFile(String bucketId, String fileName, String localPath, UploadOptions options, UploadFileCallback callback) throws KeysNotFoundException {
         checkEnv();
-        return _uploadFile(env, bucketId, fileName, localPath, callback);
+        TransferScheduler scheduler = getScheduler(
+                (options != null && options.getPriority() != null) ? transferScheduler : null,
+                ((options == null) ? uploadOptions : options).getBandwidthLimiter());
+        if (scheduler != null) {
+            return scheduleUpload(scheduler, bucketId, fileName, localPath, options,
+                    wrapUpload(bucketId, fileName, callback));
+        }
+        return startUpload(bucketId, fileName, localPath, options, wrapUpload(bucketId, fileName, callback));
     }
 
     /**
@@ -1887,12 +2848,50 @@ public class Storj {
      * @see #cancelUpload(long)
      */
     public long[] uploadFiles(String bucketId, String[] fileNames, String[] localPaths, UploadFileCallback callback) throws KeysNotFoundException {
+        return uploadFiles(bucketId, fileNames, localPaths, uploadOptions, callback);
+    }
+
+    /**
+     * Uploads the specified list of files with the provided options.
+     * 
+     * <p>
+     * This method will upload all files in parallel. The options apply to each
+     * of the uploads.
+     * </p>
+     * 
+     * @param bucketId
+     *            the id of the bucket to upload the files to
+     * @param fileNames
+     *            an array of names to assign to the uploaded files
+     * @param localPaths
+     *            the local paths (including file name) of the files to upload
+     * @param options
+     *            the options for the uploads, or <code>null</code> for the
+     *            default options
+     * @param callback
+     *            an implementation of the {@link UploadFileCallback} interface to
+     *            receive the upload progress
+     * @return an array of pointers to the upload state of each file that can be
+     *         passed to {@link #cancelUpload(long)}
+     * @throws KeysNotFoundException
+     *             if the user's keys have not been imported yet
+     * @see #cancelUpload(long)
+     * @see #setUploadOptions(UploadOptions)
+     */
+    public long[] uploadFiles(String bucketId, String[] fileNames, String[] localPaths, UploadOptions options, UploadFileCallback callback) throws KeysNotFoundException {
         checkEnv();
 
         long[] states = new long[fileNames.length];
+        TransferScheduler scheduler = getScheduler(transferScheduler,
+                ((options == null) ? uploadOptions : options).getBandwidthLimiter());
 
         for (int i = 0; i < fileNames.length; i++) {
-            states[i] = _uploadFile(env, bucketId, fileNames[i], localPaths[i], callback);
+            UploadFileCallback delegate = wrapUpload(bucketId, fileNames[i], callback);
+            if (scheduler == null) {
+                states[i] = startUpload(bucketId, fileNames[i], localPaths[i], options, delegate);
+            } else {
+                states[i] = scheduleUpload(scheduler, bucketId, fileNames[i], localPaths[i], options, delegate);
+            }
         }
 
         return states;
@@ -1906,7 +2905,8 @@ public class Storj {
      *            <code>uploadFile()</code> methods
      * 
      * @return <code>true</code> if the upload was canceled successfully,
-     *         <code>false</code> otherwise
+     *         <code>false</code> otherwise, e.g. if the upload has already
+     *         finished
      * 
      * @see #uploadFile(Bucket, String, UploadFileCallback)
      * @see #uploadFile(String, String, UploadFileCallback)
@@ -1914,7 +2914,530 @@ public class Storj {
      * @see #uploadFile(String, String, String, UploadFileCallback)
      */
     public boolean cancelUpload(long uploadState) {
-        return _cancelUpload(uploadState);
+        if (uploadState < 0) {
+            return cancelScheduled(uploadState, false);
+        }
+        synchronized (transfers) {
+            Transfer transfer = transfers.get(uploadState);
+            return transfer != null && !transfer.download && _cancelUpload(uploadState);
+        }
+    }
+
+    private void requestBucket(final String bucketId, GetBucketCallback callback) {
+        BucketCache cache = bucketCache;
+        final GetBucketCallback target;
+        if (cache == null) {
+            target = dispatcher.wrap(callback);
+        } else {
+            Bucket bucket = cache.getBucket(bucketId);
+            if (bucket != null) {
+                dispatcher.wrap(callback).onBucketReceived(bucket);
+                return;
+            }
+            target = cache.wrap(dispatcher.wrap(callback));
+        }
+
+        new Request(true) {
+            @Override
+            void reject() {
+                target.onError(bucketId, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _getBucket(env, bucketId, wrap(target));
+            }
+        }.start();
+    }
+
+    private void requestBucketId(final String bucketName, GetBucketIdCallback callback) {
+        BucketCache cache = bucketCache;
+        final GetBucketIdCallback target;
+        if (cache == null) {
+            target = dispatcher.wrap(callback);
+        } else {
+            String bucketId = cache.getBucketId(bucketName);
+            if (bucketId != null) {
+                dispatcher.wrap(callback).onBucketIdReceived(bucketName, bucketId);
+                return;
+            }
+            target = cache.wrap(dispatcher.wrap(callback));
+        }
+
+        new Request(true) {
+            @Override
+            void reject() {
+                target.onError(bucketName, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _getBucketId(env, bucketName, wrap(target));
+            }
+        }.start();
+    }
+
+    private void requestCreateBucket(final String bucketName, CreateBucketCallback callback) {
+        BucketCache cache = bucketCache;
+        final CreateBucketCallback target = (cache == null) ? dispatcher.wrap(callback)
+                : cache.wrap(dispatcher.wrap(callback));
+        new Request(false) {
+            @Override
+            void reject() {
+                target.onError(bucketName, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _createBucket(env, bucketName, wrap(target));
+            }
+        }.start();
+    }
+
+    private void requestDeleteBucket(final String bucketId, DeleteBucketCallback callback) {
+        BucketCache cache = bucketCache;
+        final DeleteBucketCallback target;
+        if (cache == null) {
+            target = dispatcher.wrap(callback);
+        } else {
+            // stop serving the bucket while it is being deleted
+            cache.invalidate(bucketId);
+            target = cache.wrap(dispatcher.wrap(callback));
+        }
+        new Request(false) {
+            @Override
+            void reject() {
+                target.onError(bucketId, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _deleteBucket(env, bucketId, wrap(target));
+            }
+        }.start();
+
+        FileIdCache fileCache = fileIdCache;
+        if (fileCache != null) {
+            fileCache.invalidateBucket(bucketId);
+        }
+    }
+
+    private void requestListFiles(final String bucketId, ListFilesCallback callback) {
+        FileIdCache cache = fileIdCache;
+        final ListFilesCallback target = (cache == null) ? dispatcher.wrap(callback)
+                : cache.wrap(bucketId, dispatcher.wrap(callback));
+        new Request(true) {
+            @Override
+            void reject() {
+                target.onError(bucketId, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _listFiles(env, bucketId, wrap(target));
+            }
+        }.start();
+    }
+
+    private void requestFile(final String bucketId, final String fileId, GetFileCallback callback) {
+        final GetFileCallback target = dispatcher.wrap(callback);
+        new Request(true) {
+            @Override
+            void reject() {
+                target.onError(fileId, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _getFile(env, bucketId, fileId, wrap(target));
+            }
+        }.start();
+    }
+
+    private void requestFileId(final String bucketId, final String fileName, GetFileIdCallback callback) {
+        FileIdCache cache = fileIdCache;
+        final GetFileIdCallback target;
+        if (cache == null) {
+            target = dispatcher.wrap(callback);
+        } else {
+            String fileId = cache.getFileId(bucketId, fileName);
+            if (fileId != null) {
+                dispatcher.wrap(callback).onFileIdReceived(fileName, fileId);
+                return;
+            }
+            target = cache.wrap(bucketId, dispatcher.wrap(callback));
+        }
+
+        new Request(true) {
+            @Override
+            void reject() {
+                target.onError(fileName, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _getFileId(env, bucketId, fileName, wrap(target));
+            }
+        }.start();
+    }
+
+    private void requestDeleteFile(final String bucketId, final String fileId, DeleteFileCallback callback) {
+        FileIdCache cache = fileIdCache;
+        final DeleteFileCallback target;
+        if (cache == null) {
+            target = dispatcher.wrap(callback);
+        } else {
+            // stop serving the file while it is being deleted
+            cache.remove(bucketId, fileId);
+            target = cache.wrap(bucketId, dispatcher.wrap(callback));
+        }
+        new Request(false) {
+            @Override
+            void reject() {
+                target.onError(fileId, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            }
+
+            @Override
+            void submit() {
+                _deleteFile(env, bucketId, fileId, wrap(target));
+            }
+        }.start();
+    }
+
+    private UploadFileCallback wrapUpload(String bucketId, String fileName, UploadFileCallback callback) {
+        FileIdCache cache = fileIdCache;
+        if (cache == null) {
+            return dispatcher.wrap(callback);
+        }
+        return cache.wrap(bucketId, fileName, dispatcher.wrap(callback));
+    }
+
+    private long startDownload(String bucketId, String fileId, long size, String localPath, DownloadOptions options,
+            final DownloadFileCallback delegate) {
+        if (options == null) {
+            options = DownloadOptions.DEFAULT;
+        }
+        ProgressThrottle throttle = options.getProgressThrottle();
+        if (throttle == null) {
+            throttle = progressThrottle;
+        }
+        BandwidthLimiter limiter = getBandwidthLimiter(options.getBandwidthLimiter());
+        final CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.allowCall()) {
+            delegate.onError(fileId, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            return 0;
+        }
+        final Transfer transfer = newTransfer(true, limiter);
+
+        // runs on the event loop thread, before the native state is released
+        DownloadFileCallback tracker = new DownloadFileCallback() {
+            @Override
+            public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+                delegate.onProgress(fileId, progress, downloadedBytes, totalBytes);
+            }
+
+            @Override
+            public void onComplete(String fileId, String localPath) {
+                finishTransfer(transfer);
+                recordTransfer(breaker, NO_ERROR);
+                delegate.onComplete(fileId, localPath);
+            }
+
+            @Override
+            public void onError(String fileId, int code, String message) {
+                finishTransfer(transfer);
+                recordTransfer(breaker, code);
+                delegate.onError(fileId, code, message);
+            }
+        };
+
+        // not called under the lock, as failures are reported synchronously
+        long state = _downloadFile(env, bucketId, fileId, localPath, options.isPreallocate() ? size : 0,
+                throttle.getMinIntervalMillis(), throttle.getMinBytes(), transfer.getProgressBuffer(), transfer.slot,
+                transfer.getLimiterCounters(), tracker);
+        return registerTransfer(transfer, state);
+    }
+
+    private long startUpload(String bucketId, String fileName, String localPath, UploadOptions options,
+            final UploadFileCallback delegate) {
+        if (options == null) {
+            options = uploadOptions;
+        }
+        ProgressThrottle throttle = options.getProgressThrottle();
+        if (throttle == null) {
+            throttle = progressThrottle;
+        }
+        BandwidthLimiter limiter = getBandwidthLimiter(options.getBandwidthLimiter());
+        final CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.allowCall()) {
+            delegate.onError(localPath, CIRCUIT_OPEN, getErrorMessage(CIRCUIT_OPEN));
+            return 0;
+        }
+        final Transfer transfer = newTransfer(false, limiter);
+
+        // runs on the event loop thread, before the native state is released
+        UploadFileCallback tracker = new UploadFileCallback() {
+            @Override
+            public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+                delegate.onProgress(filePath, progress, uploadedBytes, totalBytes);
+            }
+
+            @Override
+            public void onComplete(String filePath, File file) {
+                finishTransfer(transfer);
+                recordTransfer(breaker, NO_ERROR);
+                delegate.onComplete(filePath, file);
+            }
+
+            @Override
+            public void onError(String filePath, int code, String message) {
+                finishTransfer(transfer);
+                recordTransfer(breaker, code);
+                delegate.onError(filePath, code, message);
+            }
+        };
+
+        // not called under the lock, as failures are reported synchronously
+        long state = _uploadFile(env, bucketId, fileName, localPath, options.getPrepareFrameLimit(),
+                options.getPushFrameLimit(), options.getPushShardLimit(), options.isReedSolomon(), options.getIndex(),
+                throttle.getMinIntervalMillis(), throttle.getMinBytes(), transfer.getProgressBuffer(), transfer.slot,
+                transfer.getLimiterCounters(), tracker);
+        return registerTransfer(transfer, state);
+    }
+
+    private long scheduleDownload(TransferScheduler scheduler, final String bucketId, final String fileId,
+            final long size, final String localPath, final DownloadOptions options,
+            final DownloadFileCallback delegate) {
+        TransferScheduler.Job job = new TransferScheduler.Job() {
+            private TransferRetry retry;
+
+            @Override
+            public long start(final TransferScheduler.Task task) {
+                if (retry == null) {
+                    retry = new TransferRetry(task, this, true);
+                }
+                return startDownload(bucketId, fileId, size, localPath, options, new DownloadFileCallback() {
+                    @Override
+                    public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+                        delegate.onProgress(fileId, progress, downloadedBytes, totalBytes);
+                    }
+
+                    @Override
+                    public void onComplete(String fileId, String localPath) {
+                        task.run();
+                        delegate.onComplete(fileId, localPath);
+                    }
+
+                    @Override
+                    public void onError(final String fileId, final int code, final String message) {
+                        retry.failed(code, new Runnable() {
+                            @Override
+                            public void run() {
+                                delegate.onError(fileId, code, message);
+                            }
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public long getStartDelay() {
+                return getTransferDelay(options.getBandwidthLimiter(), BandwidthLimiter.DOWNLOAD);
+            }
+
+            @Override
+            public void canceled() {
+                delegate.onError(fileId, TRANSFER_CANCELED, getErrorMessage(TRANSFER_CANCELED));
+            }
+        };
+        return scheduler.submit(size, options.getPriority(), options.getTenant(), scheduledDownloads, job).getTicket();
+    }
+
+    private long scheduleUpload(TransferScheduler scheduler, final String bucketId, final String fileName,
+            final String localPath, final UploadOptions options, final UploadFileCallback delegate) {
+        long size = new java.io.File(localPath).length();
+        final UploadOptions resolved = (options == null) ? uploadOptions : options;
+        TransferScheduler.Job job = new TransferScheduler.Job() {
+            private TransferRetry retry;
+
+            @Override
+            public long start(final TransferScheduler.Task task) {
+                if (retry == null) {
+                    // an upload creates the file entry in the bridge, so repeating
+                    // it after the request may have been processed could
+                    // create it twice
+                    retry = new TransferRetry(task, this, false);
+                }
+                return startUpload(bucketId, fileName, localPath, options, new UploadFileCallback() {
+                    @Override
+                    public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+                        delegate.onProgress(filePath, progress, uploadedBytes, totalBytes);
+                    }
+
+                    @Override
+                    public void onComplete(String filePath, File file) {
+                        task.run();
+                        delegate.onComplete(filePath, file);
+                    }
+
+                    @Override
+                    public void onError(final String filePath, final int code, final String message) {
+                        retry.failed(code, new Runnable() {
+                            @Override
+                            public void run() {
+                                delegate.onError(filePath, code, message);
+                            }
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public long getStartDelay() {
+                return getTransferDelay(resolved.getBandwidthLimiter(), BandwidthLimiter.UPLOAD);
+            }
+
+            @Override
+            public void canceled() {
+                delegate.onError(localPath, TRANSFER_CANCELED, getErrorMessage(TRANSFER_CANCELED));
+            }
+        };
+        return scheduler.submit(size, resolved.getPriority(), resolved.getTenant(), scheduledUploads, job).getTicket();
+    }
+
+    private boolean cancelScheduled(long ticket, boolean download) {
+        // only tickets of this instance and of the right direction are found
+        TransferScheduler.Task task = (download ? scheduledDownloads : scheduledUploads).get(ticket);
+        if (task == null) {
+            return false;
+        }
+        if (task.cancelIfQueued()) {
+            return true;
+        }
+        long state = task.getState();
+        return state != 0 && (download ? cancelDownload(state) : cancelUpload(state));
+    }
+
+    private void probe(final CircuitBreaker breaker) {
+        final long start = System.nanoTime();
+        try {
+            getInfo(new GetInfoCallback() {
+                @Override
+                public void onInfoReceived(String title, String description, String version, String host) {
+                    breaker.probed(NO_ERROR, System.nanoTime() - start);
+                }
+
+                @Override
+                public void onError(int code, String message) {
+                    breaker.probed(code, System.nanoTime() - start);
+                }
+            });
+        } finally {
+            // ignored if the outcome has been reported, otherwise e.g. the
+            // environment could not be created
+            breaker.probed(STORJ_BRIDGE_REQUEST_ERROR, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the scheduler for a transfer. Without a scheduler, transfers are
+     * still queued in an unlimited one while a retry policy is configured, so
+     * their tickets stay valid when they are restarted, and while a bandwidth
+     * limiter applies, so they are held back while the limiter is in debt.
+     */
+    private TransferScheduler getScheduler(TransferScheduler scheduler, BandwidthLimiter limiter) {
+        if (scheduler != null || (retryPolicy == null && getBandwidthLimiter(limiter) == null)) {
+            return scheduler;
+        }
+        synchronized (this) {
+            if (internalScheduler == null) {
+                internalScheduler = new TransferScheduler(Integer.MAX_VALUE, 0);
+            }
+            return internalScheduler;
+        }
+    }
+
+    /**
+     * Returns how long a scheduled transfer must wait for the bandwidth limiter
+     * and the circuit breaker.
+     */
+    private long getTransferDelay(BandwidthLimiter limiter, int direction) {
+        limiter = getBandwidthLimiter(limiter);
+        CircuitBreaker breaker = circuitBreaker;
+        long delay = (limiter == null) ? 0 : limiter.getStartDelay(direction);
+        return (breaker == null) ? delay : Math.max(delay, breaker.getWaitTime());
+    }
+
+    /**
+     * Records the outcome of a transfer in the circuit breaker. The duration
+     * depends on the size of the file, so transfers never count as slow calls.
+     */
+    private static void recordTransfer(CircuitBreaker breaker, int code) {
+        if (breaker != null) {
+            breaker.record(code, 0);
+        }
+    }
+
+    private BandwidthLimiter getBandwidthLimiter(BandwidthLimiter limiter) {
+        return (limiter != null) ? limiter : bandwidthLimiter;
+    }
+
+    private Transfer newTransfer(boolean download, BandwidthLimiter limiter) {
+        Transfer transfer = new Transfer(download);
+        transfer.limiter = limiter;
+        ProgressTable table = progressTable;
+        if (table != null) {
+            transfer.slot = table.acquire();
+            if (transfer.slot >= 0) {
+                transfer.table = table;
+            }
+        }
+        return transfer;
+    }
+
+    /**
+     * Registers a started transfer by its native state. The event loop may
+     * have already finished the transfer and released the state, in which case
+     * it is not registered.
+     */
+    private long registerTransfer(Transfer transfer, long state) {
+        synchronized (transfers) {
+            if (state != 0 && !transfer.finished) {
+                transfer.state = state;
+                transfers.put(state, transfer);
+                if (transfer.table != null) {
+                    transfer.table.setTransfer(transfer.slot, state);
+                }
+            }
+        }
+        return state;
+    }
+
+    private synchronized Executor getStreamExecutor() {
+        if (streamExecutor == null) {
+            streamExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "storj-stream");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return streamExecutor;
+    }
+
+    private void finishTransfer(Transfer transfer) {
+        synchronized (transfers) {
+            transfer.finished = true;
+            if (transfer.state != 0) {
+                transfers.remove(transfer.state);
+            }
+            if (transfer.table != null) {
+                transfer.table.release(transfer.slot);
+            }
+            transfer.limiter = null;
+        }
     }
 
     private String[] getBucketIds(Bucket[] buckets) {
@@ -1946,17 +3469,48 @@ public class Storj {
         }
     }
 
-    private void checkKeys() throws KeysNotFoundException {
-        if (getKeys("") == null) {
+    private Credentials checkKeys() throws KeysNotFoundException {
+        Credentials credentials = this.credentials;
+        if (credentials == null) {
+            credentials = loadCredentials("");
+        }
+        if (!credentials.isPresent()) {
             throw new KeysNotFoundException();
         }
+        return credentials;
     }
 
     private void checkEnv() throws KeysNotFoundException {
-        checkKeys();
+        Credentials credentials = checkKeys();
         if (env == 0) {
-            env = initEnv(keys);
-            startLooper();
+            synchronized (this) {
+                if (env == 0) {
+                    Keys keys = credentials.toKeys();
+                    if (keys == null) {
+                        // deleted meanwhile
+                        throw new KeysNotFoundException();
+                    }
+                    env = initEnv(keys);
+                    startLooper();
+                }
+            }
+        }
+    }
+
+    private synchronized Credentials loadCredentials(String passphrase) {
+        Credentials credentials = this.credentials;
+        if (credentials == null || !credentials.isPresent()) {
+            credentials = Credentials.of(_exportKeys(getAuthFile().toString(), passphrase));
+            this.credentials = credentials;
+        }
+        return credentials;
+    }
+
+    private synchronized void replaceCredentials(Credentials credentials) {
+        Credentials old = this.credentials;
+        this.credentials = credentials;
+        if (old != null) {
+            old.clear();
         }
     }
 
@@ -1969,6 +3523,8 @@ public class Storj {
     }
 
     private long initEnv(Keys keys) {
+        startNativeRuntime();
+
         long env = _initEnv(proto, host, port, keys.getUser(), keys.getPass(), keys.getMnemonic(), USER_AGENT, null,
                 System.getenv("STORJ_CAINFO"));
 
@@ -1985,21 +3541,76 @@ public class Storj {
         }
     }
 
-    private void startLooper() {
+    private synchronized void startLooper() {
         if (looper == null) {
-            looper = new EventLoopRunner();
+            looper = new EventLoopRunner(env);
             looper.start();
         }
     }
 
+    /**
+     * Stops the event loop runner and waits for its thread to finish.
+     * 
+     * @return <code>true</code> if the caller may release the environment of the
+     *         runner, or <code>false</code> if the runner will release it itself
+     *         (when called from within a callback on the event loop thread)
+     */
+    private synchronized boolean stopLooper() {
+        EventLoopRunner runner = looper;
+        looper = null;
+
+        if (runner == null) {
+            return true;
+        }
+
+        if (Thread.currentThread() == runner) {
+            // cannot join ourselves - let the runner destroy the env on exit
+            runner.destroyOnExit = true;
+            _stopEventLoop(runner.env);
+            return false;
+        }
+
+        _stopEventLoop(runner.env);
+        boolean interrupted = false;
+        while (runner.isAlive()) {
+            try {
+                runner.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
     /**
      * Stops the event loop thread and releases the native resources allocated by
      * the native library.
      */
     public void destroy() {
-        long _env = env;
-        env = 0;
-        destroyEnv(_env);
+        long _env;
+        synchronized (envLock) {
+            _env = env;
+            env = 0;
+        }
+        if (stopLooper()) {
+            destroyEnv(_env);
+        }
+
+        replaceCredentials(null);
+
+        synchronized (this) {
+            if (circuitBreaker != null) {
+                circuitBreaker.removeProbe(breakerProbe);
+            }
+            if (streamExecutor != null) {
+                // lets the copying of completed downloads finish
+                streamExecutor.shutdown();
+                streamExecutor = null;
+            }
+        }
     }
 
     @Override
@@ -2016,6 +3627,14 @@ public class Storj {
 
     private native void _runEventLoop(long env);
 
+    private native void _runEventLoopUntilStopped(long env);
+
+    private native void _stopEventLoop(long env);
+
+    private static native void _setThreadPoolSize(int size);
+
+    private native int _getActiveRequests(long env);
+
     private native void _getInfo(long env, GetInfoCallback callback);
 
     private native void _register(long env, RegisterCallback callback);
@@ -2036,35 +3655,189 @@ public class Storj {
 
     private native void _listFiles(long env, String bucketId, ListFilesCallback callback);
 
+    private native void _listFilesCursor(long env, String bucketId, int pageSize, FileCursorCallback callback);
+
     private native void _getFile(long env, String bucketId, String fileId, GetFileCallback callback);
 
     private native void _getFileId(long env, String bucketId, String fileName, GetFileIdCallback callback);
 
     private native void _deleteFile(long env, String bucketId, String fileId, DeleteFileCallback callback);
 
-    private native long _downloadFile(long env, String bucketId, String fileId, String path,
-            DownloadFileCallback callback);
+    private native long _downloadFile(long env, String bucketId, String fileId, String path, long preallocateSize,
+            long progressIntervalMs, long progressBytes, ByteBuffer progressTable, int progressSlot,
+            ByteBuffer byteCounters, DownloadFileCallback callback);
 
     private native boolean _cancelDownload(long downloadState);
 
     private native long _uploadFile(long env, String bucketId, String fileName, String localPath,
+            int prepareFrameLimit, int pushFrameLimit, int pushShardLimit, boolean rs, String index,
+            long progressIntervalMs, long progressBytes, ByteBuffer progressTable, int progressSlot, ByteBuffer byteCounters,
             UploadFileCallback callback);
 
     private native boolean _cancelUpload(long uploadState);
 
 
+    /**
+     * A request to the Bridge retried with the configured {@link RetryPolicy}
+     * and guarded by the configured {@link CircuitBreaker}.
+     */
+    private abstract class Request extends Retry {
+
+        Request(boolean idempotent) {
+            this(idempotent, circuitBreaker);
+        }
+
+        Request(boolean idempotent, CircuitBreaker breaker) {
+            super(retryPolicy, breaker, idempotent);
+        }
+
+        @Override
+        boolean isCanceled() {
+            // destroyed while waiting for the retry
+            return env == 0;
+        }
+    }
+
+    /**
+     * Restarts a scheduled transfer failed with a retryable error. The ticket
+     * of the transfer stays valid across the attempts.
+     */
+    private class TransferRetry extends Request {
+
+        private final TransferScheduler.Task task;
+        private final TransferScheduler.Job job;
+
+        TransferRetry(TransferScheduler.Task task, TransferScheduler.Job job, boolean idempotent) {
+            // the scheduler holds the transfer back while the breaker is open
+            super(idempotent, null);
+            this.task = task;
+            this.job = job;
+            requested();
+        }
+
+        @Override
+        void reject() {
+            // not started with start()
+        }
+
+        @Override
+        void submit() {
+            if (!task.restart()) {
+                // canceled while waiting
+                task.run();
+                job.canceled();
+            }
+        }
+
+        /**
+         * Handles a failed attempt of the transfer.
+         *
+         * @param code
+         *            the error code
+         * @param report
+         *            reports the error to the callback
+         */
+        void failed(int code, final Runnable report) {
+            Runnable giveUp = new Runnable() {
+                @Override
+                public void run() {
+                    task.run();
+                    report.run();
+                }
+            };
+            task.awaitRestart();
+            if (!retry(code, giveUp)) {
+                giveUp.run();
+            }
+        }
+    }
+
+    /**
+     * Probe of a circuit breaker. It refers to the Storj object weakly, so a
+     * shared breaker does not keep it from being finalized.
+     */
+    private static class BreakerProbe implements Runnable {
+
+        private final WeakReference<Storj> storj;
+        private final CircuitBreaker breaker;
+
+        BreakerProbe(Storj storj, CircuitBreaker breaker) {
+            this.storj = new WeakReference<>(storj);
+            this.breaker = breaker;
+        }
+
+        @Override
+        public void run() {
+            final Storj target = storj.get();
+            if (target == null) {
+                // the next opening probes with another Storj object, if any
+                breaker.removeProbe(this);
+                breaker.probed(STORJ_BRIDGE_REQUEST_ERROR, 0);
+                return;
+            }
+            // getInfo() blocks, so it must not hold up the timer thread
+            target.getStreamExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    target.probe(breaker);
+                }
+            });
+        }
+    }
+
+    /**
+     * Bookkeeping of a file transfer, guarded by the lock on {@link #transfers}.
+     */
+    private static class Transfer {
+        final boolean download;
+        long state;
+        boolean finished;
+        // also keeps the table reachable while the native library writes to it
+        ProgressTable table;
+        int slot = -1;
+        // the native library keeps only the address of the counters, so the
+        // limiter must stay reachable even if it is replaced meanwhile
+        BandwidthLimiter limiter;
+
+        Transfer(boolean download) {
+            this.download = download;
+        }
+
+        ByteBuffer getProgressBuffer() {
+            return (table == null) ? null : table.getBuffer();
+        }
+
+        ByteBuffer getLimiterCounters() {
+            return (limiter == null) ? null : limiter.getCounters();
+        }
+    }
+
+    /**
+     * Thread running the event loop of a Storj environment.
+     * 
+     * <p>
+     * The native loop is kept alive by a wakeup handle, so it blocks while idle
+     * and is woken up immediately by every request submitted from any thread. It
+     * returns only after {@link Storj#_stopEventLoop(long)} is called.
+     * </p>
+     */
     private class EventLoopRunner extends Thread {
 
+        private final long env;
+        private volatile boolean destroyOnExit;
+
+        EventLoopRunner(long env) {
+            super("storj-event-loop");
+            this.env = env;
+        }
+
         @Override
         public void run() {
-            while (env != 0) {
-                _runEventLoop(env);
+            CallbackDispatcher.setEventLoopThread();
+            _runEventLoopUntilStopped(env);
 
-                try {
-                    Thread.sleep(50);
-                } catch (InterruptedException e) {
-                    return;
-                }
+            if (destroyOnExit) {
+                destroyEnv(env);
             }
         }
 
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Exception completing the futures returned by {@link AsyncStorj} when a
+ * request fails.
+ * 
+ * <p>
+ * It carries the same error code and message that the callback based methods
+ * of {@link Storj} pass to <code>onError()</code>.
+ * </p>
+ */
+public class StorjException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+
+    /**
+     * Constructs a new exception.
+     * 
+     * @param code
+     *            the error code
+     * @param message
+     *            the error message
+     */
+    public StorjException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    /**
+     * Returns the error code.
+     * 
+     * @return the error code, e.g. {@link Storj#HTTP_NOT_FOUND} or
+     *         {@link Storj#TRANSFER_CANCELED}
+     */
+    public int getCode() {
+        return code;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Download callback that copies the downloaded file from a scratch file to a
+ * {@link WritableByteChannel} and deletes the scratch file.
+ *
+ * <p>
+ * The native library writes the shards at their offsets in the output file and
+ * may read them back to recover missing shards, so it cannot write to a stream
+ * directly. The copy runs on the provided executor, in chunks of
+ * {@link #CHUNK_SIZE} bytes, so a slow channel never blocks the event loop
+ * thread and applies backpressure only on the copying thread.
+ * </p>
+ *
+ * <p>
+ * Only the bytes of the file within the provided range are copied.
+ * </p>
+ */
+class StreamingDownload implements DownloadFileCallback {
+
+    /**
+     * Maximum number of bytes transferred to the channel at once.
+     */
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final Path scratch;
+    private final WritableByteChannel channel;
+    private final DownloadFileCallback callback;
+    private final Executor executor;
+    private final long offset;
+    private final long length;
+
+    StreamingDownload(Path scratch, WritableByteChannel channel, long offset, long length,
+            DownloadFileCallback callback, Executor executor) {
+        this.scratch = scratch;
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+        this.callback = callback;
+        this.executor = executor;
+    }
+
+    @Override
+    public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+        callback.onProgress(fileId, progress, downloadedBytes, totalBytes);
+    }
+
+    @Override
+    public void onComplete(final String fileId, String localPath) {
+        Runnable copier = new Runnable() {
+            @Override
+            public void run() {
+                copy(fileId);
+            }
+        };
+
+        try {
+            executor.execute(copier);
+        } catch (RejectedExecutionException e) {
+            // the Storj object has been destroyed meanwhile
+            copier.run();
+        }
+    }
+
+    @Override
+    public void onError(String fileId, int code, String message) {
+        deleteScratch();
+        callback.onError(fileId, code, message);
+    }
+
+    private void copy(String fileId) {
+        try {
+            try (FileChannel in = FileChannel.open(scratch, StandardOpenOption.READ)) {
+                // the range may extend past the end of the file
+                long size = in.size();
+                long position = Math.min(offset, size);
+                long end = (length > size - position) ? size : position + length;
+                while (position < end) {
+                    position += in.transferTo(position, Math.min(CHUNK_SIZE, end - position), channel);
+                }
+            }
+        } catch (IOException e) {
+            deleteScratch();
+            callback.onError(fileId, Storj.STORJ_FILE_WRITE_ERROR, e.getMessage());
+            return;
+        }
+
+        deleteScratch();
+        callback.onComplete(fileId, null);
+    }
+
+    private void deleteScratch() {
+        try {
+            Files.deleteIfExists(scratch);
+        } catch (IOException e) {
+            // nothing more to do, the file is in the scratch directory anyway
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Priority class of a transfer submitted to a {@link TransferScheduler}.
+ *
+ * <p>
+ * The scheduler shares the transfer slots between the classes in proportion to
+ * their weights, see
+ * {@link TransferScheduler#setWeight(TransferPriority, int)}.
+ * </p>
+ */
+public enum TransferPriority {
+
+    /**
+     * Transfers someone is waiting for, e.g. a user opening a file. Default
+     * weight 16.
+     */
+    INTERACTIVE(16),
+
+    /**
+     * Regular transfers. Default weight 4.
+     */
+    NORMAL(4),
+
+    /**
+     * Background transfers like backups and synchronization. Default weight 1.
+     */
+    BULK(1);
+
+    private final int defaultWeight;
+
+    TransferPriority(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+}
@@ -0,0 +1,659 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queues file transfers and limits how many of them run at the same time.
+ *
+ * <p>
+ * When configured with {@link Storj#setTransferScheduler(TransferScheduler)},
+ * the <code>downloadFiles()</code> and <code>uploadFiles()</code> methods
+ * submit their transfers to the scheduler instead of starting all of them at
+ * once. A queued transfer is started when both the number of running transfers
+ * and their total size are below the limits. A transfer larger than the byte
+ * limit is started only when no other transfer is running. The next queued
+ * transfers are started as soon as a running one completes or fails.
+ * </p>
+ *
+ * <p>
+ * Each transfer is submitted with a {@link TransferPriority} and an optional
+ * tenant key. When a slot becomes free, the priority classes with queued
+ * transfers take turns in proportion to their weights (stride scheduling), so
+ * interactive transfers keep getting started while bulk transfers saturate the
+ * limits, and bulk transfers still make progress. Within a class, the tenants
+ * take turns one transfer at a time, and the transfers of a tenant are started
+ * in the order they were submitted. Transfers without a tenant key share one
+ * turn.
+ * </p>
+ *
+ * <p>
+ * Some slots can be reserved for {@link TransferPriority#INTERACTIVE}
+ * transfers with {@link #setReservedTransfers(int)}, so they can start right
+ * away instead of waiting for a running transfer to finish.
+ * </p>
+ *
+ * <p>
+ * A transfer using a {@link BandwidthLimiter} whose bucket is in debt is held
+ * back, and the other queued transfers are tried instead. The scheduler tries
+ * again when the debt is expected to be paid off. Transfers are held back in
+ * the same way while the {@link CircuitBreaker} of their Storj object is open.
+ * </p>
+ *
+ * <p>
+ * A scheduler can be shared by multiple {@link Storj} instances to apply the
+ * limits to all of them.
+ * </p>
+ */
+public class TransferScheduler {
+
+    /**
+     * A transfer handed to the scheduler.
+     */
+    interface Job {
+
+        /**
+         * Starts the transfer. The provided task must be run when the transfer
+         * completes or fails, unless the transfer is restarted with
+         * {@link Task#awaitRestart()}.
+         *
+         * @return the pointer to the native transfer state, or <code>0</code>
+         *         if the transfer failed to start
+         */
+        long start(Task task);
+
+        /**
+         * Returns how long the transfer must wait before it may start, e.g. to
+         * stay within a bandwidth limit or until a circuit breaker closes.
+         *
+         * @return the delay in nanoseconds, or <code>0</code> to start now
+         */
+        long getStartDelay();
+
+        /**
+         * Reports that the transfer was canceled before it started.
+         */
+        void canceled();
+    }
+
+    /**
+     * Tickets identify scheduled transfers until they start. They are negative,
+     * so they do not clash with the pointers to native transfer states.
+     */
+    private static final AtomicLong TICKETS = new AtomicLong();
+
+    /**
+     * Distance a class advances in virtual time when one of its transfers is
+     * started, divided by the weight of the class.
+     */
+    private static final long STRIDE = 1 << 20;
+
+    /**
+     * Tenant key of transfers submitted without one.
+     */
+    private static final Object NO_TENANT = new Object();
+
+    private final int maxTransfers;
+    private final long maxBytes;
+
+    // guarded by this
+    private final ClassQueue[] classes = new ClassQueue[TransferPriority.values().length];
+    private long virtualTime;
+    private int reservedTransfers;
+    private int runningTransfers;
+    private long runningBytes;
+    private boolean pumping;
+    private boolean repump;
+    private boolean retryScheduled;
+
+    /**
+     * Constructs new scheduler with the provided limits.
+     *
+     * @param maxTransfers
+     *            the maximum number of transfers running at the same time
+     * @param maxBytes
+     *            the maximum total size of the transfers running at the same
+     *            time, or <code>0</code> for no limit
+     * @throws IllegalArgumentException
+     *             if <code>maxTransfers</code> is less than 1 or
+     *             <code>maxBytes</code> is negative
+     */
+    public TransferScheduler(int maxTransfers, long maxBytes) {
+        if (maxTransfers < 1) {
+            throw new IllegalArgumentException("maxTransfers must be positive: " + maxTransfers);
+        }
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        }
+        this.maxTransfers = maxTransfers;
+        this.maxBytes = maxBytes;
+        for (TransferPriority priority : TransferPriority.values()) {
+            classes[priority.ordinal()] = new ClassQueue(priority.getDefaultWeight());
+        }
+    }
+
+    /**
+     * Sets the weight of a priority class.
+     *
+     * <p>
+     * While transfers of several classes are queued, each class gets a share of
+     * the started transfers proportional to its weight.
+     * </p>
+     *
+     * @param priority
+     *            the priority class
+     * @param weight
+     *            a positive number
+     * @return a reference to this scheduler
+     * @throws IllegalArgumentException
+     *             if <code>weight</code> is less than 1
+     */
+    public synchronized TransferScheduler setWeight(TransferPriority priority, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be positive: " + weight);
+        }
+        classes[priority.ordinal()].weight = weight;
+        return this;
+    }
+
+    /**
+     * Returns the weight of a priority class.
+     *
+     * @param priority
+     *            the priority class
+     * @return the weight
+     */
+    public synchronized int getWeight(TransferPriority priority) {
+        return classes[priority.ordinal()].weight;
+    }
+
+    /**
+     * Reserves transfer slots for {@link TransferPriority#INTERACTIVE}
+     * transfers. Other transfers are started only while more than this number
+     * of slots are free.
+     *
+     * @param reserved
+     *            the number of reserved slots, less than the transfer limit
+     * @return a reference to this scheduler
+     * @throws IllegalArgumentException
+     *             if <code>reserved</code> is negative or not less than the
+     *             transfer limit
+     */
+    public TransferScheduler setReservedTransfers(int reserved) {
+        if (reserved < 0 || reserved >= maxTransfers) {
+            throw new IllegalArgumentException("reserved must be between 0 and " + (maxTransfers - 1) + ": "
+                    + reserved);
+        }
+        synchronized (this) {
+            reservedTransfers = reserved;
+        }
+        // fewer reserved slots may let queued transfers start
+        pump();
+        return this;
+    }
+
+    /**
+     * Returns the number of slots reserved for interactive transfers.
+     *
+     * @return the number of reserved slots
+     */
+    public synchronized int getReservedTransfers() {
+        return reservedTransfers;
+    }
+
+    /**
+     * Returns the maximum number of transfers running at the same time.
+     *
+     * @return the transfer limit
+     */
+    public int getMaxTransfers() {
+        return maxTransfers;
+    }
+
+    /**
+     * Returns the maximum total size of the transfers running at the same time.
+     *
+     * @return the byte limit, or <code>0</code> if not limited
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the number of transfers waiting to be started.
+     *
+     * @return the queue depth
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (ClassQueue queue : classes) {
+            depth += queue.size;
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the number of transfers of a priority class waiting to be
+     * started.
+     *
+     * @param priority
+     *            the priority class
+     * @return the queue depth of the class
+     */
+    public synchronized int getQueueDepth(TransferPriority priority) {
+        return classes[priority.ordinal()].size;
+    }
+
+    /**
+     * Returns the number of running transfers.
+     *
+     * @return the number of transfers started and not finished yet
+     */
+    public synchronized int getRunningTransfers() {
+        return runningTransfers;
+    }
+
+    /**
+     * Returns the total size of the running transfers.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getRunningBytes() {
+        return runningBytes;
+    }
+
+    /**
+     * Queues a transfer with normal priority and starts it if the limits allow.
+     *
+     * @param bytes
+     *            the size of the transfer, or <code>0</code> if unknown
+     * @return the queued transfer
+     */
+    Task submit(long bytes, Job job) {
+        return submit(bytes, TransferPriority.NORMAL, null, null, job);
+    }
+
+    /**
+     * Queues a transfer and starts it if the limits allow.
+     *
+     * @param bytes
+     *            the size of the transfer, or <code>0</code> if unknown
+     * @param priority
+     *            the priority class, or <code>null</code> for normal priority
+     * @param tenant
+     *            the tenant key, or <code>null</code>
+     * @return the queued transfer
+     */
+    Task submit(long bytes, TransferPriority priority, Object tenant, Job job) {
+        return submit(bytes, priority, tenant, null, job);
+    }
+
+    /**
+     * Queues a transfer, registers it by its ticket and starts it if the limits
+     * allow.
+     *
+     * @param bytes
+     *            the size of the transfer, or <code>0</code> if unknown
+     * @param priority
+     *            the priority class, or <code>null</code> for normal priority
+     * @param tenant
+     *            the tenant key, or <code>null</code>
+     * @param registry
+     *            the map of the submitter to register the transfer in by its
+     *            ticket until it finishes, or <code>null</code>
+     * @return the queued transfer
+     */
+    Task submit(long bytes, TransferPriority priority, Object tenant, Map<Long, Task> registry, Job job) {
+        if (priority == null) {
+            priority = TransferPriority.NORMAL;
+        }
+        Task task = new Task(this, TICKETS.decrementAndGet(), Math.max(bytes, 0), priority,
+                (tenant == null) ? NO_TENANT : tenant, registry, job);
+        if (registry != null) {
+            registry.put(task.ticket, task);
+        }
+        synchronized (this) {
+            ClassQueue queue = classes[priority.ordinal()];
+            if (queue.size == 0) {
+                // an idle class does not save up turns
+                queue.pass = Math.max(queue.pass, virtualTime);
+            }
+            queue.add(task);
+        }
+        pump();
+        return task;
+    }
+
+    /**
+     * Starts queued transfers while the limits allow. Only one thread starts
+     * transfers at a time, and transfers finishing synchronously while being
+     * started do not recurse.
+     */
+    private void pump() {
+        synchronized (this) {
+            if (pumping) {
+                repump = true;
+                return;
+            }
+            pumping = true;
+        }
+
+        while (true) {
+            Task task;
+            synchronized (this) {
+                task = poll();
+                if (task == null) {
+                    if (!repump) {
+                        pumping = false;
+                        return;
+                    }
+                    repump = false;
+                    continue;
+                }
+            }
+            task.start();
+        }
+    }
+
+    /**
+     * Takes the next transfer to start, if any may start now.
+     */
+    private Task poll() {
+        if (runningTransfers >= maxTransfers) {
+            return null;
+        }
+        boolean reservedOnly = runningTransfers >= maxTransfers - reservedTransfers;
+
+        // the classes are tried in the order of their virtual time, skipping
+        // those whose next transfer does not fit in the byte limit or must
+        // wait for its bandwidth limit
+        boolean[] tried = new boolean[classes.length];
+        long retryDelay = Long.MAX_VALUE;
+        while (true) {
+            ClassQueue chosen = null;
+            int chosenIndex = -1;
+            for (int i = 0; i < classes.length; i++) {
+                ClassQueue queue = classes[i];
+                if (tried[i] || queue.size == 0) {
+                    continue;
+                }
+                if (reservedOnly && i != TransferPriority.INTERACTIVE.ordinal()) {
+                    continue;
+                }
+                if (chosen == null || queue.pass < chosen.pass) {
+                    chosen = queue;
+                    chosenIndex = i;
+                }
+            }
+            if (chosen == null) {
+                if (retryDelay != Long.MAX_VALUE) {
+                    scheduleRetry(retryDelay);
+                }
+                return null;
+            }
+
+            Task task = chosen.peek();
+            if (maxBytes > 0 && runningTransfers > 0 && runningBytes + task.bytes > maxBytes) {
+                tried[chosenIndex] = true;
+                continue;
+            }
+            long delay = task.job.getStartDelay();
+            if (delay > 0) {
+                tried[chosenIndex] = true;
+                retryDelay = Math.min(retryDelay, delay);
+                continue;
+            }
+
+            chosen.poll();
+            virtualTime = chosen.pass;
+            chosen.pass += STRIDE / chosen.weight;
+            task.started = true;
+            runningTransfers++;
+            runningBytes += task.bytes;
+            return task;
+        }
+    }
+
+    private void scheduleRetry(long delay) {
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        DelayedTasks.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (TransferScheduler.this) {
+                    retryScheduled = false;
+                }
+                pump();
+            }
+        }, delay);
+    }
+
+    private void finished(Task task) {
+        synchronized (this) {
+            runningTransfers--;
+            runningBytes -= task.bytes;
+        }
+        pump();
+    }
+
+    private synchronized boolean remove(Task task) {
+        return !task.started && classes[task.priority.ordinal()].remove(task);
+    }
+
+    /**
+     * Queued transfers of a priority class, with a FIFO queue per tenant and
+     * the tenants taking turns.
+     */
+    private static final class ClassQueue {
+
+        int weight;
+        long pass;
+        int size;
+
+        private final Map<Object, Deque<Task>> tenants = new HashMap<>();
+        private final Deque<Object> turns = new ArrayDeque<>();
+
+        ClassQueue(int weight) {
+            this.weight = weight;
+        }
+
+        void add(Task task) {
+            Deque<Task> queue = tenants.get(task.tenant);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                tenants.put(task.tenant, queue);
+                turns.add(task.tenant);
+            }
+            queue.add(task);
+            size++;
+        }
+
+        Task peek() {
+            return tenants.get(turns.peek()).peek();
+        }
+
+        Task poll() {
+            Object tenant = turns.poll();
+            Deque<Task> queue = tenants.get(tenant);
+            Task task = queue.poll();
+            if (queue.isEmpty()) {
+                tenants.remove(tenant);
+            } else {
+                turns.add(tenant);
+            }
+            size--;
+            return task;
+        }
+
+        boolean remove(Task task) {
+            Deque<Task> queue = tenants.get(task.tenant);
+            if (queue == null || !queue.remove(task)) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                tenants.remove(task.tenant);
+                turns.remove(task.tenant);
+            }
+            size--;
+            return true;
+        }
+    }
+
+    /**
+     * A transfer submitted to a scheduler.
+     */
+    static final class Task implements Runnable {
+
+        private final TransferScheduler scheduler;
+        private final long ticket;
+        private final long bytes;
+        private final TransferPriority priority;
+        private final Object tenant;
+        private final Map<Long, Task> registry;
+        private final Job job;
+
+        // guarded by the scheduler
+        private boolean started;
+
+        // guarded by this task
+        private boolean waiting;
+        private boolean canceled;
+
+        private volatile long state;
+        private volatile boolean finished;
+
+        private Task(TransferScheduler scheduler, long ticket, long bytes, TransferPriority priority, Object tenant,
+                Map<Long, Task> registry, Job job) {
+            this.scheduler = scheduler;
+            this.ticket = ticket;
+            this.bytes = bytes;
+            this.priority = priority;
+            this.tenant = tenant;
+            this.registry = registry;
+            this.job = job;
+        }
+
+        /**
+         * Returns the ticket identifying the transfer.
+         *
+         * @return the ticket
+         */
+        long getTicket() {
+            return ticket;
+        }
+
+        /**
+         * Returns the pointer to the native transfer state.
+         *
+         * @return the pointer, or <code>0</code> if the transfer has not been
+         *         started yet
+         */
+        long getState() {
+            return state;
+        }
+
+        /**
+         * Cancels the transfer if it has not been started yet, or if it is
+         * waiting to be restarted. In the latter case the transfer is reported
+         * as canceled by {@link #restart()}.
+         *
+         * @return <code>true</code> if the transfer was canceled
+         */
+        boolean cancelIfQueued() {
+            if (!scheduler.remove(this)) {
+                synchronized (this) {
+                    if (!waiting) {
+                        return false;
+                    }
+                    canceled = true;
+                    return true;
+                }
+            }
+            unregister();
+            job.canceled();
+            return true;
+        }
+
+        /**
+         * Marks the transfer as waiting to be started again after a failed
+         * attempt. It keeps its place among the running transfers.
+         */
+        synchronized void awaitRestart() {
+            waiting = true;
+            state = 0;
+        }
+
+        /**
+         * Starts the transfer again after a failed attempt.
+         *
+         * @return <code>false</code> if the transfer has been canceled while
+         *         waiting, in which case it is not started
+         */
+        synchronized boolean restart() {
+            waiting = false;
+            if (canceled) {
+                return false;
+            }
+            start();
+            return true;
+        }
+
+        private void start() {
+            try {
+                long result = job.start(this);
+                if (!finished) {
+                    state = result;
+                }
+            } catch (RuntimeException e) {
+                run();
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+
+        /**
+         * Marks the transfer as finished and starts the next queued transfers.
+         */
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                waiting = false;
+            }
+            state = 0;
+            unregister();
+            scheduler.finished(this);
+        }
+
+        private void unregister() {
+            if (registry != null) {
+                registry.remove(ticket);
+            }
+        }
+    }
+
+}
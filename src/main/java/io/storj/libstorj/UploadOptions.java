@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Options controlling the concurrency and the erasure coding of an upload.
+ * 
+ * <p>
+ * Instances are immutable and created with a {@link Builder}:
+ * </p>
+ * 
+ * <pre>
+ * UploadOptions options = new UploadOptions.Builder()
+ *         .setPushShardLimit(8)
+ *         .setReedSolomon(false)
+ *         .build();
+ * </pre>
+ * 
+ * @see Storj#setUploadOptions(UploadOptions)
+ * @see Storj#uploadFile(String, String, String, UploadOptions, UploadFileCallback)
+ */
+public class UploadOptions {
+
+    /**
+     * The options used if none are configured: 1 frame prepared at a time, 64
+     * frames and 64 shards pushed concurrently, and Reed-Solomon erasure coding
+     * enabled.
+     */
+    public static final UploadOptions DEFAULT = new Builder().build();
+
+    private final int prepareFrameLimit;
+    private final int pushFrameLimit;
+    private final int pushShardLimit;
+    private final boolean reedSolomon;
+    private final ProgressThrottle progressThrottle;
+    private final TransferPriority priority;
+    private final String tenant;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final String index;
+
+    private UploadOptions(Builder builder) {
+        prepareFrameLimit = builder.prepareFrameLimit;
+        pushFrameLimit = builder.pushFrameLimit;
+        pushShardLimit = builder.pushShardLimit;
+        reedSolomon = builder.reedSolomon;
+        progressThrottle = builder.progressThrottle;
+        priority = builder.priority;
+        tenant = builder.tenant;
+        bandwidthLimiter = builder.bandwidthLimiter;
+        index = builder.index;
+    }
+
+    /**
+     * Returns the number of frames prepared concurrently.
+     * 
+     * @return the frame preparation limit
+     */
+    public int getPrepareFrameLimit() {
+        return prepareFrameLimit;
+    }
+
+    /**
+     * Returns the number of frames pushed to the Bridge concurrently.
+     * 
+     * @return the frame push limit
+     */
+    public int getPushFrameLimit() {
+        return pushFrameLimit;
+    }
+
+    /**
+     * Returns the number of shards pushed to farmers concurrently.
+     * 
+     * @return the shard push limit
+     */
+    public int getPushShardLimit() {
+        return pushShardLimit;
+    }
+
+    /**
+     * Returns whether Reed-Solomon parity shards are created for the file.
+     * 
+     * @return <code>true</code> if erasure coding is enabled
+     */
+    public boolean isReedSolomon() {
+        return reedSolomon;
+    }
+
+    /**
+     * Returns the throttling of the progress callbacks.
+     * 
+     * @return the progress throttle, or <code>null</code> to use the one
+     *         configured with {@link Storj#setProgressThrottle(ProgressThrottle)}
+     */
+    public ProgressThrottle getProgressThrottle() {
+        return progressThrottle;
+    }
+
+    /**
+     * Returns the priority class of the upload.
+     * 
+     * @return the priority, or <code>null</code> if not set
+     */
+    public TransferPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the tenant the upload is made for.
+     * 
+     * @return the tenant key, or <code>null</code> if not set
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Returns the bandwidth limiter of the upload.
+     * 
+     * @return the limiter, or <code>null</code> to use the one configured with
+     *         {@link Storj#setBandwidthLimiter(BandwidthLimiter)}
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Returns the index that the encryption key of the file is derived from.
+     * 
+     * @return the 32 byte index as hex string, or <code>null</code> if a random
+     *         index is generated for the upload
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadOptions [prepareFrameLimit=" + prepareFrameLimit + ", pushFrameLimit=" + pushFrameLimit
+                + ", pushShardLimit=" + pushShardLimit + ", reedSolomon=" + reedSolomon + ", progressThrottle="
+                + progressThrottle + ", priority=" + priority + ", tenant=" + tenant + ", bandwidthLimiter="
+                + bandwidthLimiter + ", index=" + index + "]";
+    }
+
+    /**
+     * Builder of {@link UploadOptions}.
+     */
+    public static class Builder {
+
+        private int prepareFrameLimit = 1;
+        private int pushFrameLimit = 64;
+        private int pushShardLimit = 64;
+        private boolean reedSolomon = true;
+        private ProgressThrottle progressThrottle;
+        private TransferPriority priority;
+        private String tenant;
+        private BandwidthLimiter bandwidthLimiter;
+        private String index;
+
+        /**
+         * Creates a builder initialized with the default options.
+         */
+        public Builder() {
+        }
+
+        /**
+         * Creates a builder initialized with the provided options.
+         * 
+         * @param options
+         *            the options to start from
+         */
+        public Builder(UploadOptions options) {
+            prepareFrameLimit = options.prepareFrameLimit;
+            pushFrameLimit = options.pushFrameLimit;
+            pushShardLimit = options.pushShardLimit;
+            reedSolomon = options.reedSolomon;
+            progressThrottle = options.progressThrottle;
+            priority = options.priority;
+            tenant = options.tenant;
+            bandwidthLimiter = options.bandwidthLimiter;
+            index = options.index;
+        }
+
+        /**
+         * Sets the number of frames prepared concurrently.
+         * 
+         * @param limit
+         *            a positive number
+         * @return a reference to this builder
+         */
+        public Builder setPrepareFrameLimit(int limit) {
+            prepareFrameLimit = checkLimit(limit);
+            return this;
+        }
+
+        /**
+         * Sets the number of frames pushed to the Bridge concurrently.
+         * 
+         * @param limit
+         *            a positive number
+         * @return a reference to this builder
+         */
+        public Builder setPushFrameLimit(int limit) {
+            pushFrameLimit = checkLimit(limit);
+            return this;
+        }
+
+        /**
+         * Sets the number of shards pushed to farmers concurrently.
+         * 
+         * @param limit
+         *            a positive number
+         * @return a reference to this builder
+         */
+        public Builder setPushShardLimit(int limit) {
+            pushShardLimit = checkLimit(limit);
+            return this;
+        }
+
+        /**
+         * Enables or disables the Reed-Solomon erasure coding.
+         * 
+         * @param enabled
+         *            <code>true</code> to create parity shards
+         * @return a reference to this builder
+         */
+        public Builder setReedSolomon(boolean enabled) {
+            reedSolomon = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the throttling of the progress callbacks of the upload.
+         * 
+         * @param throttle
+         *            the progress throttle, or <code>null</code> to use the one
+         *            configured with
+         *            {@link Storj#setProgressThrottle(ProgressThrottle)}
+         * @return a reference to this builder
+         */
+        public Builder setProgressThrottle(ProgressThrottle throttle) {
+            progressThrottle = throttle;
+            return this;
+        }
+
+        /**
+         * Sets the priority class of the upload.
+         * 
+         * <p>
+         * A single file upload with a priority is queued in the
+         * {@link TransferScheduler} if one is configured. Without a priority it
+         * starts immediately.
+         * </p>
+         * 
+         * @param priority
+         *            the priority class, or <code>null</code>
+         * @return a reference to this builder
+         * @see Storj#setTransferScheduler(TransferScheduler)
+         */
+        public Builder setPriority(TransferPriority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Sets the tenant the upload is made for. Tenants with queued transfers
+         * of the same priority take turns.
+         * 
+         * @param tenant
+         *            the tenant key, or <code>null</code>
+         * @return a reference to this builder
+         */
+        public Builder setTenant(String tenant) {
+            this.tenant = tenant;
+            return this;
+        }
+
+        /**
+         * Sets the bandwidth limiter of the upload, instead of the one
+         * configured for the {@link Storj} instance.
+         * 
+         * @param limiter
+         *            the limiter, or <code>null</code> to use the one configured
+         *            with {@link Storj#setBandwidthLimiter(BandwidthLimiter)}
+         * @return a reference to this builder
+         */
+        public Builder setBandwidthLimiter(BandwidthLimiter limiter) {
+            bandwidthLimiter = limiter;
+            return this;
+        }
+
+        /**
+         * Sets the index that the encryption key of the file is derived from.
+         * 
+         * <p>
+         * By default a random index is generated for each upload. An upload
+         * repeated with the index of {@link File#getIndex()} of an earlier
+         * upload, e.g. one recorded before the process was restarted, encrypts
+         * the file with the same key.
+         * </p>
+         * 
+         * @param index
+         *            the 32 byte index as hex string, or <code>null</code> to
+         *            generate a random index
+         * @return a reference to this builder
+         * @throws IllegalArgumentException
+         *             if the index is not 64 hex digits
+         */
+        public Builder setIndex(String index) {
+            if (index != null && !index.matches("[0-9a-fA-F]{64}")) {
+                throw new IllegalArgumentException("index must be 64 hex digits: " + index);
+            }
+            this.index = index;
+            return this;
+        }
+
+        /**
+         * Creates the options.
+         * 
+         * @return a new {@link UploadOptions} instance
+         */
+        public UploadOptions build() {
+            return new UploadOptions(this);
+        }
+
+        private static int checkLimit(int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be positive: " + limit);
+            }
+            return limit;
+        }
+
+    }
+
+}
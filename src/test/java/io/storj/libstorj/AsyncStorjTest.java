@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class AsyncStorjTest {
+
+    private static Storj storj;
+    private static AsyncStorj async;
+
+    @BeforeClass
+    public static void setup() throws MalformedURLException {
+        java.io.File tempDir = new java.io.File(System.getProperty("java.io.tmpdir"));
+
+        storj = new Storj("http://localhost:6382")
+                .setConfigDirectory(new java.io.File(tempDir, ".storj"))
+                .setDownloadDirectory(tempDir);
+        storj.importKeys(new Keys("user@mail.com", "secret", "mnemonic"), "");
+
+        async = new AsyncStorj(storj);
+    }
+
+    @AfterClass
+    public static void cleanUp() {
+        storj.deleteKeys();
+        storj.destroy();
+    }
+
+    @Test
+    public void testComposeBucketIdAndListFiles() throws Exception {
+        CompletableFuture<File[]> files = async.getBucketId("test").thenCompose(bucketId -> async.listFiles(bucketId));
+
+        try {
+            for (File file : get(files)) {
+                System.out.println(file);
+            }
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof StorjException);
+            System.out.printf("[%d] %s\n", ((StorjException) e.getCause()).getCode(), e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[100];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = async.getBucket("74b9ce6f3c25f772ccdaaf08");
+        }
+
+        // completes normally or exceptionally, but must not hang
+        try {
+            get(CompletableFuture.allOf(futures));
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof StorjException);
+        }
+    }
+
+    @Test
+    public void testCancelDownload() throws Exception {
+        CompletableFuture<String> download = async.downloadFile("cafff1293d0170285691c3e0",
+                "62788dce8ecc345b18f65437", "/tmp/async-file-name");
+
+        download.cancel(true);
+
+        Assert.assertTrue(download.isDone());
+    }
+
+    @Test
+    public void testCancelFinishedDownload() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        long state = storj.downloadFile("cafff1293d0170285691c3e0", "62788dce8ecc345b18f65437",
+                "/tmp/async-file-name", new DownloadFileCallback() {
+                    @Override
+                    public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+                    }
+
+                    @Override
+                    public void onComplete(String fileId, String localPath) {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onError(String fileId, int code, String message) {
+                        latch.countDown();
+                    }
+                });
+
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+            Assert.fail("Deadlock");
+        }
+        // the native state has been released, so it must not be used anymore
+        Assert.assertFalse(storj.cancelDownload(state));
+    }
+
+    private static <T> T get(CompletableFuture<T> future) throws InterruptedException, ExecutionException {
+        try {
+            return future.get(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            Assert.fail("Deadlock");
+            return null;
+        }
+    }
+
+}
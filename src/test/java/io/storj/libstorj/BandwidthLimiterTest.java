@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BandwidthLimiterTest {
+
+    /**
+     * Limiter with a clock controlled by the test.
+     */
+    private static class ManualLimiter extends BandwidthLimiter {
+        long time;
+
+        ManualLimiter(long uploadBytesPerSecond, long downloadBytesPerSecond) {
+            super(uploadBytesPerSecond, downloadBytesPerSecond);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+
+        void advance(long millis) {
+            time += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        /**
+         * Adds bytes to a counter, as the native library does.
+         */
+        void transfer(int direction, long bytes) {
+            getCounters().putLong(direction * 8, getCounters().getLong(direction * 8) + bytes);
+        }
+    }
+
+    @Test
+    public void testStartsWithFullBucket() {
+        ManualLimiter limiter = new ManualLimiter(1000, 0);
+
+        Assert.assertEquals(0, limiter.getStartDelay(BandwidthLimiter.UPLOAD));
+        limiter.transfer(BandwidthLimiter.UPLOAD, 999);
+        Assert.assertEquals(0, limiter.getStartDelay(BandwidthLimiter.UPLOAD));
+    }
+
+    @Test
+    public void testDebtDelaysStart() {
+        ManualLimiter limiter = new ManualLimiter(1000, 0);
+
+        limiter.transfer(BandwidthLimiter.UPLOAD, 3000);
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(2), limiter.getStartDelay(BandwidthLimiter.UPLOAD));
+
+        limiter.advance(1000);
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.getStartDelay(BandwidthLimiter.UPLOAD));
+
+        limiter.advance(1500);
+        Assert.assertEquals(0, limiter.getStartDelay(BandwidthLimiter.UPLOAD));
+    }
+
+    @Test
+    public void testUnlimitedDirection() {
+        ManualLimiter limiter = new ManualLimiter(1000, 0);
+
+        limiter.transfer(BandwidthLimiter.DOWNLOAD, 1000000);
+        Assert.assertEquals(0, limiter.getStartDelay(BandwidthLimiter.DOWNLOAD));
+        Assert.assertEquals(1000000, limiter.getDownloadedBytes());
+        Assert.assertEquals(0, limiter.getUploadedBytes());
+    }
+
+    @Test
+    public void testIdleTimeDoesNotSaveUpMoreThanOneSecond() {
+        ManualLimiter limiter = new ManualLimiter(0, 1000);
+
+        limiter.advance(10000);
+        limiter.transfer(BandwidthLimiter.DOWNLOAD, 1500);
+
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(500), limiter.getStartDelay(BandwidthLimiter.DOWNLOAD));
+    }
+
+    @Test
+    public void testChangeRate() {
+        ManualLimiter limiter = new ManualLimiter(1000, 0);
+
+        limiter.transfer(BandwidthLimiter.UPLOAD, 3000);
+        Assert.assertTrue(limiter.getStartDelay(BandwidthLimiter.UPLOAD) > 0);
+
+        // the debt is forgiven when the limit is lifted
+        limiter.setUploadRate(0);
+        Assert.assertEquals(0, limiter.getUploadRate());
+        Assert.assertEquals(0, limiter.getStartDelay(BandwidthLimiter.UPLOAD));
+
+        limiter.transfer(BandwidthLimiter.UPLOAD, 3000);
+        limiter.setUploadRate(2000);
+        Assert.assertEquals(2000, limiter.getUploadRate());
+        Assert.assertEquals(0, limiter.getStartDelay(BandwidthLimiter.UPLOAD));
+
+        limiter.transfer(BandwidthLimiter.UPLOAD, 3000);
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(500), limiter.getStartDelay(BandwidthLimiter.UPLOAD));
+    }
+
+    @Test
+    public void testThroughput() {
+        ManualLimiter limiter = new ManualLimiter(0, 0);
+
+        limiter.advance(500);
+        limiter.transfer(BandwidthLimiter.DOWNLOAD, 2000);
+        // less than one second since the start
+        Assert.assertEquals(0, limiter.getDownloadThroughput(), 0);
+
+        limiter.advance(1500);
+        limiter.transfer(BandwidthLimiter.DOWNLOAD, 2000);
+        Assert.assertEquals(2000, limiter.getDownloadThroughput(), 0.001);
+        Assert.assertEquals(0, limiter.getUploadThroughput(), 0);
+
+        limiter.advance(1000);
+        limiter.transfer(BandwidthLimiter.DOWNLOAD, 500);
+        Assert.assertEquals(500, limiter.getDownloadThroughput(), 0.001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeRate() {
+        new BandwidthLimiter(-1, 0);
+    }
+
+}
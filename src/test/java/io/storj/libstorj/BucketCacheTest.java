@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BucketCacheTest {
+
+    /**
+     * Cache with a clock controlled by the test.
+     */
+    private static class ManualClockCache extends BucketCache {
+        long time;
+
+        ManualClockCache(long ttlSeconds, int maximumSize) {
+            super(ttlSeconds, TimeUnit.SECONDS, maximumSize);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    private static final Bucket TEST = new Bucket("id1", "test", null, true);
+
+    @Test
+    public void testHitAndMiss() {
+        ManualClockCache cache = new ManualClockCache(60, 10);
+
+        Assert.assertNull(cache.getBucket("id1"));
+        cache.put(TEST, cache.getGeneration());
+
+        Assert.assertSame(TEST, cache.getBucket("id1"));
+        Assert.assertEquals("id1", cache.getBucketId("test"));
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testExpiry() {
+        ManualClockCache cache = new ManualClockCache(60, 10);
+        cache.put(TEST, cache.getGeneration());
+
+        cache.time += TimeUnit.SECONDS.toNanos(59);
+        Assert.assertNotNull(cache.getBucket("id1"));
+
+        cache.time += TimeUnit.SECONDS.toNanos(1);
+        Assert.assertNull(cache.getBucket("id1"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ManualClockCache cache = new ManualClockCache(60, 2);
+        cache.put(new Bucket("id1", "one", null, true), cache.getGeneration());
+        cache.put(new Bucket("id2", "two", null, true), cache.getGeneration());
+
+        cache.getBucket("id1");
+        cache.put(new Bucket("id3", "three", null, true), cache.getGeneration());
+
+        Assert.assertNotNull(cache.getBucket("id1"));
+        Assert.assertNull(cache.getBucket("id2"));
+        Assert.assertNotNull(cache.getBucket("id3"));
+    }
+
+    @Test
+    public void testInvalidateRemovesName() {
+        ManualClockCache cache = new ManualClockCache(60, 10);
+        cache.put(TEST, cache.getGeneration());
+
+        cache.invalidate("id1");
+
+        Assert.assertNull(cache.getBucket("id1"));
+        Assert.assertNull(cache.getBucketId("test"));
+    }
+
+    @Test
+    public void testResponseToEarlierRequestIgnoredAfterInvalidation() {
+        ManualClockCache cache = new ManualClockCache(60, 10);
+        long requestGeneration = cache.getGeneration();
+
+        cache.invalidate("id1");
+        cache.put(TEST, requestGeneration);
+
+        Assert.assertNull(cache.getBucket("id1"));
+    }
+
+    @Test
+    public void testDeleteCallbackInvalidates() {
+        ManualClockCache cache = new ManualClockCache(60, 10);
+        cache.put(TEST, cache.getGeneration());
+
+        cache.wrap(new DeleteBucketCallback() {
+            @Override
+            public void onBucketDeleted(String bucketId) {
+            }
+
+            @Override
+            public void onError(String bucketId, int code, String message) {
+            }
+        }).onBucketDeleted("id1");
+
+        Assert.assertNull(cache.getBucketId("test"));
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CallbackDispatcherTest {
+
+    /**
+     * Executor that collects the tasks, so the test decides when they run.
+     */
+    private static class ManualExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static class RecordingCallback implements DownloadFileCallback {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+            events.add("progress " + downloadedBytes);
+        }
+
+        @Override
+        public void onComplete(String fileId, String localPath) {
+            events.add("complete");
+        }
+
+        @Override
+        public void onError(String fileId, int code, String message) {
+            events.add("error " + code);
+        }
+    }
+
+    @Test
+    public void testDirectDoesNotWrap() {
+        RecordingCallback callback = new RecordingCallback();
+        Assert.assertSame(callback, CallbackDispatcher.DIRECT.wrap(callback));
+    }
+
+    @Test
+    public void testCallbacksRunOnExecutorInOrder() {
+        ManualExecutor executor = new ManualExecutor();
+        CallbackDispatcher dispatcher = new CallbackDispatcher(executor, 10, OverflowPolicy.BLOCK);
+        RecordingCallback callback = new RecordingCallback();
+
+        DownloadFileCallback wrapped = dispatcher.wrap(callback);
+        wrapped.onProgress("id", 0.5, 1, 2);
+        wrapped.onProgress("id", 1, 2, 2);
+        wrapped.onComplete("id", "path");
+
+        Assert.assertTrue(callback.events.isEmpty());
+        Assert.assertEquals(3, dispatcher.getQueueSize());
+        // only one drain task is scheduled at a time
+        Assert.assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+
+        Assert.assertEquals(0, dispatcher.getQueueSize());
+        Assert.assertEquals("[progress 1, progress 2, complete]", callback.events.toString());
+    }
+
+    @Test
+    public void testDropProgressWhenFull() {
+        ManualExecutor executor = new ManualExecutor();
+        CallbackDispatcher dispatcher = new CallbackDispatcher(executor, 2, OverflowPolicy.DROP_PROGRESS);
+        RecordingCallback callback = new RecordingCallback();
+
+        DownloadFileCallback wrapped = dispatcher.wrap(callback);
+        wrapped.onProgress("id", 0.25, 1, 4);
+        wrapped.onProgress("id", 0.5, 2, 4);
+        wrapped.onProgress("id", 0.75, 3, 4);
+
+        executor.runAll();
+        wrapped.onComplete("id", "path");
+        executor.runAll();
+
+        Assert.assertEquals("[progress 1, progress 2, complete]", callback.events.toString());
+    }
+
+    @Test(timeout = 5000)
+    public void testCallbackIssuingCompletedRequestsWhenFull() {
+        ManualExecutor executor = new ManualExecutor();
+        final CallbackDispatcher dispatcher = new CallbackDispatcher(executor, 1, OverflowPolicy.BLOCK);
+        final RecordingCallback callback = new RecordingCallback();
+
+        DownloadFileCallback wrapped = dispatcher.wrap(new RecordingCallback() {
+            @Override
+            public void onComplete(String fileId, String localPath) {
+                // requests completed right away, e.g. on a cache hit, invoke
+                // their callbacks on the thread draining the full queue
+                dispatcher.wrap(callback).onComplete("a", "path");
+                dispatcher.wrap(callback).onComplete("b", "path");
+                dispatcher.wrap(callback).onError("c", Storj.CIRCUIT_OPEN, "Circuit Breaker Open");
+            }
+        });
+        wrapped.onComplete("id", "path");
+        executor.runAll();
+
+        Assert.assertEquals(0, dispatcher.getQueueSize());
+        Assert.assertEquals("[complete, complete, error " + Storj.CIRCUIT_OPEN + "]", callback.events.toString());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testFailRejectsNewRequestsWhenFull() {
+        ManualExecutor executor = new ManualExecutor();
+        CallbackDispatcher dispatcher = new CallbackDispatcher(executor, 1, OverflowPolicy.FAIL);
+
+        dispatcher.wrap(new RecordingCallback()).onComplete("id", "path");
+        dispatcher.wrap(new RecordingCallback());
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many native callbacks per second are delivered for
+ * <code>listFiles()</code> against the local mock Bridge used by
+ * {@link StorjTest}.
+ *
+ * <p>
+ * Each callback materializes a <code>File[]</code> through JNI, so the result
+ * reflects the cost of the native callback path. Only the public API is used,
+ * so the same class can be run against an older build to compare the results.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>CallbackThroughputBenchmark [bridgeUrl] [requests]</code>
+ * </p>
+ */
+public class CallbackThroughputBenchmark {
+
+    private static final String BUCKET_ID = "cafff1293d0170285691c3e0";
+
+    public static void main(String[] args) throws Exception {
+        String bridgeUrl = (args.length > 0) ? args[0] : "http://localhost:6382";
+        int requests = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+
+        java.io.File tempDir = new java.io.File(System.getProperty("java.io.tmpdir"));
+        Storj storj = new Storj(bridgeUrl).setConfigDirectory(new java.io.File(tempDir, ".storj-bench"));
+        storj.importKeys(new Keys("user@mail.com", "secret", "mnemonic"), "");
+
+        try {
+            // warm up
+            run(storj, requests / 10);
+
+            long start = System.nanoTime();
+            long files = run(storj, requests);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("listFiles: %d callbacks in %.2f s%n", requests, seconds);
+            System.out.printf("%.0f callbacks/s, %.0f files/s%n", requests / seconds, files / seconds);
+        } finally {
+            storj.deleteKeys();
+            storj.destroy();
+        }
+    }
+
+    private static long run(Storj storj, int requests) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(requests);
+        final AtomicLong files = new AtomicLong();
+
+        ListFilesCallback callback = new ListFilesCallback() {
+            @Override
+            public void onFilesReceived(String bucketId, File[] received) {
+                files.addAndGet(received.length);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String bucketId, int code, String message) {
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < requests; i++) {
+            storj.listFiles(BUCKET_ID, callback);
+        }
+        latch.await();
+
+        return files.get();
+    }
+
+}
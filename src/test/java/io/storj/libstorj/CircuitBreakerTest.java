@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    /**
+     * Circuit breaker with a clock controlled by the test.
+     */
+    private static class ManualBreaker extends CircuitBreaker {
+        long time;
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    private static class RecordingListener implements CircuitBreakerListener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void onStateChanged(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+            events.add(from + "->" + to);
+            if (to == CircuitBreaker.State.CLOSED) {
+                closed.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void testOpenOnFailureRate() {
+        ManualBreaker breaker = new ManualBreaker();
+        breaker.setMinimumCalls(4).setOpenDuration(1, TimeUnit.HOURS);
+        RecordingListener listener = new RecordingListener();
+        breaker.addListener(listener);
+
+        breaker.record(Storj.NO_ERROR, 0);
+        breaker.record(Storj.STORJ_BRIDGE_TIMEOUT_ERROR, 0);
+        breaker.record(Storj.NO_ERROR, 0);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.allowCall());
+        Assert.assertEquals(0, breaker.getWaitTime());
+
+        breaker.record(Storj.HTTP_SERVICE_UNAVAILABLE, 0);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowCall());
+        Assert.assertEquals(1, breaker.getRejectedCalls());
+        Assert.assertTrue(breaker.getWaitTime() > 0);
+        Assert.assertEquals("[CLOSED->OPEN]", listener.events.toString());
+    }
+
+    @Test
+    public void testMinimumCalls() {
+        ManualBreaker breaker = new ManualBreaker();
+        breaker.setMinimumCalls(5);
+
+        for (int i = 0; i < 4; i++) {
+            breaker.record(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testOtherErrorsAreNotFailures() {
+        ManualBreaker breaker = new ManualBreaker();
+        breaker.setMinimumCalls(2).setFailure(Storj.HTTP_INTERNAL_SERVER_ERROR, false);
+
+        Assert.assertFalse(breaker.isFailure(Storj.HTTP_NOT_FOUND));
+        for (int i = 0; i < 10; i++) {
+            breaker.record(Storj.HTTP_NOT_FOUND, 0);
+            breaker.record(Storj.HTTP_INTERNAL_SERVER_ERROR, 0);
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testOpenOnSlowCalls() {
+        ManualBreaker breaker = new ManualBreaker();
+        breaker.setMinimumCalls(2).setOpenDuration(1, TimeUnit.HOURS)
+                .setSlowCallThreshold(1, TimeUnit.SECONDS, 1.0);
+        long slow = TimeUnit.SECONDS.toNanos(2);
+
+        breaker.record(Storj.NO_ERROR, slow);
+        breaker.record(Storj.NO_ERROR, 0);
+        breaker.record(Storj.NO_ERROR, slow);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker = new ManualBreaker();
+        breaker.setMinimumCalls(2).setOpenDuration(1, TimeUnit.HOURS)
+                .setSlowCallThreshold(1, TimeUnit.SECONDS, 1.0);
+        breaker.record(Storj.NO_ERROR, slow);
+        breaker.record(Storj.NO_ERROR, slow);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        ManualBreaker breaker = new ManualBreaker();
+        breaker.setMinimumCalls(4).setOpenDuration(1, TimeUnit.HOURS);
+
+        breaker.record(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+        breaker.record(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+        breaker.record(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+
+        // the failures have left the 10 second window
+        breaker.time = TimeUnit.SECONDS.toNanos(10);
+        breaker.record(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+        breaker.record(Storj.NO_ERROR, 0);
+        breaker.record(Storj.NO_ERROR, 0);
+        breaker.record(Storj.NO_ERROR, 0);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testProbeCloses() throws InterruptedException {
+        final CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setMinimumCalls(1).setOpenDuration(10, TimeUnit.MILLISECONDS);
+        RecordingListener listener = new RecordingListener();
+        breaker.addListener(listener);
+        final AtomicInteger probes = new AtomicInteger();
+        breaker.addProbe(new Runnable() {
+            @Override
+            public void run() {
+                // the first probe fails and opens the breaker again
+                int code = (probes.incrementAndGet() == 1) ? Storj.CURLE_COULDNT_CONNECT : Storj.NO_ERROR;
+                breaker.probed(code, 0);
+            }
+        });
+
+        breaker.record(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+
+        Assert.assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, probes.get());
+        Assert.assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]",
+                listener.events.toString());
+        Assert.assertTrue(breaker.allowCall());
+    }
+
+    @Test
+    public void testSharedProbes() throws InterruptedException {
+        final CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setMinimumCalls(1).setOpenDuration(10, TimeUnit.MILLISECONDS);
+        RecordingListener listener = new RecordingListener();
+        breaker.addListener(listener);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        Runnable first = new Runnable() {
+            @Override
+            public void run() {
+                events.add("first");
+                breaker.probed(Storj.NO_ERROR, 0);
+            }
+        };
+        breaker.addProbe(first);
+        breaker.addProbe(new Runnable() {
+            @Override
+            public void run() {
+                events.add("second");
+                breaker.probed(Storj.NO_ERROR, 0);
+            }
+        });
+        // e.g. the first Storj object has been destroyed
+        breaker.removeProbe(first);
+
+        breaker.record(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+
+        Assert.assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[second]", events.toString());
+    }
+
+    @Test
+    public void testCloseWithoutProbe() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setMinimumCalls(1).setOpenDuration(10, TimeUnit.MILLISECONDS);
+        RecordingListener listener = new RecordingListener();
+        breaker.addListener(listener);
+
+        breaker.record(Storj.STORJ_BRIDGE_REQUEST_ERROR, 0);
+
+        Assert.assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[CLOSED->OPEN, OPEN->CLOSED]", listener.events.toString());
+    }
+
+    @Test
+    public void testRequestRejectedWhileOpen() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setMinimumCalls(1).setOpenDuration(1, TimeUnit.HOURS);
+        final List<String> events = new ArrayList<>();
+
+        final GetBucketsCallback callback = new GetBucketsCallback() {
+            @Override
+            public void onBucketsReceived(Bucket[] buckets) {
+                events.add("received");
+            }
+
+            @Override
+            public void onError(int code, String message) {
+                events.add("error " + code);
+            }
+        };
+
+        Retry request = new Retry(null, breaker, true) {
+            @Override
+            void reject() {
+                callback.onError(Storj.CIRCUIT_OPEN, "Circuit Breaker Open");
+            }
+
+            @Override
+            void submit() {
+                wrap(callback).onError(Storj.STORJ_BRIDGE_TIMEOUT_ERROR, "Timeout");
+            }
+        };
+        request.start();
+        request.start();
+
+        Assert.assertEquals("[error " + Storj.STORJ_BRIDGE_TIMEOUT_ERROR + ", error " + Storj.CIRCUIT_OPEN + "]",
+                events.toString());
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new CircuitBreaker().setFailureRateThreshold(1.5);
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CredentialsTest {
+
+    @Test
+    public void testRoundTrip() {
+        Credentials credentials = Credentials.of(new Keys("user@mail.com", "p\u00e4ssword", "mnemonic words"));
+
+        Keys keys = credentials.toKeys();
+        Assert.assertTrue(credentials.isPresent());
+        Assert.assertEquals("user@mail.com", keys.getUser());
+        Assert.assertEquals("p\u00e4ssword", keys.getPass());
+        Assert.assertEquals("mnemonic words", keys.getMnemonic());
+    }
+
+    @Test
+    public void testNullValues() {
+        Keys keys = Credentials.of(new Keys("user@mail.com", null, "")).toKeys();
+
+        Assert.assertEquals("user@mail.com", keys.getUser());
+        Assert.assertNull(keys.getPass());
+        Assert.assertEquals("", keys.getMnemonic());
+    }
+
+    @Test
+    public void testNone() {
+        Assert.assertSame(Credentials.NONE, Credentials.of(null));
+        Assert.assertFalse(Credentials.NONE.isPresent());
+        Assert.assertNull(Credentials.NONE.toKeys());
+    }
+
+    @Test
+    public void testClear() {
+        Credentials credentials = Credentials.of(new Keys("user@mail.com", "secret", "mnemonic"));
+
+        credentials.clear();
+
+        Assert.assertFalse(credentials.isPresent());
+        Assert.assertNull(credentials.toKeys());
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DownloadOptionsTest {
+
+    @Test
+    public void testDefaults() {
+        DownloadOptions options = DownloadOptions.DEFAULT;
+
+        Assert.assertNull(options.getProgressThrottle());
+        Assert.assertNull(options.getPriority());
+        Assert.assertNull(options.getTenant());
+        Assert.assertNull(options.getBandwidthLimiter());
+        Assert.assertFalse(options.isPreallocate());
+    }
+
+    @Test
+    public void testBuilderFromOptions() {
+        ProgressThrottle throttle = new ProgressThrottle(1, TimeUnit.SECONDS, 0);
+        BandwidthLimiter limiter = new BandwidthLimiter(0, 1000);
+        DownloadOptions base = new DownloadOptions.Builder().setProgressThrottle(throttle)
+                .setPriority(TransferPriority.INTERACTIVE).setBandwidthLimiter(limiter).setPreallocate(true).build();
+        DownloadOptions options = new DownloadOptions.Builder(base).setTenant("tenant").build();
+
+        Assert.assertSame(throttle, options.getProgressThrottle());
+        Assert.assertEquals(TransferPriority.INTERACTIVE, options.getPriority());
+        Assert.assertEquals("tenant", options.getTenant());
+        Assert.assertSame(limiter, options.getBandwidthLimiter());
+        Assert.assertTrue(options.isPreallocate());
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the submit-to-callback latency of metadata requests against the
+ * local mock Bridge used by {@link StorjTest}.
+ *
+ * <p>
+ * Only the public API is used, so the same class can be run against an older
+ * build (e.g. the 50 ms sleep-polling event loop runner) to compare the
+ * results.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>EventLoopLatencyBenchmark [bridgeUrl] [iterations]</code>
+ * </p>
+ */
+public class EventLoopLatencyBenchmark {
+
+    private static final int WARMUP = 50;
+
+    public static void main(String[] args) throws Exception {
+        String bridgeUrl = (args.length > 0) ? args[0] : "http://localhost:6382";
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+
+        java.io.File tempDir = new java.io.File(System.getProperty("java.io.tmpdir"));
+        Storj storj = new Storj(bridgeUrl).setConfigDirectory(new java.io.File(tempDir, ".storj-bench"));
+        storj.importKeys(new Keys("user@mail.com", "secret", "mnemonic"), "");
+
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                measure(storj);
+            }
+
+            long[] latencies = new long[iterations];
+            for (int i = 0; i < iterations; i++) {
+                // space out the requests, so each one is submitted to an idle loop
+                Thread.sleep(1);
+                latencies[i] = measure(storj);
+            }
+
+            Arrays.sort(latencies);
+            System.out.printf("getBucketId: %d iterations%n", iterations);
+            System.out.printf("p50: %.3f ms%n", percentile(latencies, 0.50) / 1e6);
+            System.out.printf("p99: %.3f ms%n", percentile(latencies, 0.99) / 1e6);
+            System.out.printf("max: %.3f ms%n", latencies[latencies.length - 1] / 1e6);
+        } finally {
+            storj.deleteKeys();
+            storj.destroy();
+        }
+    }
+
+    private static long measure(Storj storj) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long[] end = new long[1];
+
+        long start = System.nanoTime();
+        storj.getBucketId("test", new GetBucketIdCallback() {
+            @Override
+            public void onBucketIdReceived(String bucketName, String bucketId) {
+                end[0] = System.nanoTime();
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String bucketName, int code, String message) {
+                end[0] = System.nanoTime();
+                latch.countDown();
+            }
+        });
+        latch.await();
+
+        return end[0] - start;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+}
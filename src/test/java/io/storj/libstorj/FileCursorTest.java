@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileCursorTest {
+
+    /**
+     * Cursor backed by a Java array instead of a native file list.
+     */
+    private static class ArrayCursor extends FileCursor {
+        final List<String> pages = new ArrayList<>();
+        int releases;
+
+        ArrayCursor(int totalFiles, int pageSize) {
+            super("bucket", 1, totalFiles, pageSize);
+        }
+
+        @Override
+        File[] fetch(long handle, int offset, int count) {
+            pages.add(offset + "+" + count);
+            File[] files = new File[count];
+            for (int i = 0; i < count; i++) {
+                files[i] = new File("id" + (offset + i), "bucket", "name" + (offset + i), null, true, 0, null, null,
+                        null, null);
+            }
+            return files;
+        }
+
+        @Override
+        void fill(long handle, int offset, int count, FileTable table) {
+            for (File file : fetch(handle, offset, count)) {
+                table.add(file);
+            }
+        }
+
+        @Override
+        void release(long handle) {
+            releases++;
+        }
+    }
+
+    @Test
+    public void testPages() {
+        ArrayCursor cursor = new ArrayCursor(7, 3);
+
+        int count = 0;
+        while (cursor.hasNext()) {
+            for (File file : cursor.next()) {
+                Assert.assertEquals("id" + count, file.getId());
+                count++;
+            }
+        }
+
+        Assert.assertEquals(7, count);
+        Assert.assertEquals("[0+3, 3+3, 6+1]", cursor.pages.toString());
+        // released after the last page
+        Assert.assertEquals(1, cursor.releases);
+
+        cursor.close();
+        Assert.assertEquals(1, cursor.releases);
+    }
+
+    @Test
+    public void testEmptyIsReleasedImmediately() {
+        ArrayCursor cursor = new ArrayCursor(0, 10);
+
+        Assert.assertFalse(cursor.hasNext());
+        Assert.assertEquals(1, cursor.releases);
+    }
+
+    @Test
+    public void testClose() {
+        ArrayCursor cursor = new ArrayCursor(5, 2);
+        cursor.next();
+        cursor.close();
+
+        Assert.assertFalse(cursor.hasNext());
+        Assert.assertEquals(1, cursor.releases);
+        Assert.assertEquals("[0+2]", cursor.pages.toString());
+    }
+
+    @Test
+    public void testToTable() {
+        ArrayCursor cursor = new ArrayCursor(5, 2);
+        cursor.next();
+
+        FileTable table = cursor.toTable();
+
+        Assert.assertEquals(3, table.size());
+        Assert.assertEquals("id2", table.get(0).getId());
+        Assert.assertEquals("name4", table.get(2).getName());
+        Assert.assertEquals("[0+2, 2+2, 4+1]", cursor.pages.toString());
+        Assert.assertFalse(cursor.hasNext());
+        Assert.assertEquals(1, cursor.releases);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testNextAfterClose() {
+        ArrayCursor cursor = new ArrayCursor(5, 2);
+        cursor.close();
+        cursor.next();
+    }
+
+}
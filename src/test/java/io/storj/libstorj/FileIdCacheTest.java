@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileIdCacheTest {
+
+    private static final String BUCKET_ID = "bucket";
+
+    private static File file(String id, String name) {
+        return new File(id, BUCKET_ID, name, null, true, 1, null, null, null, null);
+    }
+
+    private static final ListFilesCallback IGNORE_LIST = new ListFilesCallback() {
+        @Override
+        public void onFilesReceived(String bucketId, File[] files) {
+        }
+
+        @Override
+        public void onError(String bucketId, int code, String message) {
+        }
+    };
+
+    private static final UploadFileCallback IGNORE_UPLOAD = new UploadFileCallback() {
+        @Override
+        public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+        }
+
+        @Override
+        public void onComplete(String filePath, File file) {
+        }
+
+        @Override
+        public void onError(String filePath, int code, String message) {
+        }
+    };
+
+    @Test
+    public void testHitAndMiss() {
+        FileIdCache cache = new FileIdCache(10);
+
+        Assert.assertNull(cache.getFileId(BUCKET_ID, "a"));
+        cache.put(BUCKET_ID, "a", "id-a", cache.getGeneration(BUCKET_ID));
+
+        Assert.assertEquals("id-a", cache.getFileId(BUCKET_ID, "a"));
+        Assert.assertNull(cache.getFileId("other", "a"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        FileIdCache cache = new FileIdCache(2);
+        cache.put(BUCKET_ID, "a", "id-a", cache.getGeneration(BUCKET_ID));
+        cache.put(BUCKET_ID, "b", "id-b", cache.getGeneration(BUCKET_ID));
+
+        cache.getFileId(BUCKET_ID, "a");
+        cache.put(BUCKET_ID, "c", "id-c", cache.getGeneration(BUCKET_ID));
+
+        Assert.assertEquals("id-a", cache.getFileId(BUCKET_ID, "a"));
+        Assert.assertNull(cache.getFileId(BUCKET_ID, "b"));
+        Assert.assertEquals(2, cache.size(BUCKET_ID));
+    }
+
+    @Test
+    public void testUploadCompletionAndDelete() {
+        FileIdCache cache = new FileIdCache(10);
+
+        cache.wrap(BUCKET_ID, "a", IGNORE_UPLOAD).onComplete("/tmp/a", file("id-a", "a"));
+        Assert.assertEquals("id-a", cache.getFileId(BUCKET_ID, "a"));
+
+        cache.remove(BUCKET_ID, "id-a");
+        Assert.assertNull(cache.getFileId(BUCKET_ID, "a"));
+    }
+
+    @Test
+    public void testResponseToEarlierRequestIgnoredAfterDelete() {
+        FileIdCache cache = new FileIdCache(10);
+        cache.put(BUCKET_ID, "a", "id-a", cache.getGeneration(BUCKET_ID));
+        long requestGeneration = cache.getGeneration(BUCKET_ID);
+
+        cache.remove(BUCKET_ID, "id-a");
+        cache.put(BUCKET_ID, "a", "id-a", requestGeneration);
+
+        Assert.assertNull(cache.getFileId(BUCKET_ID, "a"));
+    }
+
+    @Test
+    public void testWarmFromListFiles() {
+        FileIdCache cache = new FileIdCache(10);
+        File[] files = { file("id-a", "a"), file("id-b", "b") };
+
+        Assert.assertSame(IGNORE_LIST, cache.wrap(BUCKET_ID, IGNORE_LIST));
+
+        cache.setWarmFromListFiles(true);
+        cache.wrap(BUCKET_ID, IGNORE_LIST).onFilesReceived(BUCKET_ID, files);
+
+        Assert.assertEquals("id-a", cache.getFileId(BUCKET_ID, "a"));
+        Assert.assertEquals("id-b", cache.getFileId(BUCKET_ID, "b"));
+    }
+
+    @Test
+    public void testInvalidateBucket() {
+        FileIdCache cache = new FileIdCache(10);
+        cache.put(BUCKET_ID, "a", "id-a", cache.getGeneration(BUCKET_ID));
+
+        cache.invalidateBucket(BUCKET_ID);
+
+        Assert.assertNull(cache.getFileId(BUCKET_ID, "a"));
+        Assert.assertEquals(0, cache.size(BUCKET_ID));
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Compares the heap used by a listing kept as <code>File</code> objects and as
+ * a {@link FileTable}.
+ *
+ * <p>
+ * The files are generated with the same shape as the ones returned by the
+ * bridge, with each string created separately as the native library does.
+ * Run with a large enough heap, e.g. <code>-Xmx4g</code>.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>FileTableMemoryBenchmark [files]</code>
+ * </p>
+ */
+public class FileTableMemoryBenchmark {
+
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+        long base = usedMemory();
+        File[] files = new File[count];
+        for (int i = 0; i < count; i++) {
+            files[i] = newFile(i);
+        }
+        long filesBytes = usedMemory() - base;
+
+        FileTable table = FileTable.of(files);
+        files = null;
+        long tableBytes = usedMemory() - base;
+
+        System.out.printf("File[]:    %,d bytes, %d bytes per file%n", filesBytes, filesBytes / count);
+        System.out.printf("FileTable: %,d bytes, %d bytes per file%n", tableBytes, tableBytes / count);
+        System.out.printf("%.1fx less memory (%d rows)%n", (double) filesBytes / tableBytes, table.size());
+    }
+
+    private static File newFile(int i) {
+        String hex = String.format("%024x", i);
+        return new File(hex,
+                new String("368be0816766b28fd5f43af5"),
+                "documents/report-" + i + ".pdf",
+                String.format("2018-01-01T00:%02d:%02d.%03dZ", (i / 60) % 60, i % 60, i % 1000),
+                true,
+                i * 1024L,
+                new String("application/octet-stream"),
+                new String("reedsolomon"),
+                hex + hex + hex.substring(0, 16),
+                hex + hex + hex + hex + hex + hex.substring(0, 8));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileTableTest {
+
+    private static final String ID = "cafff1293d0170285691c3e0";
+    private static final String BUCKET_ID = "368be0816766b28fd5f43af5";
+    private static final String INDEX = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final String HMAC = INDEX + INDEX;
+
+    private static File file(String id, String name, String created, String index, String hmac) {
+        return new File(id, BUCKET_ID, name, created, true, 1234, "application/octet-stream", "reedsolomon",
+                index, hmac);
+    }
+
+    private static void assertSameFile(File expected, FileTable.Entry actual) {
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getBucketId(), actual.getBucketId());
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(expected.getCreated(), actual.getCreated());
+        Assert.assertEquals(expected.isDecrypted(), actual.isDecrypted());
+        Assert.assertEquals(expected.getSize(), actual.getSize());
+        Assert.assertEquals(expected.getMimeType(), actual.getMimeType());
+        Assert.assertEquals(expected.getErasure(), actual.getErasure());
+        Assert.assertEquals(expected.getIndex(), actual.getIndex());
+        Assert.assertEquals(expected.getHMAC(), actual.getHMAC());
+    }
+
+    @Test
+    public void testPackedValues() {
+        File file = file(ID, "photo.jpg", "2016-03-04T17:01:02.629Z", INDEX, HMAC);
+        FileTable table = FileTable.of(file);
+
+        Assert.assertEquals(1, table.size());
+        assertSameFile(file, table.get(0));
+        Assert.assertEquals("image/jpeg", table.get(0).getMimeType());
+        Assert.assertEquals(file, table.get(0).toFile());
+    }
+
+    @Test
+    public void testValuesThatCannotBePacked() {
+        File[] files = {
+                file("CAFFF1293D0170285691C3E0", "d\u00e9j\u00e0 vu/", "2016-03-04T17:01:02Z", "abc", null),
+                file("not-hex", null, "yesterday", null, "xyz"),
+                file(null, "", null, INDEX, HMAC),
+        };
+        FileTable table = FileTable.of(files);
+
+        for (int i = 0; i < files.length; i++) {
+            Assert.assertEquals(files[i].getId(), table.get(i).getId());
+            Assert.assertEquals(files[i].getName(), table.get(i).getName());
+            Assert.assertEquals(files[i].getCreated(), table.get(i).getCreated());
+            Assert.assertEquals(files[i].getIndex(), table.get(i).getIndex());
+            Assert.assertEquals(files[i].getHMAC(), table.get(i).getHMAC());
+        }
+        Assert.assertTrue(table.get(0).isDirectory());
+    }
+
+    @Test
+    public void testGrowsAndIterates() {
+        FileTable table = new FileTable(1);
+        for (int i = 0; i < 100; i++) {
+            String id = String.format("%024x", i);
+            table.add(file(id, "file-" + i, "2018-01-01T00:00:00.000Z", INDEX, HMAC));
+        }
+
+        Assert.assertEquals(100, table.size());
+        int i = 0;
+        for (FileTable.Entry entry : table) {
+            Assert.assertEquals(String.format("%024x", i), entry.getId());
+            Assert.assertEquals("file-" + i, entry.getName());
+            Assert.assertEquals("2018-01-01T00:00:00.000Z", entry.getCreated());
+            i++;
+        }
+        Assert.assertEquals(100, i);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfRange() {
+        new FileTable().get(0);
+    }
+
+}
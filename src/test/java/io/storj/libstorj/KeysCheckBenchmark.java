@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+/**
+ * Measures the per-call overhead of checking the user's keys, which every
+ * operation on the shared Storj environment goes through.
+ *
+ * <p>
+ * Two cases are measured: <code>getKeys("")</code> with imported keys, and
+ * <code>getBuckets()</code> without imported keys, which fails with a
+ * {@link KeysNotFoundException} before sending any request. Only the public API
+ * is used, so the same class can be run against an older build, which reads
+ * and decrypts the authentication file on every call of the second case.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>KeysCheckBenchmark [iterations]</code>
+ * </p>
+ */
+public class KeysCheckBenchmark {
+
+    private static final GetBucketsCallback IGNORE = new GetBucketsCallback() {
+        @Override
+        public void onBucketsReceived(Bucket[] buckets) {
+        }
+
+        @Override
+        public void onError(int code, String message) {
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+        java.io.File tempDir = new java.io.File(System.getProperty("java.io.tmpdir"));
+
+        Storj withKeys = new Storj("http://localhost:6382")
+                .setConfigDirectory(new java.io.File(tempDir, ".storj-bench-keys"));
+        withKeys.importKeys(new Keys("user@mail.com", "secret", "mnemonic"), "");
+
+        Storj withoutKeys = new Storj("http://localhost:6382")
+                .setConfigDirectory(new java.io.File(tempDir, ".storj-bench-nokeys"));
+        withoutKeys.deleteKeys();
+
+        try {
+            for (int round = 0; round < 2; round++) {
+                // the first round is a warm up
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    withKeys.getKeys("");
+                }
+                long imported = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    try {
+                        withoutKeys.getBuckets(IGNORE);
+                    } catch (KeysNotFoundException e) {
+                        // expected
+                    }
+                }
+                long missing = System.nanoTime() - start;
+
+                if (round > 0) {
+                    System.out.printf("getKeys() with imported keys: %.1f ns/call%n", (double) imported / iterations);
+                    System.out.printf("getBuckets() without keys: %.1f ns/call%n", (double) missing / iterations);
+                }
+            }
+        } finally {
+            withKeys.deleteKeys();
+            withKeys.destroy();
+            withoutKeys.destroy();
+        }
+    }
+
+}
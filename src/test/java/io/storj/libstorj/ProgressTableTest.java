@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.nio.LongBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProgressTableTest {
+
+    @Test
+    public void testAcquireResetsSlot() {
+        ProgressTable table = new ProgressTable(2);
+
+        int slot = table.acquire();
+        table.setTransfer(slot, 42);
+
+        Assert.assertEquals(slot, table.findSlot(42));
+        Assert.assertEquals(42, table.getTransfer(slot));
+        Assert.assertEquals(ProgressTable.STATE_ACTIVE, table.getState(slot));
+        Assert.assertEquals(0, table.getBytesDone(slot));
+        Assert.assertEquals(0, table.getErrorCode(slot));
+        Assert.assertEquals(-1, table.findSlot(43));
+    }
+
+    @Test
+    public void testUnusedSlotsArePreferred() {
+        ProgressTable table = new ProgressTable(3);
+
+        int first = table.acquire();
+        table.setTransfer(first, 1);
+        table.release(first);
+
+        // the finished transfer stays visible while there are unused slots
+        int second = table.acquire();
+        int third = table.acquire();
+        Assert.assertTrue(second != first);
+        Assert.assertTrue(third != first);
+        Assert.assertEquals(first, table.findSlot(1));
+
+        // then the oldest finished slot is reused
+        Assert.assertEquals(first, table.acquire());
+        Assert.assertEquals(-1, table.findSlot(1));
+    }
+
+    @Test
+    public void testFull() {
+        ProgressTable table = new ProgressTable(1);
+
+        Assert.assertEquals(0, table.acquire());
+        Assert.assertEquals(-1, table.acquire());
+    }
+
+    @Test
+    public void testLongBufferView() {
+        ProgressTable table = new ProgressTable(2);
+        int slot = table.acquire();
+        table.setTransfer(slot, 7);
+
+        LongBuffer view = table.asLongBuffer();
+
+        Assert.assertEquals(2 * ProgressTable.SLOT_LONGS, view.capacity());
+        Assert.assertTrue(view.isReadOnly());
+        Assert.assertEquals(7, view.get(slot * ProgressTable.SLOT_LONGS + ProgressTable.TRANSFER));
+        Assert.assertEquals(ProgressTable.STATE_ACTIVE,
+                view.get(slot * ProgressTable.SLOT_LONGS + ProgressTable.STATE));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidSlot() {
+        new ProgressTable(1).getState(1);
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProgressThrottleTest {
+
+    @Test
+    public void testNone() {
+        Assert.assertEquals(0, ProgressThrottle.NONE.getMinIntervalMillis());
+        Assert.assertEquals(0, ProgressThrottle.NONE.getMinBytes());
+    }
+
+    @Test
+    public void testLimits() {
+        ProgressThrottle throttle = new ProgressThrottle(2, TimeUnit.SECONDS, 1 << 20);
+
+        Assert.assertEquals(2000, throttle.getMinIntervalMillis());
+        Assert.assertEquals(1 << 20, throttle.getMinBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeInterval() {
+        new ProgressThrottle(-1, TimeUnit.MILLISECONDS, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBytes() {
+        new ProgressThrottle(0, TimeUnit.MILLISECONDS, -1);
+    }
+
+}
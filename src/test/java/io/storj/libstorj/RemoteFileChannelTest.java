@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RemoteFileChannelTest {
+
+    private static Path scratch(int size) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Path scratch = Files.createTempFile("storj-", ".download");
+        Files.write(scratch, data);
+        return scratch;
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        Path scratch = scratch(1000);
+        RemoteFileChannel channel = new RemoteFileChannel(scratch);
+        channel.onComplete("id", scratch.toString());
+
+        Assert.assertEquals(1000, channel.size());
+
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        channel.position(300);
+        Assert.assertEquals(10, channel.read(buffer));
+        Assert.assertEquals((byte) 300, buffer.get(0));
+        Assert.assertEquals(310, channel.position());
+
+        buffer.clear();
+        channel.position(995);
+        Assert.assertEquals(5, channel.read(buffer));
+        buffer.clear();
+        Assert.assertEquals(-1, channel.read(buffer));
+
+        channel.close();
+        Assert.assertFalse(channel.isOpen());
+        Assert.assertFalse(Files.exists(scratch));
+    }
+
+    @Test
+    public void testReadWaitsForDownload() throws Exception {
+        final Path scratch = scratch(100);
+        final RemoteFileChannel channel = new RemoteFileChannel(scratch);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger read = new AtomicInteger();
+
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    read.set(channel.read(ByteBuffer.allocate(1000)));
+                } catch (IOException e) {
+                    read.set(-2);
+                }
+            }
+        };
+        reader.start();
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, read.get());
+
+        channel.onComplete("id", scratch.toString());
+        reader.join(5000);
+        Assert.assertEquals(100, read.get());
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadError() throws IOException {
+        Path scratch = scratch(100);
+        RemoteFileChannel channel = new RemoteFileChannel(scratch);
+        channel.onError("id", Storj.HTTP_NOT_FOUND, "Not Found");
+
+        Assert.assertFalse(Files.exists(scratch));
+        try {
+            channel.read(ByteBuffer.allocate(10));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("Not Found (404)", e.getMessage());
+        }
+        channel.close();
+    }
+
+    @Test
+    public void testCloseWhileDownloading() throws IOException {
+        Path scratch = scratch(100);
+        RemoteFileChannel channel = new RemoteFileChannel(scratch);
+        channel.close();
+
+        try {
+            channel.position();
+            Assert.fail();
+        } catch (ClosedChannelException e) {
+            // expected
+        }
+
+        // the download completes after the channel was closed
+        channel.onComplete("id", scratch.toString());
+        Assert.assertFalse(Files.exists(scratch));
+    }
+
+    @Test(expected = NonWritableChannelException.class)
+    public void testReadOnly() throws IOException {
+        Path scratch = scratch(1);
+        try (RemoteFileChannel channel = new RemoteFileChannel(scratch)) {
+            channel.onComplete("id", scratch.toString());
+            channel.write(ByteBuffer.allocate(1));
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    /**
+     * Policy with a clock controlled by the test.
+     */
+    private static class ManualPolicy extends RetryPolicy {
+        long time;
+
+        ManualPolicy() {
+            super(10, 1, 1, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    @Test
+    public void testClassification() {
+        RetryPolicy policy = new RetryPolicy();
+
+        Assert.assertTrue(policy.isRetryable(Storj.HTTP_TOO_MANY_REQUESTS));
+        Assert.assertTrue(policy.isRetryable(Storj.STORJ_FARMER_TIMEOUT_ERROR));
+        Assert.assertTrue(policy.isRetryable(Storj.CURLE_OPERATION_TIMEDOUT));
+        Assert.assertFalse(policy.isRetryable(Storj.HTTP_NOT_FOUND));
+        Assert.assertFalse(policy.isRetryable(Storj.STORJ_BRIDGE_AUTH_ERROR));
+
+        policy.setRetryable(Storj.HTTP_TOO_MANY_REQUESTS, false).setRetryable(Storj.STORJ_QUEUE_ERROR, true);
+        Assert.assertFalse(policy.isRetryable(Storj.HTTP_TOO_MANY_REQUESTS));
+        Assert.assertTrue(policy.isRetryable(Storj.STORJ_QUEUE_ERROR));
+    }
+
+    @Test
+    public void testMaxRetries() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(policy.allowRetry(Storj.STORJ_BRIDGE_TIMEOUT_ERROR, 1, true));
+        Assert.assertTrue(policy.allowRetry(Storj.STORJ_BRIDGE_TIMEOUT_ERROR, 2, true));
+        Assert.assertFalse(policy.allowRetry(Storj.STORJ_BRIDGE_TIMEOUT_ERROR, 3, true));
+        Assert.assertFalse(policy.allowRetry(Storj.HTTP_NOT_FOUND, 1, true));
+        Assert.assertEquals(2, policy.getRetries());
+    }
+
+    @Test
+    public void testNotIdempotent() {
+        RetryPolicy policy = new RetryPolicy();
+
+        // the Bridge may have processed the request before timing out
+        Assert.assertFalse(policy.allowRetry(Storj.STORJ_BRIDGE_TIMEOUT_ERROR, 1, false));
+        Assert.assertTrue(policy.allowRetry(Storj.HTTP_TOO_MANY_REQUESTS, 1, false));
+    }
+
+    @Test
+    public void testBudget() {
+        ManualPolicy policy = new ManualPolicy();
+        policy.setBudget(0.5, 0);
+
+        for (int i = 0; i < 4; i++) {
+            policy.requested();
+        }
+        Assert.assertTrue(policy.allowRetry(Storj.HTTP_TOO_MANY_REQUESTS, 1, true));
+        Assert.assertTrue(policy.allowRetry(Storj.HTTP_TOO_MANY_REQUESTS, 1, true));
+        Assert.assertFalse(policy.allowRetry(Storj.HTTP_TOO_MANY_REQUESTS, 1, true));
+        Assert.assertEquals(2, policy.getRetries());
+        Assert.assertEquals(1, policy.getRejectedRetries());
+
+        // the requests and retries leave the window after 10 seconds
+        policy.time += TimeUnit.SECONDS.toNanos(10);
+        Assert.assertFalse(policy.allowRetry(Storj.HTTP_TOO_MANY_REQUESTS, 1, true));
+        policy.requested();
+        policy.requested();
+        Assert.assertTrue(policy.allowRetry(Storj.HTTP_TOO_MANY_REQUESTS, 1, true));
+    }
+
+    @Test
+    public void testMinRetriesPerSecond() {
+        ManualPolicy policy = new ManualPolicy();
+        policy.setBudget(0, 1);
+
+        // 1 retry per second over the 10 second window
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(policy.allowRetry(Storj.HTTP_TOO_MANY_REQUESTS, 1, true));
+        }
+        Assert.assertFalse(policy.allowRetry(Storj.HTTP_TOO_MANY_REQUESTS, 1, true));
+    }
+
+    @Test
+    public void testDecorrelatedJitter() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, TimeUnit.NANOSECONDS);
+
+        long delay = 0;
+        for (int i = 0; i < 1000; i++) {
+            long next = policy.nextDelay(delay);
+            Assert.assertTrue(next >= 100);
+            Assert.assertTrue(next <= Math.min(1000, Math.max(100, delay) * 3));
+            delay = next;
+        }
+    }
+
+    @Test
+    public void testRetryUntilSuccess() throws InterruptedException {
+        RetryPolicy policy = new RetryPolicy(3, 1, 1, TimeUnit.MILLISECONDS);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final GetBucketsCallback callback = new GetBucketsCallback() {
+            @Override
+            public void onBucketsReceived(Bucket[] buckets) {
+                events.add("received");
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(int code, String message) {
+                events.add("error " + code);
+                latch.countDown();
+            }
+        };
+
+        new Retry(policy, null, true) {
+            @Override
+            void reject() {
+                events.add("rejected");
+            }
+
+            @Override
+            void submit() {
+                GetBucketsCallback wrapped = wrap(callback);
+                if (getRetries() < 2) {
+                    wrapped.onError(Storj.HTTP_TOO_MANY_REQUESTS, "Too Many Requests");
+                } else {
+                    wrapped.onBucketsReceived(new Bucket[0]);
+                }
+            }
+        }.start();
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("[received]", events.toString());
+        Assert.assertEquals(2, policy.getRetries());
+    }
+
+    @Test
+    public void testFatalErrorIsReported() {
+        RetryPolicy policy = new RetryPolicy();
+        final List<String> events = new ArrayList<>();
+
+        final DeleteFileCallback callback = new DeleteFileCallback() {
+            @Override
+            public void onFileDeleted(String fileId) {
+                events.add("deleted");
+            }
+
+            @Override
+            public void onError(String fileId, int code, String message) {
+                events.add("error " + code);
+            }
+        };
+
+        new Retry(policy, null, false) {
+            @Override
+            void reject() {
+                events.add("rejected");
+            }
+
+            @Override
+            void submit() {
+                wrap(callback).onError("id", Storj.HTTP_NOT_FOUND, "Not Found");
+            }
+        }.start();
+
+        Assert.assertEquals("[error 404]", events.toString());
+        Assert.assertEquals(0, policy.getRetries());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDelays() {
+        new RetryPolicy(3, 100, 10, TimeUnit.MILLISECONDS);
+    }
+
+}
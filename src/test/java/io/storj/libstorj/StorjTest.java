@@ -202,6 +202,29 @@ public class StorjTest {
         await(latch);
     }
 
+    @Test
+    public void testListFilesCursor() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        storj.listFiles(bucket, 1, new FileCursorCallback() {
+            @Override
+            public void onCursorReady(FileCursor cursor) {
+                while (cursor.hasNext()) {
+                    System.out.println(cursor.next()[0]);
+                }
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String bucketId, int code, String message) {
+                System.out.printf("[%d] %s: %s\n", code, message, bucketId);
+                latch.countDown();
+            }
+        });
+
+        await(latch);
+    }
+
     @Test
     public void testGetFile() throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(1);
@@ -332,6 +355,25 @@ public class StorjTest {
         testGetBuckets();
     }
 
+    @Test
+    public void testNativeRuntimeStats() throws InterruptedException {
+        // make sure the native runtime is started
+        testGetBuckets();
+
+        NativeRuntimeStats stats = storj.getNativeRuntimeStats();
+        System.out.println(stats);
+        Assert.assertTrue(stats.getThreadPoolSize() > 0);
+        Assert.assertTrue(stats.getActiveRequests() >= 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testConfigureStartedNativeRuntime() throws InterruptedException {
+        // make sure the native runtime is started
+        testGetBuckets();
+
+        Storj.configureNativeRuntime(16);
+    }
+
     @Test
     public void testGetErrorMessage() {
         Assert.assertEquals("No errors",
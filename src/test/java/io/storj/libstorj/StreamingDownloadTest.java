@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingDownloadTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class RecordingCallback implements DownloadFileCallback {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+            events.add("progress " + downloadedBytes);
+        }
+
+        @Override
+        public void onComplete(String fileId, String localPath) {
+            events.add("complete " + localPath);
+        }
+
+        @Override
+        public void onError(String fileId, int code, String message) {
+            events.add("error " + code);
+        }
+    }
+
+    @Test
+    public void testCopiesAndDeletesScratchFile() throws IOException {
+        byte[] data = new byte[StreamingDownload.CHUNK_SIZE * 2 + 123];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Path scratch = Files.createTempFile("storj-", ".download");
+        Files.write(scratch, data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingCallback callback = new RecordingCallback();
+        StreamingDownload download = new StreamingDownload(scratch, Channels.newChannel(out), 0, Long.MAX_VALUE,
+                callback, DIRECT);
+
+        download.onProgress("id", 1, data.length, data.length);
+        download.onComplete("id", scratch.toString());
+
+        Assert.assertTrue(Arrays.equals(data, out.toByteArray()));
+        Assert.assertFalse(Files.exists(scratch));
+        Assert.assertEquals("[progress " + data.length + ", complete null]", callback.events.toString());
+    }
+
+    @Test
+    public void testCopiesRange() throws IOException {
+        byte[] data = new byte[StreamingDownload.CHUNK_SIZE * 2 + 123];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        int offset = StreamingDownload.CHUNK_SIZE - 10;
+        int length = StreamingDownload.CHUNK_SIZE + 20;
+
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(data, offset, offset + length),
+                copyRange(data, offset, length)));
+        // ranges past the end of the file are cut off
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(data, data.length - 3, data.length),
+                copyRange(data, data.length - 3, 100)));
+        Assert.assertEquals(0, copyRange(data, data.length + 1, 100).length);
+    }
+
+    private static byte[] copyRange(byte[] data, long offset, long length) throws IOException {
+        Path scratch = Files.createTempFile("storj-", ".download");
+        Files.write(scratch, data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingCallback callback = new RecordingCallback();
+        new StreamingDownload(scratch, Channels.newChannel(out), offset, length, callback, DIRECT)
+                .onComplete("id", scratch.toString());
+
+        Assert.assertFalse(Files.exists(scratch));
+        Assert.assertEquals("[complete null]", callback.events.toString());
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testErrorDeletesScratchFile() throws IOException {
+        Path scratch = Files.createTempFile("storj-", ".download");
+
+        RecordingCallback callback = new RecordingCallback();
+        StreamingDownload download = new StreamingDownload(scratch, Channels.newChannel(new ByteArrayOutputStream()),
+                0, Long.MAX_VALUE, callback, DIRECT);
+
+        download.onError("id", Storj.TRANSFER_CANCELED, "File transfer canceled");
+
+        Assert.assertFalse(Files.exists(scratch));
+        Assert.assertEquals("[error " + Storj.TRANSFER_CANCELED + "]", callback.events.toString());
+    }
+
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransferSchedulerTest {
+
+    /**
+     * Job that records its start and finishes when the test says so.
+     */
+    private static class TestJob implements TransferScheduler.Job {
+        final String name;
+        final List<String> events;
+        TransferScheduler.Task done;
+        boolean canceled;
+        volatile long delay;
+
+        TestJob(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public long start(TransferScheduler.Task task) {
+            this.done = task;
+            events.add(name);
+            return 100;
+        }
+
+        @Override
+        public long getStartDelay() {
+            return delay;
+        }
+
+        @Override
+        public void canceled() {
+            canceled = true;
+        }
+
+        void finish() {
+            done.run();
+        }
+    }
+
+    @Test
+    public void testTransferLimit() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(2, 0);
+        TestJob a = new TestJob("a", events);
+        TestJob b = new TestJob("b", events);
+        TestJob c = new TestJob("c", events);
+
+        scheduler.submit(0, a);
+        scheduler.submit(0, b);
+        scheduler.submit(0, c);
+
+        Assert.assertEquals("[a, b]", events.toString());
+        Assert.assertEquals(2, scheduler.getRunningTransfers());
+        Assert.assertEquals(1, scheduler.getQueueDepth());
+
+        a.finish();
+        // finishing twice has no effect
+        a.finish();
+
+        Assert.assertEquals("[a, b, c]", events.toString());
+        Assert.assertEquals(2, scheduler.getRunningTransfers());
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testByteLimit() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(10, 100);
+        TestJob a = new TestJob("a", events);
+        TestJob b = new TestJob("b", events);
+        TestJob c = new TestJob("c", events);
+
+        scheduler.submit(60, a);
+        scheduler.submit(60, b);
+        scheduler.submit(10, c);
+
+        // c is not started ahead of b
+        Assert.assertEquals("[a]", events.toString());
+        Assert.assertEquals(60, scheduler.getRunningBytes());
+
+        a.finish();
+
+        Assert.assertEquals("[a, b, c]", events.toString());
+        Assert.assertEquals(70, scheduler.getRunningBytes());
+    }
+
+    @Test
+    public void testTransferLargerThanByteLimitRunsAlone() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(10, 100);
+        TestJob a = new TestJob("a", events);
+        TestJob b = new TestJob("b", events);
+
+        scheduler.submit(500, a);
+        scheduler.submit(1, b);
+        Assert.assertEquals("[a]", events.toString());
+
+        a.finish();
+        Assert.assertEquals("[a, b]", events.toString());
+    }
+
+    @Test
+    public void testSynchronousFailures() {
+        final List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(1, 0);
+
+        for (int i = 0; i < 10000; i++) {
+            final int n = i;
+            scheduler.submit(0, new TransferScheduler.Job() {
+                @Override
+                public long start(TransferScheduler.Task task) {
+                    // fails while being started
+                    task.run();
+                    events.add(String.valueOf(n));
+                    return 0;
+                }
+
+                @Override
+                public long getStartDelay() {
+                    return 0;
+                }
+
+                @Override
+                public void canceled() {
+                }
+            });
+        }
+
+        Assert.assertEquals(10000, events.size());
+        Assert.assertEquals(0, scheduler.getRunningTransfers());
+    }
+
+    @Test
+    public void testCancelQueued() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(1, 0);
+        TestJob a = new TestJob("a", events);
+        TestJob b = new TestJob("b", events);
+
+        Map<Long, TransferScheduler.Task> registry = new HashMap<>();
+        TransferScheduler.Task taskA = scheduler.submit(0, TransferPriority.NORMAL, null, registry, a);
+        TransferScheduler.Task taskB = scheduler.submit(0, TransferPriority.NORMAL, null, registry, b);
+        Assert.assertTrue(taskA.getTicket() < 0);
+        Assert.assertTrue(taskB.getTicket() < 0);
+        Assert.assertSame(taskA, registry.get(taskA.getTicket()));
+        Assert.assertSame(taskB, registry.get(taskB.getTicket()));
+
+        Assert.assertFalse(taskA.cancelIfQueued());
+        Assert.assertEquals(100, taskA.getState());
+
+        Assert.assertTrue(taskB.cancelIfQueued());
+        Assert.assertTrue(b.canceled);
+        Assert.assertNull(registry.get(taskB.getTicket()));
+
+        a.finish();
+        Assert.assertEquals("[a]", events.toString());
+        Assert.assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void testWeightedShares() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(1, 0)
+                .setWeight(TransferPriority.INTERACTIVE, 3)
+                .setWeight(TransferPriority.BULK, 1);
+        TestJob blocker = new TestJob("x", events);
+        scheduler.submit(0, blocker);
+
+        List<TestJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            TestJob bulk = new TestJob("b", events);
+            TestJob interactive = new TestJob("i", events);
+            scheduler.submit(0, TransferPriority.BULK, null, bulk);
+            scheduler.submit(0, TransferPriority.INTERACTIVE, null, interactive);
+            jobs.add(bulk);
+            jobs.add(interactive);
+        }
+        Assert.assertEquals(8, scheduler.getQueueDepth(TransferPriority.BULK));
+        Assert.assertEquals(8, scheduler.getQueueDepth(TransferPriority.INTERACTIVE));
+
+        blocker.finish();
+        for (int i = 0; i < 8; i++) {
+            finishRunning(jobs);
+        }
+
+        // three interactive transfers for each bulk one while both are queued
+        Assert.assertEquals("[x, i, b, i, i, i, b, i, i, i]", events.toString());
+    }
+
+    @Test
+    public void testTenantsTakeTurns() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(1, 0);
+        TestJob blocker = new TestJob("x", events);
+        scheduler.submit(0, blocker);
+
+        List<TestJob> jobs = new ArrayList<>();
+        for (String name : new String[] { "a1", "a2", "a3", "b1", "c1", "b2" }) {
+            TestJob job = new TestJob(name, events);
+            scheduler.submit(0, TransferPriority.BULK, name.substring(0, 1), job);
+            jobs.add(job);
+        }
+
+        blocker.finish();
+        for (int i = 0; i < 5; i++) {
+            finishRunning(jobs);
+        }
+
+        Assert.assertEquals("[x, a1, b1, c1, a2, b2, a3]", events.toString());
+    }
+
+    @Test
+    public void testReservedTransfers() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(3, 0).setReservedTransfers(1);
+
+        scheduler.submit(0, TransferPriority.BULK, null, new TestJob("b1", events));
+        scheduler.submit(0, TransferPriority.BULK, null, new TestJob("b2", events));
+        scheduler.submit(0, TransferPriority.BULK, null, new TestJob("b3", events));
+        scheduler.submit(0, TransferPriority.INTERACTIVE, null, new TestJob("i1", events));
+
+        // the last slot is kept for the interactive transfer
+        Assert.assertEquals("[b1, b2, i1]", events.toString());
+        Assert.assertEquals(1, scheduler.getQueueDepth(TransferPriority.BULK));
+    }
+
+    @Test
+    public void testDelayedTransfer() throws InterruptedException {
+        // the delayed transfer is started on the timer thread
+        List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        TransferScheduler scheduler = new TransferScheduler(2, 0);
+        TestJob limited = new TestJob("l", events);
+        limited.delay = TimeUnit.MILLISECONDS.toNanos(10);
+
+        scheduler.submit(0, TransferPriority.INTERACTIVE, null, limited);
+        scheduler.submit(0, TransferPriority.BULK, null, new TestJob("b", events));
+
+        // the bulk transfer is started while the limited one waits
+        Assert.assertEquals("[b]", events.toString());
+        Assert.assertEquals(1, scheduler.getQueueDepth());
+
+        limited.delay = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (events.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        Assert.assertEquals("[b, l]", events.toString());
+        Assert.assertEquals(2, scheduler.getRunningTransfers());
+    }
+
+    @Test
+    public void testRestart() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(1, 0);
+        TestJob a = new TestJob("a", events);
+        TestJob b = new TestJob("b", events);
+
+        TransferScheduler.Task task = scheduler.submit(0, a);
+        scheduler.submit(0, b);
+
+        // the failed transfer keeps its slot while waiting for the restart
+        a.done.awaitRestart();
+        Assert.assertEquals(0, task.getState());
+        Assert.assertEquals("[a]", events.toString());
+
+        Assert.assertTrue(a.done.restart());
+        Assert.assertEquals("[a, a]", events.toString());
+        Assert.assertEquals(100, task.getState());
+
+        a.finish();
+        Assert.assertEquals("[a, a, b]", events.toString());
+    }
+
+    @Test
+    public void testCancelWaitingForRestart() {
+        List<String> events = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler(1, 0);
+        TestJob a = new TestJob("a", events);
+
+        TransferScheduler.Task task = scheduler.submit(0, a);
+        // a running transfer is not canceled by the scheduler
+        Assert.assertFalse(task.cancelIfQueued());
+
+        a.done.awaitRestart();
+        Assert.assertTrue(task.cancelIfQueued());
+        Assert.assertFalse(a.done.restart());
+        Assert.assertEquals("[a]", events.toString());
+    }
+
+    /**
+     * Finishes the one running job of the list.
+     */
+    private static void finishRunning(List<TestJob> jobs) {
+        for (TestJob job : jobs) {
+            if (job.done != null && !job.canceled) {
+                job.canceled = true;
+                job.finish();
+                return;
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimit() {
+        new TransferScheduler(0, 0);
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UploadOptionsTest {
+
+    @Test
+    public void testDefaults() {
+        UploadOptions options = UploadOptions.DEFAULT;
+
+        Assert.assertEquals(1, options.getPrepareFrameLimit());
+        Assert.assertEquals(64, options.getPushFrameLimit());
+        Assert.assertEquals(64, options.getPushShardLimit());
+        Assert.assertTrue(options.isReedSolomon());
+        Assert.assertNull(options.getProgressThrottle());
+    }
+
+    @Test
+    public void testBuilderFromOptions() {
+        ProgressThrottle throttle = new ProgressThrottle(1, TimeUnit.SECONDS, 0);
+        UploadOptions base = new UploadOptions.Builder().setPushShardLimit(8).setReedSolomon(false)
+                .setProgressThrottle(throttle).build();
+        UploadOptions options = new UploadOptions.Builder(base).setPushFrameLimit(2).build();
+
+        Assert.assertEquals(1, options.getPrepareFrameLimit());
+        Assert.assertEquals(2, options.getPushFrameLimit());
+        Assert.assertEquals(8, options.getPushShardLimit());
+        Assert.assertFalse(options.isReedSolomon());
+        Assert.assertSame(throttle, options.getProgressThrottle());
+    }
+
+    @Test
+    public void testIndex() {
+        String index = "0123456789abcdef0123456789ABCDEF0123456789abcdef0123456789abcdef";
+        UploadOptions options = new UploadOptions.Builder().setIndex(index).build();
+
+        Assert.assertNull(UploadOptions.DEFAULT.getIndex());
+        Assert.assertEquals(index, options.getIndex());
+        Assert.assertEquals(index, new UploadOptions.Builder(options).build().getIndex());
+        Assert.assertNull(new UploadOptions.Builder(options).setIndex(null).build().getIndex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidIndex() {
+        new UploadOptions.Builder().setIndex("0123456789abcdef");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimit() {
+        new UploadOptions.Builder().setPushShardLimit(0);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017-2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.storj.libstorj;
+
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the upload throughput for a few {@link UploadOptions} settings
+ * against the local mock Bridge used by {@link StorjTest}.
+ *
+ * <p>
+ * Each setting uploads the same set of files in parallel with
+ * {@link Storj#uploadFiles(String, String[], String[], UploadOptions, UploadFileCallback)}.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>UploadThroughputBenchmark [bridgeUrl] [files] [fileSizeMB]</code>
+ * </p>
+ */
+public class UploadThroughputBenchmark {
+
+    private static final String BUCKET_ID = "cafff1293d0170285691c3e0";
+
+    public static void main(String[] args) throws Exception {
+        String bridgeUrl = (args.length > 0) ? args[0] : "http://localhost:6382";
+        int fileCount = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+        int fileSizeMB = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+
+        java.io.File tempDir = new java.io.File(System.getProperty("java.io.tmpdir"));
+        Storj storj = new Storj(bridgeUrl).setConfigDirectory(new java.io.File(tempDir, ".storj-bench"));
+        storj.importKeys(new Keys("user@mail.com", "secret", "mnemonic"), "");
+
+        String[] fileNames = new String[fileCount];
+        String[] localPaths = new String[fileCount];
+        Random random = new Random(42);
+        byte[] block = new byte[1024 * 1024];
+        for (int i = 0; i < fileCount; i++) {
+            java.io.File file = new java.io.File(tempDir, "storj-bench-" + i);
+            file.deleteOnExit();
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                for (int j = 0; j < fileSizeMB; j++) {
+                    random.nextBytes(block);
+                    out.write(block);
+                }
+            }
+            fileNames[i] = file.getName();
+            localPaths[i] = file.getPath();
+        }
+
+        UploadOptions[] settings = {
+                UploadOptions.DEFAULT,
+                new UploadOptions.Builder().setPushFrameLimit(4).setPushShardLimit(4).build(),
+                new UploadOptions.Builder().setPrepareFrameLimit(4).build(),
+                new UploadOptions.Builder().setReedSolomon(false).build(),
+        };
+
+        try {
+            // warm up
+            run(storj, fileNames, localPaths, UploadOptions.DEFAULT);
+
+            long totalMB = (long) fileCount * fileSizeMB;
+            for (UploadOptions options : settings) {
+                long start = System.nanoTime();
+                int failed = run(storj, fileNames, localPaths, options);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                System.out.println(options);
+                System.out.printf("  %d MB in %.2f s: %.1f MB/s, %d failed%n", totalMB, seconds, totalMB / seconds,
+                        failed);
+            }
+        } finally {
+            storj.deleteKeys();
+            storj.destroy();
+        }
+    }
+
+    private static int run(Storj storj, String[] fileNames, String[] localPaths, UploadOptions options)
+            throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(fileNames.length);
+        final AtomicInteger failed = new AtomicInteger();
+
+        storj.uploadFiles(BUCKET_ID, fileNames, localPaths, options, new UploadFileCallback() {
+            @Override
+            public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+            }
+
+            @Override
+            public void onComplete(String filePath, File file) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String filePath, int code, String message) {
+                failed.incrementAndGet();
+                latch.countDown();
+            }
+        });
+        latch.await();
+
+        return failed.get();
+    }
+
+}